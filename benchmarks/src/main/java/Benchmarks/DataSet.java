@@ -0,0 +1,114 @@
+package Benchmarks;
+
+import SalesInfo.GenerateInfoFiles;
+
+import java.io.File;
+
+/**
+ * A synthetic data set generated with {@link GenerateInfoFiles}, reused across runs with the same sizes.
+ * <p>
+ * The data sets are kept under the folder of the <code>benchmarks.data</code> system property,
+ * <code>BenchmarkData</code> in the working directory by default.
+ * </p>
+ */
+public class DataSet {
+
+    private static final String DATA_PROPERTY = "benchmarks.data";
+    private static final String DEFAULT_DATA_FOLDER = "BenchmarkData";
+    private static final long SEED = 20240601L;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    private final int sellers;
+    private final int products;
+    private final int salesPerSeller;
+    private final File folder;
+
+    private DataSet(int sellers, int products, int salesPerSeller, File folder) {
+        this.sellers = sellers;
+        this.products = products;
+        this.salesPerSeller = salesPerSeller;
+        this.folder = folder;
+    }
+
+    /**
+     * Gets a data set, generating it under the data folder the first time it is used.
+     *
+     * @param sellers        The number of sellers.
+     * @param products       The number of products.
+     * @param salesPerSeller The number of sale lines of each sales file.
+     * @return The data set.
+     */
+    public static DataSet prepare(int sellers, int products, int salesPerSeller) {
+        return prepare(new File(System.getProperty(DATA_PROPERTY, DEFAULT_DATA_FOLDER)), sellers, products,
+                salesPerSeller);
+    }
+
+    /**
+     * Gets a data set, generating it under a root folder the first time it is used.
+     *
+     * @param root           The folder where the data sets are kept.
+     * @param sellers        The number of sellers.
+     * @param products       The number of products.
+     * @param salesPerSeller The number of sale lines of each sales file.
+     * @return The data set.
+     */
+    public static DataSet prepare(File root, int sellers, int products, int salesPerSeller) {
+        File folder = new File(root, sellers + "x" + products + "x" + salesPerSeller + "/SoldProducts");
+        DataSet dataSet = new DataSet(sellers, products, salesPerSeller, folder);
+        if (!dataSet.getProductsFile().isFile()) {
+            GenerateInfoFiles.main(new String[] {
+                    "--sellers", String.valueOf(sellers),
+                    "--products", String.valueOf(products),
+                    "--sales", String.valueOf(salesPerSeller),
+                    "--zipf", String.valueOf(ZIPF_EXPONENT),
+                    "--seed", String.valueOf(SEED),
+                    "--workers", "0",
+                    "--output", folder.getPath()
+            });
+        }
+        return dataSet;
+    }
+
+    public int getSellers() {
+        return sellers;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+
+    public int getSalesPerSeller() {
+        return salesPerSeller;
+    }
+
+    /**
+     * Gets the number of sale lines of all the sales files.
+     *
+     * @return The number of sale lines.
+     */
+    public long getSaleLines() {
+        return (long) sellers * salesPerSeller;
+    }
+
+    public File getSellersFile() {
+        return new File(folder, "Sellers/sellers_info.txt");
+    }
+
+    public File getSalesFolder() {
+        return new File(folder, "Sales");
+    }
+
+    public File getProductsFile() {
+        return new File(folder, "Products/products_info.txt");
+    }
+
+    /**
+     * Gets a scratch file next to the data set, such as the wrong files report of a benchmark.
+     *
+     * @param name The name of the file.
+     * @return The file.
+     */
+    public File getScratchFile(String name) {
+        return new File(folder.getParentFile(), name);
+    }
+}
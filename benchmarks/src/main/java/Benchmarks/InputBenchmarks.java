@@ -0,0 +1,132 @@
+package Benchmarks;
+
+import Entities.Seller;
+import Utils.ErrorReporter;
+import Utils.ProductCatalog;
+import Utils.SalesAggregate;
+import Utils.SalesIngestion;
+import Utils.SellersReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of the input hot paths: reading the sellers file, loading and mapping the catalog, looking
+ * up prices and reading the sales files, on one and on every processor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class InputBenchmarks {
+
+    private static final int PRICE_LOOKUPS = 1 << 20;
+
+    /**
+     * The data set and the inputs loaded from it once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"1000", "10000", "100000"})
+        public int sellers;
+
+        @Param({"1000"})
+        public int products;
+
+        @Param({"100"})
+        public int salesPerSeller;
+
+        private DataSet dataSet;
+        private ErrorReporter errors;
+        private ProductCatalog catalog;
+        private Path image;
+        private String[] productIds;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dataSet = DataSet.prepare(sellers, products, salesPerSeller);
+            errors = ErrorReporter.open(dataSet.getScratchFile("wrong_files_report.txt").getPath());
+            catalog = ProductCatalog.load(dataSet.getProductsFile().getPath(), errors);
+            image = dataSet.getScratchFile("products_info" + ProductCatalog.IMAGE_SUFFIX).toPath();
+            catalog.save(image);
+
+            List<String> ids = new ArrayList<>();
+            catalog.forEach((productId, productName, price) -> ids.add(productId));
+            SplittableRandom random = new SplittableRandom(PRICE_LOOKUPS);
+            productIds = new String[PRICE_LOOKUPS];
+            for (int i = 0; i < productIds.length; i++) {
+                productIds[i] = ids.get(random.nextInt(ids.size()));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            errors.close();
+        }
+    }
+
+    /**
+     * The number of workers of the benchmarks that read in parallel.
+     */
+    @State(Scope.Benchmark)
+    public static class Workers {
+        /** 0 uses one worker per available processor. */
+        @Param({"1", "0"})
+        public int workers;
+
+        private int count() {
+            return workers == 0 ? Runtime.getRuntime().availableProcessors() : workers;
+        }
+    }
+
+    @Benchmark
+    public Map<String, Seller> readSellers(Data data, Workers workers) {
+        return SellersReader.read(data.dataSet.getSellersFile().getPath(), workers.count());
+    }
+
+    @Benchmark
+    public ProductCatalog loadCatalog(Data data, Workers workers) throws IOException {
+        return ProductCatalog.load(data.dataSet.getProductsFile().getPath(), workers.count(), data.errors);
+    }
+
+    @Benchmark
+    public ProductCatalog mapCatalog(Data data) throws IOException {
+        return ProductCatalog.map(data.image);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PRICE_LOOKUPS)
+    public void priceLookup(Data data, Blackhole blackhole) {
+        for (String productId : data.productIds) {
+            blackhole.consume(data.catalog.getPrice(productId));
+        }
+    }
+
+    @Benchmark
+    public SalesAggregate ingestSales(Data data, Workers workers) {
+        return SalesIngestion.ingest(data.dataSet.getSalesFolder().getPath(), data.catalog, workers.count(),
+                data.errors);
+    }
+}
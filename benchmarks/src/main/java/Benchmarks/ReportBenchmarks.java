@@ -0,0 +1,175 @@
+package Benchmarks;
+
+import Entities.Product;
+import Entities.ProductReportRow;
+import Entities.Seller;
+import Entities.SellerReportRow;
+import Utils.ConsoleMode;
+import Utils.ErrorReporter;
+import Utils.GeneralSalesReport;
+import Utils.GenerateProductsReport;
+import Utils.Money;
+import Utils.ProductCatalog;
+import Utils.ReportOptions;
+import Utils.SalesAggregate;
+import Utils.SalesCube;
+import Utils.SalesIngestion;
+import Utils.SellersReader;
+import Utils.TopN;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of the report hot paths: building and querying the seller by product cube, ranking the
+ * report rows, in full and top-N, and writing the report CSV files.
+ * <p>
+ * The report files are written to <code>SalesReport/</code> under the working directory in quiet console mode.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ReportBenchmarks {
+
+    private static final int CUBE_QUERIES = 1 << 12;
+
+    @Param({"1000", "10000", "100000"})
+    public int sellers;
+
+    @Param({"1000"})
+    public int products;
+
+    @Param({"100"})
+    public int salesPerSeller;
+
+    private ErrorReporter errors;
+    private Map<String, Seller> sellerMap;
+    private ProductCatalog catalog;
+    private SalesAggregate aggregate;
+    private SalesCube cube;
+    private String[] documentNumbers;
+    private String[] productIds;
+    private List<SellerReportRow> sellerRows;
+    private List<ProductReportRow> productRows;
+
+    /**
+     * The number of rows kept by the ranking benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Top {
+        /** 0 ranks every row. */
+        @Param({"0", "100"})
+        public int top;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DataSet dataSet = DataSet.prepare(sellers, products, salesPerSeller);
+        errors = ErrorReporter.open(dataSet.getScratchFile("wrong_files_report.txt").getPath());
+        sellerMap = SellersReader.read(dataSet.getSellersFile().getPath());
+        catalog = ProductCatalog.load(dataSet.getProductsFile().getPath(), errors);
+        aggregate = SalesIngestion.ingest(dataSet.getSalesFolder().getPath(), catalog,
+                Runtime.getRuntime().availableProcessors(), errors);
+        cube = SalesCube.build(aggregate, sellerMap, catalog);
+
+        List<String> sellerIds = new ArrayList<>(aggregate.getSellerRevenue().keySet());
+        List<String> soldProducts = new ArrayList<>(aggregate.getProductQuantities().keySet());
+        SplittableRandom random = new SplittableRandom(CUBE_QUERIES);
+        documentNumbers = new String[CUBE_QUERIES];
+        productIds = new String[CUBE_QUERIES];
+        for (int i = 0; i < CUBE_QUERIES; i++) {
+            documentNumbers[i] = sellerIds.get(random.nextInt(sellerIds.size()));
+            productIds[i] = soldProducts.get(random.nextInt(soldProducts.size()));
+        }
+
+        sellerRows = new ArrayList<>();
+        aggregate.forEachSeller((documentNumber, totalSales) -> {
+            Seller seller = sellerMap.get(documentNumber);
+            if (seller != null) {
+                sellerRows.add(new SellerReportRow(documentNumber, seller.getFirstName(), seller.getLastName(),
+                        totalSales));
+            }
+        });
+        productRows = new ArrayList<>();
+        aggregate.forEachProduct((productId, quantitySold) -> {
+            Product product = catalog.get(productId);
+            if (product != null) {
+                productRows.add(new ProductReportRow(productId, product.getProductName(), product.getPrice(),
+                        quantitySold, Money.times(product.getPrice(), quantitySold)));
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        errors.close();
+    }
+
+    @Benchmark
+    public SalesCube buildCube() {
+        return SalesCube.build(aggregate, sellerMap, catalog);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * CUBE_QUERIES)
+    public void queryCube(Blackhole blackhole) {
+        for (int i = 0; i < CUBE_QUERIES; i++) {
+            blackhole.consume(cube.topProducts(documentNumbers[i], 10));
+            blackhole.consume(cube.topSellers(productIds[i], 10));
+        }
+    }
+
+    @Benchmark
+    public List<SellerReportRow> rankSellers(Top top) {
+        TopN<SellerReportRow> ranking = new TopN<>(top.top, SellerReportRow.RANKING);
+        for (SellerReportRow row : sellerRows) {
+            ranking.offer(row);
+        }
+        return ranking.toList();
+    }
+
+    @Benchmark
+    public List<ProductReportRow> rankProducts(Top top) {
+        TopN<ProductReportRow> ranking = new TopN<>(top.top, ProductReportRow.RANKING);
+        for (ProductReportRow row : productRows) {
+            ranking.offer(row);
+        }
+        return ranking.toList();
+    }
+
+    @Benchmark
+    public void salesReportCsv() {
+        GeneralSalesReport.displayAndSaveSalesReport(sellerMap, aggregate,
+                new ReportOptions().setConsole(ConsoleMode.QUIET));
+    }
+
+    @Benchmark
+    public void productsReportCsv() {
+        GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors,
+                new ReportOptions().setConsole(ConsoleMode.QUIET));
+    }
+}
@@ -6,7 +6,7 @@ package Entities;
 public class Product {
     private String productId;
     private String productName;
-    private double pricePerUnit;
+    private long pricePerUnit;
     private int quantitySold;
 
     /**
@@ -14,9 +14,9 @@ public class Product {
      *
      * @param productId The ID of the product.
      * @param productName The name of the product.
-     * @param pricePerUnit The price per unit of the product.
+     * @param pricePerUnit The price per unit of the product, in centavos.
      */
-    public Product(String productId, String productName, double pricePerUnit) {
+    public Product(String productId, String productName, long pricePerUnit) {
         this.productId = productId;
         this.productName = productName;
         this.pricePerUnit = pricePerUnit;
@@ -44,9 +44,9 @@ public class Product {
     /**
      * Gets the price per unit of the product.
      *
-     * @return The price per unit.
+     * @return The price per unit, in centavos.
      */
-    public double getPrice() {
+    public long getPrice() {
         return pricePerUnit;
     }
 
@@ -0,0 +1,72 @@
+package Entities;
+
+import java.util.Comparator;
+
+/**
+ * Represents a row of the products report: a product, its price, the quantity sold and the revenue.
+ * <p>
+ * Amounts and quantities are kept as numbers so rows are ranked without parsing formatted text.
+ * </p>
+ */
+public class ProductReportRow {
+
+    /**
+     * Ranking of the products report: highest quantity sold first, then by product ID.
+     */
+    public static final Comparator<ProductReportRow> RANKING = Comparator
+            .comparingLong(ProductReportRow::getQuantitySold).reversed()
+            .thenComparing(ProductReportRow::getProductId);
+
+    private final String productId;
+    private final String productName;
+    private final long price;
+    private final long quantitySold;
+    private final long totalRevenue;
+
+    /**
+     * Creates a row of the products report.
+     *
+     * @param productId    the ID of the product
+     * @param productName  the name of the product
+     * @param price        the price per unit, in centavos
+     * @param quantitySold the quantity sold
+     * @param totalRevenue the revenue of the quantity sold, in centavos
+     */
+    public ProductReportRow(String productId, String productName, long price, long quantitySold, long totalRevenue) {
+        this.productId = productId;
+        this.productName = productName;
+        this.price = price;
+        this.quantitySold = quantitySold;
+        this.totalRevenue = totalRevenue;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * Gets the price per unit of the product.
+     *
+     * @return the price, in centavos
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    public long getQuantitySold() {
+        return quantitySold;
+    }
+
+    /**
+     * Gets the revenue of the quantity sold.
+     *
+     * @return the revenue, in centavos
+     */
+    public long getTotalRevenue() {
+        return totalRevenue;
+    }
+}
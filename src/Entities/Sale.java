@@ -1,19 +1,35 @@
 package Entities;
 
+import java.time.LocalDate;
+
 /**
  * Represents a sale of a product.
  * <p>
- * The <code>Sale</code> class stores information about a specific sale, including the product identifier
- * and the quantity sold. It provides methods to access and modify these data.
+ * The <code>Sale</code> class stores information about a specific sale, including the product identifier,
+ * the quantity sold and, when the sales line carries one, the date of the sale. It provides methods to
+ * access and modify these data.
  * </p>
  */
 public class Sale {
     private String productId;
     private int quantity;
+    private LocalDate date;
 
     public Sale(String productId, int quantity) {
+        this(productId, quantity, null);
+    }
+
+    /**
+     * Creates a dated sale.
+     *
+     * @param productId the product ID
+     * @param quantity  the quantity sold
+     * @param date      the date of the sale, or null if it is unknown
+     */
+    public Sale(String productId, int quantity, LocalDate date) {
         this.productId = productId;
         this.quantity = quantity;
+        this.date = date;
     }
 
     /**
@@ -46,7 +62,23 @@ public class Sale {
         this.quantity = quantity;
     }
 
+    /**
+     * Returns the date of the sale.
+     *
+     * @return the date, or null if the sales line has no date
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
     public String toString() {
+        if (date != null) {
+            return String.format("Product ID: %s, Quantity: %d, Date: %s", productId, quantity, date);
+        }
         return String.format("Product ID: %s, Quantity: %d", productId, quantity);
     }
 
@@ -0,0 +1,60 @@
+package Entities;
+
+import java.util.Comparator;
+
+/**
+ * Represents a row of the sales report: a seller and the total amount of their sales.
+ * <p>
+ * The total is kept as a number so rows are ranked without parsing formatted text.
+ * </p>
+ */
+public class SellerReportRow {
+
+    /**
+     * Ranking of the sales report: highest total sales first, then by document number.
+     */
+    public static final Comparator<SellerReportRow> RANKING = Comparator
+            .comparingLong(SellerReportRow::getTotalSales).reversed()
+            .thenComparing(SellerReportRow::getDocumentNumber);
+
+    private final String documentNumber;
+    private final String firstName;
+    private final String lastName;
+    private final long totalSales;
+
+    /**
+     * Creates a row of the sales report.
+     *
+     * @param documentNumber the seller's document number
+     * @param firstName      the first name of the seller
+     * @param lastName       the last name of the seller
+     * @param totalSales     the total amount of the seller's sales, in centavos
+     */
+    public SellerReportRow(String documentNumber, String firstName, String lastName, long totalSales) {
+        this.documentNumber = documentNumber;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.totalSales = totalSales;
+    }
+
+    public String getDocumentNumber() {
+        return documentNumber;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * Gets the total amount of the seller's sales.
+     *
+     * @return the total sales, in centavos
+     */
+    public long getTotalSales() {
+        return totalSales;
+    }
+}
@@ -1,13 +1,30 @@
 package Main;
 
 import Entities.Seller;
+import Utils.CheckpointedIngestion;
+import Utils.ConsoleMode;
+import Utils.ErrorReporter;
 import Utils.GeneralSalesReport;
 import Utils.GenerateProductsReport;
+import Utils.IncrementalIngestion;
+import Utils.ProductCatalog;
+import Utils.ReportOptions;
+import Utils.ReportServer;
+import Utils.RollupIngestion;
+import Utils.RunMetrics;
+import Utils.SalesAggregate;
+import Utils.SalesIngestion;
+import Utils.SalesRollups;
+import Utils.SalesSnapshot;
+import Utils.SalesValidator;
+import Utils.SalesWatcher;
+import Utils.SalesWindow;
+import Utils.SellersReader;
+import Utils.SnapshotWriter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.Paths;
 import java.util.Map;
 
 /**
@@ -19,107 +36,388 @@ public class Main {
     private static final String SELLERS_FILE = "SoldProducts/Sellers/sellers_info.txt";
     private static final String SALES_FOLDER = "SoldProducts/Sales/";
     private static final String PRODUCTS_FILE = "SoldProducts/Products/products_info.txt";
+    private static final String STATE_FOLDER = "SalesReport/State/";
+    private static final String CHECKPOINT_FOLDER = "SalesReport/Checkpoint/";
+    private static final String QUARANTINE_FOLDER = "SoldProducts/Quarantine/";
+    private static final String REJECTS_FILE = "SalesReport/Rejects/rejects.csv";
+    private static final String WRONG_FILES_REPORT = "ReportWrongFiles/wrong_files_report.txt";
+    private static final String METRICS_JSON = "metrics.json";
+    private static final String METRICS_PROMETHEUS = "metrics.prom";
 
     /**
      * Main method that initiates the process of reading data and generating the sales report.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments, see {@link RunOptions}.
      */
     public static void main(String[] args) {
-        Map<String, Seller> sellers = readSellers();
-        Map<String, Double> totalSales = readSales(sellers);
+        RunOptions options = RunOptions.parse(args);
+        ReportServer server = null;
+        if (options.getServePort() >= 0) {
+            server = startServer(options.getServePort());
+            if (server == null) {
+                return;
+            }
+        }
+        if (options.isWatch()) {
+            watch(options, server);
+            return;
+        }
+        RunMetrics metrics = new RunMetrics();
+        long errorReportSize = new File(WRONG_FILES_REPORT).length();
+        try {
+            ErrorReporter errors = ErrorReporter.open(WRONG_FILES_REPORT);
+            try {
+                report(options, errors, metrics, server);
+            } finally {
+                closeErrors(errors, errorReportSize, metrics);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing the wrong files report: " + WRONG_FILES_REPORT);
+            e.printStackTrace();
+        }
+        exportMetrics(metrics, options.getMetricsFolder());
+    }
+
+    /**
+     * Starts the server of the reports on the loopback address.
+     *
+     * @param port The port to listen on, or 0 to pick a free one.
+     * @return The server, or null if it cannot be started.
+     */
+    private static ReportServer startServer(int port) {
+        try {
+            ReportServer server = ReportServer.start(port);
+            System.out.println("Serving the reports at http://127.0.0.1:" + server.getPort() + "/");
+            return server;
+        } catch (IOException e) {
+            System.err.println("Error starting the report server on port " + port);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the input files, or the snapshot, and writes the reports, or compiles the snapshot.
+     *
+     * @param options The run options.
+     * @param errors  The reporter of the rejected lines.
+     * @param metrics The metrics of the run.
+     * @param server  The server the reports are published to, or null.
+     */
+    private static void report(RunOptions options, ErrorReporter errors, RunMetrics metrics, ReportServer server) {
+        if (options.getCompileSnapshot() != null) {
+            compileSnapshot(options.getCompileSnapshot(), errors, metrics);
+            return;
+        }
+        if (options.getSnapshot() != null) {
+            reportFromSnapshot(options, errors, metrics, server);
+            return;
+        }
+        Map<String, Seller> sellers = readSellers(options.getWorkers(), metrics);
+        ProductCatalog catalog = readProducts(options.getCatalogImage(), options.getWorkers(), errors, metrics);
+        if (options.getMaxErrorRate() >= 0) {
+            validateSales(catalog, options, metrics);
+        }
+        SalesAggregate aggregate = readSales(catalog, options, errors, metrics);
 
         // Display and save the sales report
-        GeneralSalesReport.displayAndSaveSalesReport(sellers, totalSales);
-        
+        GeneralSalesReport.displayAndSaveSalesReport(sellers, aggregate, reportOptions(options, metrics));
+
         // Display and save the products report
-        GenerateProductsReport.displayAndSaveProductsReport();
+        GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors,
+                reportOptions(options, metrics));
+        if (server != null) {
+            server.publish(sellers, catalog, aggregate);
+        }
     }
 
     /**
-     * Reads seller information from the specified file and creates Seller objects.
+     * Compiles the products, sellers and sales files into a binary snapshot.
      *
-     * @return A map where the key is the seller's document number and the value is the Seller object.
+     * @param snapshotFile The snapshot to write.
+     * @param errors       The reporter of the rejected lines.
+     * @param metrics      The metrics of the run.
      */
-    private static Map<String, Seller> readSellers() {
-        Map<String, Seller> sellers = new HashMap<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(SELLERS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(";");
-                if (parts.length == 4) {
-                    String documentType = parts[0];
-                    String documentNumber = parts[1];
-                    String firstName = parts[2];
-                    String lastName = parts[3];
-                    Seller seller = new Seller(documentType, documentNumber, firstName, lastName);
-                    sellers.put(documentNumber, seller);
-                }
-            }
+    private static void compileSnapshot(String snapshotFile, ErrorReporter errors, RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            SnapshotWriter.compile(SELLERS_FILE, PRODUCTS_FILE, SALES_FOLDER, snapshotFile, errors);
+            phase.addFiles(1);
+            phase.addBytesWritten(new File(snapshotFile).length());
+            System.out.println("Snapshot saved to " + snapshotFile);
         } catch (IOException e) {
+            System.err.println("Error compiling the snapshot: " + snapshotFile);
             e.printStackTrace();
+        } finally {
+            timer.stop();
         }
-        return sellers;
     }
 
     /**
-     * Reads sales data from files and calculates the total sales for each seller.
+     * Writes the reports from a binary snapshot instead of the text files. Lines rejected when the
+     * snapshot was compiled were reported then and are not reported again.
      *
-     * @param sellers A map of sellers to associate with sales data.
-     * @return A map where the key is the seller's document number and the value is the total sales amount.
+     * @param options The run options.
+     * @param errors  The reporter of the errors found while writing the reports.
+     * @param metrics The metrics of the run.
+     * @param server  The server the reports are published to, or null.
      */
-    private static Map<String, Double> readSales(Map<String, Seller> sellers) {
-        Map<String, Double> totalSales = new HashMap<>();
-        for (String documentNumber : sellers.keySet()) {
-            double total = 0.0;
-            String salesFile = SALES_FOLDER + "sales_" + documentNumber + ".txt";
-            try (BufferedReader br = new BufferedReader(new FileReader(salesFile))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.startsWith("DNI")) continue; // Skip header line
-                    String[] parts = line.split(";");
-                    if (parts.length == 2) {
-                        String productId = parts[0];
-                        int quantity = Integer.parseInt(parts[1]);
-                        double price = getProductPrice(productId);
-                        total += quantity * price;
-                    }
-                }
-                totalSales.put(documentNumber, total);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    private static void reportFromSnapshot(RunOptions options, ErrorReporter errors, RunMetrics metrics,
+                                           ReportServer server) {
+        SalesSnapshot snapshot;
+        try {
+            snapshot = SalesSnapshot.open(options.getSnapshot());
+        } catch (IOException e) {
+            System.err.println("Error reading the snapshot: " + options.getSnapshot());
+            e.printStackTrace();
+            return;
+        }
+        Map<String, Seller> sellers;
+        RunMetrics.Timer sellersTimer = metrics.phase(RunMetrics.READ_SELLERS).start();
+        try {
+            sellers = snapshot.getSellers();
+        } finally {
+            sellersTimer.stop();
+        }
+        ProductCatalog catalog;
+        RunMetrics.Timer catalogTimer = metrics.phase(RunMetrics.LOAD_CATALOG).start();
+        try {
+            catalog = snapshot.getCatalog();
+        } finally {
+            catalogTimer.stop();
+        }
+        SalesAggregate aggregate;
+        RunMetrics.Phase ingest = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer ingestTimer = ingest.start();
+        try {
+            aggregate = snapshot.aggregate(catalog, options.getWorkers());
+            ingest.addFiles(1);
+            ingest.addLines(snapshot.getSaleCount());
+            ingest.addBytesRead(new File(options.getSnapshot()).length());
+        } finally {
+            ingestTimer.stop();
+        }
+        GeneralSalesReport.displayAndSaveSalesReport(sellers, aggregate, reportOptions(options, metrics));
+        GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors,
+                reportOptions(options, metrics));
+        if (server != null) {
+            server.publish(sellers, catalog, aggregate);
         }
-        return totalSales;
     }
 
     /**
-     * Gets the price of a product by its ID from the products file.
+     * Writes the reports and keeps them up to date as sales files land, until the process is stopped.
+     * The metrics are exported, and the reports published to the server, after every update.
      *
-     * @param productId The product ID to search for.
-     * @return The price of the product, or 0 if not found.
+     * @param options The run options.
+     * @param server  The server the reports are published to, or null.
      */
-    private static double getProductPrice(String productId) {
-        try (BufferedReader br = new BufferedReader(new FileReader(PRODUCTS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(";");
-                if (parts.length == 3 && parts[0].equals(productId)) {
-                    return Double.parseDouble(parts[2].replace(",", ""));
+    private static void watch(RunOptions options, ReportServer server) {
+        SalesWatcher watcher = new SalesWatcher(SALES_FOLDER, PRODUCTS_FILE, SELLERS_FILE, WRONG_FILES_REPORT,
+                options.getWorkers(), options.getDebounceMillis());
+        try {
+            watcher.run((sellers, catalog, aggregate, errors, metrics) -> {
+                GeneralSalesReport.displayAndSaveSalesReport(sellers, aggregate, reportOptions(options, metrics));
+                GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors,
+                        reportOptions(options, metrics));
+                metrics.recordRejects(errors);
+                exportMetrics(metrics, options.getMetricsFolder());
+                if (server != null) {
+                    server.publish(sellers, catalog, aggregate);
                 }
-            }
+            });
         } catch (IOException e) {
+            System.err.println("Error watching the folder: " + SALES_FOLDER);
             e.printStackTrace();
         }
-        return 0;
     }
-}
-
 
+    /**
+     * Builds the options of the reports from the options of the run.
+     *
+     * @param options The options of the run.
+     * @param metrics The metrics of the run.
+     * @return The number of rows reported, the console mode, the sort memory and the metrics of the reports.
+     */
+    private static ReportOptions reportOptions(RunOptions options, RunMetrics metrics) {
+        return new ReportOptions()
+                .setTop(options.getTop())
+                .setConsole(options.getConsole())
+                .setSortMemory(options.getSortMemory())
+                .setMetrics(metrics);
+    }
 
+    /**
+     * Reads seller information from the specified file and creates Seller objects.
+     *
+     * @param workers The number of ranges of the sellers file read at the same time.
+     * @param metrics The metrics of the run.
+     * @return A map where the key is the seller's document number and the value is the Seller object.
+     */
+    private static Map<String, Seller> readSellers(int workers, RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.READ_SELLERS);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            Map<String, Seller> sellers = SellersReader.read(SELLERS_FILE, workers);
+            phase.addFiles(1);
+            phase.addLines(sellers.size());
+            phase.addBytesRead(new File(SELLERS_FILE).length());
+            return sellers;
+        } finally {
+            timer.stop();
+        }
+    }
 
+    /**
+     * Loads the product catalog once so prices can be looked up without reading the products file again.
+     *
+     * @param catalogImage The image the catalog is mapped from, or null to always read the products file.
+     * @param workers      The number of ranges of the products file read at the same time.
+     * @param errors       The reporter of the product lines that cannot be loaded.
+     * @param metrics      The metrics of the run.
+     * @return The product catalog, or an empty catalog if the products file cannot be read.
+     */
+    private static ProductCatalog readProducts(String catalogImage, int workers, ErrorReporter errors,
+                                               RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.LOAD_CATALOG);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            File image = catalogImage != null ? new File(catalogImage) : null;
+            ProductCatalog catalog;
+            if (image != null && image.isFile() && ProductCatalog.isImageOf(image.toPath(), Paths.get(PRODUCTS_FILE))) {
+                catalog = ProductCatalog.map(image.toPath());
+                phase.addBytesRead(image.length());
+            } else {
+                catalog = ProductCatalog.load(PRODUCTS_FILE, workers, errors);
+                phase.addBytesRead(new File(PRODUCTS_FILE).length());
+                if (image != null) {
+                    saveImage(catalog, image);
+                }
+            }
+            phase.addFiles(1);
+            phase.addLines(catalog.size());
+            return catalog;
+        } catch (IOException e) {
+            System.err.println("Error reading the products file: " + PRODUCTS_FILE);
+            e.printStackTrace();
+            return ProductCatalog.empty();
+        } finally {
+            timer.stop();
+        }
+    }
 
+    /**
+     * Saves the image of a catalog loaded from the products file. A catalog that cannot be saved is still
+     * used, and the image is built again by the next run.
+     *
+     * @param catalog The catalog.
+     * @param image   The image file.
+     */
+    private static void saveImage(ProductCatalog catalog, File image) {
+        try {
+            catalog.save(image.toPath());
+        } catch (IOException e) {
+            System.err.println("Error saving the catalog image: " + image);
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Validates the sales files before they are read, writing the rejected lines and moving the files with
+     * too many errors to the quarantine folder.
+     *
+     * @param catalog The product catalog the product IDs are checked against.
+     * @param options The run options, with the maximum error rate and the number of workers.
+     * @param metrics The metrics of the run.
+     */
+    private static void validateSales(ProductCatalog catalog, RunOptions options, RunMetrics metrics) {
+        try {
+            SalesValidator.Summary summary = SalesValidator.validate(SALES_FOLDER, catalog, options.getWorkers(),
+                    options.getMaxErrorRate(), QUARANTINE_FOLDER, REJECTS_FILE, metrics);
+            if (options.getConsole() != ConsoleMode.QUIET) {
+                System.out.println("Validated " + summary.getFiles() + " sales files: " + summary.getRejectedLines()
+                        + " of " + summary.getLines() + " lines rejected, written to " + REJECTS_FILE);
+                if (!summary.getQuarantined().isEmpty()) {
+                    System.out.println("Quarantined " + summary.getQuarantined().size() + " sales files in "
+                            + QUARANTINE_FOLDER + ": " + String.join(", ", summary.getQuarantined()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error validating the sales files in: " + SALES_FOLDER);
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Reads all the sales files in a single pass, building the seller totals and the product quantities together.
+     *
+     * @param catalog The product catalog used to look up prices.
+     * @param options The run options, which choose between reading every file, with or without checkpoints,
+     *                an incremental run and the sales of a window of days, kept across incremental runs.
+     * @param errors  The reporter of the rejected sales lines.
+     * @param metrics The metrics of the run.
+     * @return The aggregate with the total sales of each seller and the quantity sold of each product.
+     */
+    private static SalesAggregate readSales(ProductCatalog catalog, RunOptions options, ErrorReporter errors,
+                                            RunMetrics metrics) {
+        SalesWindow window = options.getWindow();
+        if (window != null) {
+            SalesRollups rollups = options.isIncremental()
+                    ? RollupIngestion.ingest(SALES_FOLDER, PRODUCTS_FILE, STATE_FOLDER, catalog, options.getWorkers(),
+                    errors, metrics)
+                    : RollupIngestion.ingest(SALES_FOLDER, catalog, options.getWorkers(), errors, metrics);
+            if (options.getConsole() != ConsoleMode.QUIET) {
+                System.out.println("Reporting the sales from " + window.getFrom() + " to " + window.getTo());
+            }
+            return window.select(rollups);
+        }
+        if (options.isIncremental()) {
+            return IncrementalIngestion.ingest(SALES_FOLDER, PRODUCTS_FILE, STATE_FOLDER, catalog,
+                    options.getWorkers(), errors, metrics);
+        }
+        if (options.getCheckpointMillis() >= 0) {
+            return CheckpointedIngestion.ingest(SALES_FOLDER, PRODUCTS_FILE, CHECKPOINT_FOLDER, catalog,
+                    options.getWorkers(), options.getCheckpointMillis(), errors, metrics);
+        }
+        return SalesIngestion.ingest(SALES_FOLDER, catalog, options.getWorkers(), errors, metrics);
+    }
 
+    /**
+     * Closes the wrong files report, timing the writing of the pending messages and of the summary.
+     *
+     * @param errors     The reporter of the run.
+     * @param sizeBefore The size of the report before the run.
+     * @param metrics    The metrics of the run.
+     * @throws IOException If the report cannot be written.
+     */
+    private static void closeErrors(ErrorReporter errors, long sizeBefore, RunMetrics metrics) throws IOException {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.ERROR_LOGGING);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            errors.close();
+        } finally {
+            metrics.recordRejects(errors);
+            phase.addFiles(1);
+            phase.addLines(errors.getTotal());
+            phase.addBytesWritten(new File(WRONG_FILES_REPORT).length() - sizeBefore);
+            timer.stop();
+        }
+    }
 
+    /**
+     * Exports the metrics of the run as <code>metrics.json</code> and <code>metrics.prom</code>.
+     *
+     * @param metrics The metrics of the run.
+     * @param folder  The folder of the metrics files.
+     */
+    private static void exportMetrics(RunMetrics metrics, String folder) {
+        try {
+            metrics.writeJson(folder + METRICS_JSON);
+            metrics.writePrometheus(folder + METRICS_PROMETHEUS);
+        } catch (IOException e) {
+            System.err.println("Error writing the run metrics to: " + folder);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package Main;
+
+import Utils.ConsoleMode;
+import Utils.SalesWindow;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Options of a report run, read from the command line arguments.
+ * <p>
+ * Supported arguments:
+ * <ul>
+ *     <li><code>--workers &lt;n&gt;</code>: number of sales files, or of ranges of lines of a large sellers or
+ *     products file, read at the same time (1 by default, 0 uses one worker per available processor).</li>
+ *     <li><code>--top &lt;n&gt;</code>: only report the <code>n</code> sellers and products with the highest
+ *     sales (0, the default, reports them all).</li>
+ *     <li><code>--incremental</code>: only read the sales files that changed since the previous
+ *     incremental run, keeping the state under <code>SalesReport/State/</code>. Cannot be combined with the
+ *     watch and snapshot modes.</li>
+ *     <li><code>--watch</code>: keep running and update the reports as sales files and the products file
+ *     change. Cannot be combined with the incremental and snapshot modes.</li>
+ *     <li><code>--compile-snapshot &lt;file&gt;</code>: compile the products, sellers and sales files into a
+ *     binary snapshot and exit without writing the reports. Cannot be combined with the incremental and
+ *     watch modes or <code>--snapshot</code>.</li>
+ *     <li><code>--snapshot &lt;file&gt;</code>: read the products, sellers and sales from a snapshot instead
+ *     of the text files.</li>
+ *     <li><code>--window &lt;window&gt;</code>: only report the sales of a range of days, built from daily,
+ *     weekly and monthly rollups: <code>last-&lt;n&gt;-days</code>, <code>week-to-date</code>,
+ *     <code>month-to-date</code>, <code>year-to-date</code>, <code>yyyy-MM-dd</code> or
+ *     <code>yyyy-MM-dd..yyyy-MM-dd</code>. With <code>--incremental</code> the daily sales of every sales file
+ *     are kept under <code>SalesReport/State/</code>, and later runs only read the files that changed. Cannot
+ *     be combined with the watch and snapshot modes.</li>
+ *     <li><code>--as-of &lt;yyyy-MM-dd&gt;</code>: the day the relative windows end on (today by default).</li>
+ *     <li><code>--metrics &lt;folder&gt;</code>: folder where the timings and counters of the run are
+ *     exported as <code>metrics.json</code> and <code>metrics.prom</code>
+ *     (<code>SalesReport/Metrics/</code> by default).</li>
+ *     <li><code>--serve &lt;port&gt;</code>: keep running after the reports are written and serve them, and the
+ *     lookups of single sellers and products, as CSV and JSON on <code>http://127.0.0.1:&lt;port&gt;/</code>
+ *     (0 picks a free port). In watch mode the served reports follow the updates.</li>
+ *     <li><code>--catalog-image &lt;file&gt;</code>: map the product catalog from an image file, built from the
+ *     products file when it is missing or was built from a products file with another size, modification time
+ *     or content. Product lines rejected when the image was built are not reported again. Cannot be combined
+ *     with the watch and snapshot modes.</li>
+ *     <li><code>--validate &lt;rate&gt;</code>: validate the sales files before reading them, writing each
+ *     rejected line to <code>SalesReport/Rejects/rejects.csv</code> and moving the files whose share of rejected
+ *     lines is above <code>rate</code>, from 0 to 1, to <code>SoldProducts/Quarantine/</code>. Cannot be
+ *     combined with the watch and snapshot modes.</li>
+ *     <li><code>--sort-memory &lt;MB&gt;</code>: when every seller and product is reported, rank the rows of the
+ *     reports in memory up to about <code>MB</code> megabytes each and spill the rest to sorted runs under
+ *     <code>SalesReport/Sort/</code>, merged while the reports are written (0, the default, ranks them all in
+ *     memory).</li>
+ *     <li><code>--checkpoint &lt;seconds&gt;</code>: save a checkpoint of the sales files read and of their
+ *     aggregate under <code>SalesReport/Checkpoint/</code> at most every <code>seconds</code> seconds, at least
+ *     10, so a run that is stopped resumes from the last checkpoint when started again. Each checkpoint writes
+ *     the whole aggregate, so a short interval on a large run spends much of it writing checkpoints. Cannot be
+ *     combined with the incremental, watch, window and snapshot modes.</li>
+ *     <li><code>--debounce &lt;ms&gt;</code>: in watch mode, how long the folders must be quiet before the
+ *     reports are updated (2000 by default).</li>
+ * </ul>
+ * </p>
+ */
+public class RunOptions {
+
+    // Each checkpoint writes the whole aggregate, whose size grows with the sales read
+    private static final long MIN_CHECKPOINT_SECONDS = 10;
+
+    private int workers = 1;
+    private int top = 0;
+    private boolean incremental = false;
+    private boolean watch = false;
+    private long debounceMillis = 2000;
+    private String compileSnapshot;
+    private String snapshot;
+    private ConsoleMode console = ConsoleMode.FULL;
+    private String metricsFolder = "SalesReport/Metrics/";
+    private SalesWindow window;
+    private int servePort = -1;
+    private String catalogImage;
+    private double maxErrorRate = -1;
+    private long sortMemory = 0;
+    private long checkpointMillis = -1;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args The command line arguments.
+     * @return The run options.
+     * @throws IllegalArgumentException If an argument is unknown or has an invalid value.
+     */
+    public static RunOptions parse(String[] args) {
+        RunOptions options = new RunOptions();
+        String windowText = null;
+        LocalDate asOf = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--workers":
+                    options.workers = parseWorkers(valueOf(args, ++i, arg));
+                    break;
+                case "--top":
+                    options.top = parseCount(valueOf(args, ++i, arg), arg);
+                    break;
+                case "--incremental":
+                    options.incremental = true;
+                    break;
+                case "--watch":
+                    options.watch = true;
+                    break;
+                case "--debounce":
+                    options.debounceMillis = parseCount(valueOf(args, ++i, arg), arg);
+                    break;
+                case "--compile-snapshot":
+                    options.compileSnapshot = valueOf(args, ++i, arg);
+                    break;
+                case "--snapshot":
+                    options.snapshot = valueOf(args, ++i, arg);
+                    break;
+                case "--console":
+                    options.console = parseConsoleMode(valueOf(args, ++i, arg));
+                    break;
+                case "--metrics":
+                    options.metricsFolder = withSeparator(valueOf(args, ++i, arg));
+                    break;
+                case "--window":
+                    windowText = valueOf(args, ++i, arg);
+                    break;
+                case "--serve":
+                    options.servePort = parsePort(valueOf(args, ++i, arg));
+                    break;
+                case "--catalog-image":
+                    options.catalogImage = valueOf(args, ++i, arg);
+                    break;
+                case "--validate":
+                    options.maxErrorRate = parseRate(valueOf(args, ++i, arg), arg);
+                    break;
+                case "--sort-memory":
+                    options.sortMemory = parseCount(valueOf(args, ++i, arg), arg) * (1L << 20);
+                    break;
+                case "--checkpoint":
+                    long checkpointSeconds = parseCount(valueOf(args, ++i, arg), arg);
+                    if (checkpointSeconds < MIN_CHECKPOINT_SECONDS) {
+                        throw new IllegalArgumentException("The value of " + arg + " must be at least "
+                                + MIN_CHECKPOINT_SECONDS + ": " + checkpointSeconds);
+                    }
+                    options.checkpointMillis = checkpointSeconds * 1000L;
+                    break;
+                case "--as-of":
+                    asOf = SalesWindow.parseDate(valueOf(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (options.snapshot != null && (options.incremental || options.watch)) {
+            throw new IllegalArgumentException("--snapshot cannot be combined with --incremental or --watch");
+        }
+        if (options.watch && options.incremental) {
+            throw new IllegalArgumentException("--watch cannot be combined with --incremental");
+        }
+        if (options.compileSnapshot != null && (options.incremental || options.watch || options.snapshot != null)) {
+            throw new IllegalArgumentException(
+                    "--compile-snapshot cannot be combined with --incremental, --watch or --snapshot");
+        }
+        if (options.servePort >= 0 && options.compileSnapshot != null) {
+            throw new IllegalArgumentException("--serve cannot be combined with --compile-snapshot");
+        }
+        if (options.catalogImage != null
+                && (options.watch || options.snapshot != null || options.compileSnapshot != null)) {
+            throw new IllegalArgumentException("--catalog-image cannot be combined with --watch or a snapshot");
+        }
+        if (options.maxErrorRate >= 0
+                && (options.watch || options.snapshot != null || options.compileSnapshot != null)) {
+            throw new IllegalArgumentException("--validate cannot be combined with --watch or a snapshot");
+        }
+        if (options.checkpointMillis >= 0 && (options.incremental || options.watch || windowText != null
+                || options.snapshot != null || options.compileSnapshot != null)) {
+            throw new IllegalArgumentException(
+                    "--checkpoint cannot be combined with --incremental, --watch, --window or a snapshot");
+        }
+        if (windowText != null) {
+            if (options.watch || options.snapshot != null || options.compileSnapshot != null) {
+                throw new IllegalArgumentException("--window cannot be combined with --watch or a snapshot");
+            }
+            options.window = SalesWindow.parse(windowText, asOf != null ? asOf : LocalDate.now());
+        } else if (asOf != null) {
+            throw new IllegalArgumentException("--as-of requires --window");
+        }
+        return options;
+    }
+
+    /**
+     * Gets the number of sales files, or of ranges of the sellers and products files, read at the same time.
+     *
+     * @return The number of workers, at least 1.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Gets the number of sellers and products to report.
+     *
+     * @return The number of rows of each report, or 0 to report every row.
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Checks whether only the sales files changed since the previous run should be read.
+     *
+     * @return True for an incremental run.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Checks whether the reports should be kept up to date as files change.
+     *
+     * @return True for watch mode.
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Gets how long the watched folders must be quiet before the reports are updated.
+     *
+     * @return The debounce delay in milliseconds.
+     */
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    /**
+     * Gets the snapshot to compile from the text files.
+     *
+     * @return The path of the snapshot, or null to write the reports instead.
+     */
+    public String getCompileSnapshot() {
+        return compileSnapshot;
+    }
+
+    /**
+     * Gets the snapshot to read instead of the text files.
+     *
+     * @return The path of the snapshot, or null to read the text files.
+     */
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets how much of the reports is shown in the console.
+     *
+     * @return The console mode.
+     */
+    public ConsoleMode getConsole() {
+        return console;
+    }
+
+    /**
+     * Gets the folder where the metrics of the run are exported.
+     *
+     * @return The folder, ending with a separator.
+     */
+    public String getMetricsFolder() {
+        return metricsFolder;
+    }
+
+    /**
+     * Gets the range of days the reports are limited to.
+     *
+     * @return The window, or null to report all the sales.
+     */
+    public SalesWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Gets the port the reports are served on.
+     *
+     * @return The port, 0 for a free port, or -1 to exit once the reports are written.
+     */
+    public int getServePort() {
+        return servePort;
+    }
+
+    /**
+     * Gets the image the product catalog is mapped from.
+     *
+     * @return The path of the image, or null to load the catalog from the products file.
+     */
+    public String getCatalogImage() {
+        return catalogImage;
+    }
+
+    /**
+     * Gets the share of rejected lines above which a sales file is quarantined by the validation stage.
+     *
+     * @return The rate, from 0 to 1, or -1 to read the sales files without validating them first.
+     */
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    /**
+     * Gets the memory budget of the ranking of the report rows.
+     *
+     * @return The estimated size in bytes of the rows ranked in memory, or 0 to rank them all in memory.
+     */
+    public long getSortMemory() {
+        return sortMemory;
+    }
+
+    /**
+     * Gets the minimum time between two checkpoints of the sales ingestion.
+     *
+     * @return The interval in milliseconds, or -1 to save no checkpoints.
+     */
+    public long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    private static String withSeparator(String folder) {
+        return folder.endsWith("/") || folder.endsWith(File.separator) ? folder : folder + File.separator;
+    }
+
+    private static String valueOf(String[] args, int index, String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+        return args[index];
+    }
+
+    private static ConsoleMode parseConsoleMode(String value) {
+        try {
+            return ConsoleMode.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for --console: " + value);
+        }
+    }
+
+    private static int parseWorkers(String value) {
+        int workers = parseCount(value, "--workers");
+        return workers == 0 ? Runtime.getRuntime().availableProcessors() : workers;
+    }
+
+    private static int parsePort(String value) {
+        int port = parseCount(value, "--serve");
+        if (port > 65535) {
+            throw new IllegalArgumentException("Invalid value for --serve: " + value);
+        }
+        return port;
+    }
+
+    private static double parseRate(String value, String name) {
+        try {
+            double rate = Double.parseDouble(value);
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("The value of " + name + " must be between 0 and 1: " + value);
+            }
+            return rate;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private static int parseCount(String value, String name) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("The value of " + name + " cannot be negative: " + value);
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package SalesInfo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes ASCII text and numbers straight into a byte buffer, without the formatting and encoding work of
+ * <code>String.format</code> and a <code>Writer</code>.
+ */
+class AsciiWriter implements Closeable {
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] digits = new byte[20];
+    private int position;
+
+    /**
+     * Creates a writer that replaces the content of a file.
+     *
+     * @param file       The file to write.
+     * @param bufferSize The size of the buffer, in bytes.
+     * @throws IOException If the file cannot be opened.
+     */
+    AsciiWriter(File file, int bufferSize) throws IOException {
+        this.out = new FileOutputStream(file);
+        this.buffer = new byte[Math.max(bufferSize, digits.length)];
+    }
+
+    /**
+     * Writes a text made of ASCII characters.
+     *
+     * @param text The text.
+     * @return This writer.
+     * @throws IOException If the text cannot be written.
+     */
+    AsciiWriter write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Writes an ASCII character.
+     *
+     * @param c The character.
+     * @return This writer.
+     * @throws IOException If the character cannot be written.
+     */
+    AsciiWriter write(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Writes a number that is not negative.
+     *
+     * @param number The number.
+     * @return This writer.
+     * @throws IOException If the number cannot be written.
+     */
+    AsciiWriter write(long number) throws IOException {
+        return write(number, 1);
+    }
+
+    /**
+     * Writes a number that is not negative, padded with zeros on the left.
+     *
+     * @param number The number.
+     * @param width  The minimum number of digits.
+     * @return This writer.
+     * @throws IOException If the number cannot be written.
+     */
+    AsciiWriter write(long number, int width) throws IOException {
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        while (count < width) {
+            digits[count++] = '0';
+        }
+        if (buffer.length - position < count) {
+            flushBuffer();
+        }
+        while (count > 0) {
+            buffer[position++] = digits[--count];
+        }
+        return this;
+    }
+
+    /**
+     * Writes a line break.
+     *
+     * @return This writer.
+     * @throws IOException If the line break cannot be written.
+     */
+    AsciiWriter newLine() throws IOException {
+        return write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
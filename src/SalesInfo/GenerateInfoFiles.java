@@ -1,30 +1,47 @@
 package SalesInfo;
 
 import Utils.ProductsCount;
+import Utils.SalesBatchIndex;
+import Utils.SalesInput;
 import Utils.SalesmanCount;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Generates files with pseudo-random data for sellers, sales, and products.
+ * <p>
+ * The sizes, the seed and the popularity of the products are set by {@link GeneratorOptions}; without a
+ * popularity, every seller sells the products in catalog order, as the original generator did. The sales
+ * files are written in parallel, in blocks of {@link #SELLERS_PER_TASK} sellers, or of the sellers of one
+ * consolidated file. Every block, the sellers file and the products file draw from their own
+ * {@link SplittableRandom} split from the seed in a fixed order, so the same seed produces the same files
+ * whatever the number of workers.
+ * </p>
  */
 public class GenerateInfoFiles {
 
-    private static final String MAIN_FOLDER = "SoldProducts";
     private static final String SALES_FOLDER = "Sales";
     private static final String SELLERS_FOLDER = "Sellers";
     private static final String PRODUCTS_FOLDER = "Products";
-    private static final int NUM_SELLERS = 7;
-    private static final int NUM_PRODUCTS = 10;
-    private static final int NUM_PRODUCTS_PER_SELLER = 8; // Number of products per seller
     private static final int MAX_QUANTITY = 10; // Maximum quantity per sale
+    private static final int DOCUMENT_DIGITS = 8;
+    private static final int BATCH_DIGITS = 6;
+    private static final int SELLERS_PER_TASK = 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Upper bound of the length of a sale line, used to size the buffer of small sales files
+    private static final int MAX_SALE_LINE_LENGTH = 34;
 
     public static void main(String[] args) {
-        File mainFolder = new File(MAIN_FOLDER);
+        GeneratorOptions options = GeneratorOptions.parse(args);
+        File mainFolder = new File(options.getOutputFolder());
         File salesFolder = new File(mainFolder, SALES_FOLDER);
         File sellersFolder = new File(mainFolder, SELLERS_FOLDER);
         File productsFolder = new File(mainFolder, PRODUCTS_FOLDER);
@@ -34,11 +51,50 @@ public class GenerateInfoFiles {
         createFolder(sellersFolder);
         createFolder(productsFolder);
 
-        Map<String, String> documentNumbers = new HashMap<>();
+        System.out.println("Generating data with seed " + options.getSeed());
+        if (options.getDays() > 0) {
+            System.out.println("Dating the sales over the " + options.getDays() + " days up to " + options.getLastDay());
+        }
+        SplittableRandom random = new SplittableRandom(options.getSeed());
+        SplittableRandom sellersRandom = random.split();
+        SplittableRandom productsRandom = random.split();
+        ZipfSampler popularity = options.isZipf()
+                ? new ZipfSampler(options.getProducts(), options.getZipfExponent()) : null;
+        AtomicLong salesFiles = new AtomicLong();
 
-        createSalesManInfoFile(new File(sellersFolder, "sellers_info.txt"), documentNumbers);
-        createSalesFiles(salesFolder, documentNumbers);
-        createProductsFile(new File(productsFolder, "products_info.txt"));
+        ForkJoinPool pool = new ForkJoinPool(options.getWorkers());
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            tasks.add(pool.submit(() -> createSalesManInfoFile(new File(sellersFolder, "sellers_info.txt"), options, sellersRandom)));
+            tasks.add(pool.submit(() -> createProductsFile(new File(productsFolder, "products_info.txt"), options, productsRandom)));
+            int blockSize = options.getBatch() > 0 ? options.getBatch() : SELLERS_PER_TASK;
+            for (int first = 0; first < options.getSellers(); first += blockSize) {
+                int start = first;
+                int end = (int) Math.min((long) first + blockSize, options.getSellers());
+                SplittableRandom blockRandom = random.split();
+                if (options.getBatch() > 0) {
+                    File batchFile = new File(salesFolder, SalesInput.BATCH_PREFIX + zeroPadded(first / blockSize,
+                            BATCH_DIGITS) + ".txt");
+                    tasks.add(pool.submit(() -> salesFiles.addAndGet(
+                            createBatchFile(batchFile, start, end, options, popularity, blockRandom))));
+                } else {
+                    tasks.add(pool.submit(() -> salesFiles.addAndGet(
+                            createSalesFiles(salesFolder, start, end, options, popularity, blockRandom))));
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            System.out.println(salesFiles.get() + " sales files generated successfully at: " + salesFolder.getAbsolutePath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Data generation was interrupted");
+        } catch (ExecutionException e) {
+            System.err.println("Error generating the data files");
+            e.getCause().printStackTrace();
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
     /**
@@ -59,19 +115,19 @@ public class GenerateInfoFiles {
     /**
      * Creates a file with information about sellers.
      *
-     * @param file            The file to be created.
-     * @param documentNumbers A map to store document numbers and corresponding seller identifiers.
+     * @param file    The file to be created.
+     * @param options The generator options.
+     * @param random  The source of the document types.
      */
-    private static void createSalesManInfoFile(File file, Map<String, String> documentNumbers) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            for (int i = 0; i < NUM_SELLERS; i++) {
-                String documentType = SalesmanCount.getRandomDocumentType();
-                String documentNumber = SalesmanCount.generateRandomDocumentNumber();
-                String[] name = SalesmanCount.generateUniqueName();
-                String firstName = name[0];
-                String lastName = name[1];
-                bw.write(String.format("%s;%s;%s;%s%n", documentType, documentNumber, firstName, lastName));
-                documentNumbers.put(documentNumber, "Seller_" + i);
+    private static void createSalesManInfoFile(File file, GeneratorOptions options, SplittableRandom random) {
+        int digits = documentDigits(options.getSellers());
+        try (AsciiWriter writer = new AsciiWriter(file, BUFFER_SIZE)) {
+            for (int i = 0; i < options.getSellers(); i++) {
+                String documentType = SalesmanCount.getRandomDocumentType(random);
+                long documentNumber = SalesmanCount.generateDocumentNumber(i, options.getSeed(), digits);
+                String[] name = SalesmanCount.generateUniqueName(i, options.getSeed());
+                writer.write(documentType).write(';').write(documentNumber, digits).write(';')
+                        .write(name[0]).write(';').write(name[1]).newLine();
             }
             System.out.println("Sellers file generated successfully at: " + file.getAbsolutePath());
         } catch (IOException e) {
@@ -80,44 +136,108 @@ public class GenerateInfoFiles {
         }
     }
 
-
     /**
-     * Creates sales files for each seller. Each file contains the seller's document number and a list of sales
-     * with product IDs and quantities.
+     * Creates the sales files of a block of sellers. Each file contains the seller's document number and a
+     * list of sales with product IDs, in catalog order or drawn by popularity, quantities and, if requested,
+     * dates.
      *
-     * @param folder          The folder where the sales files will be created.
-     * @param documentNumbers A map associating document numbers with seller identifiers.
+     * @param folder     The folder where the sales files will be created.
+     * @param start      The index of the first seller of the block, inclusive.
+     * @param end        The index of the last seller of the block, exclusive.
+     * @param options    The generator options.
+     * @param popularity The sampler of the rank of the product sold on each line, or null to sell the
+     *                   products in catalog order.
+     * @param random     The source of the products and quantities of the block.
+     * @return The number of sales files created.
      */
-    private static void createSalesFiles(File folder, Map<String, String> documentNumbers) {
-        for (String documentNumber : documentNumbers.keySet()) {
-            File salesFile = new File(folder, "sales_" + documentNumber + ".txt");
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(salesFile))) {
-                bw.write(String.format("DNI;%s%n", documentNumber));
-                for (int j = 0; j < NUM_PRODUCTS_PER_SELLER; j++) {
-                    String productId = "P" + String.format("%03d", j + 1);
-                    int quantity = SalesmanCount.RANDOM.nextInt(MAX_QUANTITY) + 1; // Correct reference to RANDOM
-                    bw.write(String.format("%s;%d;%n", productId, quantity));
-                }
-                System.out.println("Sales file generated successfully for seller: " + documentNumber);
+    private static int createSalesFiles(File folder, int start, int end, GeneratorOptions options,
+                                        ZipfSampler popularity, SplittableRandom random) {
+        int digits = documentDigits(options.getSellers());
+        int bufferSize = (int) Math.min(BUFFER_SIZE, 32L + (long) options.getSalesPerSeller() * MAX_SALE_LINE_LENGTH);
+        LocalDate[] dates = saleDates(options);
+        int created = 0;
+        for (int i = start; i < end; i++) {
+            long documentNumber = SalesmanCount.generateDocumentNumber(i, options.getSeed(), digits);
+            File salesFile = new File(folder, "sales_" + zeroPadded(documentNumber, digits) + ".txt");
+            try (AsciiWriter writer = new AsciiWriter(salesFile, bufferSize)) {
+                writeSales(writer, documentNumber, digits, dates, options, popularity, random);
+                created++;
             } catch (IOException e) {
                 System.err.println("Error generating the sales file for seller with document number: " + documentNumber);
                 e.printStackTrace();
             }
         }
+        return created;
     }
 
     /**
-     * Creates a file with pseudo-random information about products.
+     * Creates a consolidated sales file with the sections of a block of sellers, one after the other, and
+     * builds its offset index.
      *
-     * @param file The file to be created.
+     * @param file       The consolidated file to be created.
+     * @param start      The index of the first seller of the block, inclusive.
+     * @param end        The index of the last seller of the block, exclusive.
+     * @param options    The generator options.
+     * @param popularity The sampler of the rank of the product sold on each line, or null to sell the
+     *                   products in catalog order.
+     * @param random     The source of the products and quantities of the block.
+     * @return 1 if the file was created, 0 otherwise.
+     */
+    private static int createBatchFile(File file, int start, int end, GeneratorOptions options,
+                                       ZipfSampler popularity, SplittableRandom random) {
+        int digits = documentDigits(options.getSellers());
+        LocalDate[] dates = saleDates(options);
+        try {
+            try (AsciiWriter writer = new AsciiWriter(file, BUFFER_SIZE)) {
+                for (int i = start; i < end; i++) {
+                    long documentNumber = SalesmanCount.generateDocumentNumber(i, options.getSeed(), digits);
+                    writeSales(writer, documentNumber, digits, dates, options, popularity, random);
+                }
+            }
+            SalesBatchIndex.build(file.toPath());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Error generating the consolidated sales file: " + file.getAbsolutePath());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the header line of a seller and their sale lines.
      */
-    private static void createProductsFile(File file) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            for (int i = 0; i < NUM_PRODUCTS; i++) {
-                String productId = "P" + String.format("%03d", i + 1);
-                String productName = ProductsCount.getRandomProductName();
-                int price = ProductsCount.getRandomProductPrice();
-                bw.write(String.format("%s;%s;%,d%n", productId, productName, price));
+    private static void writeSales(AsciiWriter writer, long documentNumber, int digits, LocalDate[] dates,
+                                   GeneratorOptions options, ZipfSampler popularity, SplittableRandom random)
+            throws IOException {
+        writer.write("DNI;").write(documentNumber, digits).newLine();
+        for (int j = 0; j < options.getSalesPerSeller(); j++) {
+            int quantity = random.nextInt(MAX_QUANTITY) + 1;
+            int rank = popularity != null ? popularity.sample(random) : j % options.getProducts() + 1;
+            writer.write('P').write(rank, 3).write(';').write(quantity).write(';');
+            if (dates.length > 0) {
+                LocalDate date = dates[random.nextInt(dates.length)];
+                writer.write(date.getYear(), 4).write('-').write(date.getMonthValue(), 2).write('-')
+                        .write(date.getDayOfMonth(), 2);
+            }
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Creates a file with pseudo-random information about products. Prices are written in thousands with
+     * a dot as thousands separator, as in <code>17.000</code>, whatever the default locale.
+     *
+     * @param file    The file to be created.
+     * @param options The generator options.
+     * @param random  The source of the names and prices.
+     */
+    private static void createProductsFile(File file, GeneratorOptions options, SplittableRandom random) {
+        try (AsciiWriter writer = new AsciiWriter(file, BUFFER_SIZE)) {
+            for (int i = 0; i < options.getProducts(); i++) {
+                String productName = ProductsCount.getRandomProductName(random);
+                int price = ProductsCount.getRandomProductPrice(random);
+                writer.write('P').write(i + 1, 3).write(';').write(productName).write(';')
+                        .write(price / 1000).write('.').write(price % 1000, 3).newLine();
             }
             System.out.println("Products file generated successfully at: " + file.getAbsolutePath());
         } catch (IOException e) {
@@ -125,7 +245,33 @@ public class GenerateInfoFiles {
             e.printStackTrace();
         }
     }
-}
 
+    /**
+     * Gets the days the sales are drawn from.
+     *
+     * @param options The generator options.
+     * @return The days ending on the last day, or no days for undated sales.
+     */
+    private static LocalDate[] saleDates(GeneratorOptions options) {
+        LocalDate[] dates = new LocalDate[options.getDays()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = options.getLastDay().minusDays(dates.length - 1 - i);
+        }
+        return dates;
+    }
 
+    private static String zeroPadded(long number, int digits) {
+        StringBuilder text = new StringBuilder(digits).append(number);
+        while (text.length() < digits) {
+            text.insert(0, '0');
+        }
+        return text.toString();
+    }
 
+    /**
+     * Gets the number of digits of the document numbers: 8, or 9 when there are more sellers than 8 digit numbers.
+     */
+    private static int documentDigits(int sellers) {
+        return sellers > 100_000_000 ? DOCUMENT_DIGITS + 1 : DOCUMENT_DIGITS;
+    }
+}
@@ -0,0 +1,209 @@
+package SalesInfo;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Options of a data generation run, read from the command line arguments.
+ * <p>
+ * Supported arguments:
+ * <ul>
+ *     <li><code>--sellers &lt;n&gt;</code>: number of sellers, each with its own sales file (7 by default).</li>
+ *     <li><code>--products &lt;n&gt;</code>: number of products in the catalog (10 by default).</li>
+ *     <li><code>--sales &lt;n&gt;</code>: number of sale lines of each sales file (8 by default).</li>
+ *     <li><code>--zipf &lt;s&gt;</code>: draw the product of each sale line by a Zipf popularity with
+ *     exponent <code>s</code>; 0 sells every product equally often. Without it, as in the original
+ *     generator, every seller sells the products in catalog order, <code>P001</code>, <code>P002</code>,
+ *     ..., starting over after the last one.</li>
+ *     <li><code>--seed &lt;n&gt;</code>: seed of the random data; the same seed and counts produce the same
+ *     files (a random seed, printed at the start, by default).</li>
+ *     <li><code>--days &lt;n&gt;</code>: date every sale line with one of the <code>n</code> days ending on the
+ *     last day; 0, the default, writes undated lines.</li>
+ *     <li><code>--last-day &lt;yyyy-MM-dd&gt;</code>: the last day of the dated sales (today by default).</li>
+ *     <li><code>--batch &lt;n&gt;</code>: write the sales of every <code>n</code> sellers in one consolidated
+ *     file <code>batch_&lt;k&gt;.txt</code> with its offset index instead of one file per seller; 0, the
+ *     default, writes one file per seller.</li>
+ *     <li><code>--workers &lt;n&gt;</code>: number of files written at the same time (0, the default, uses
+ *     one worker per available processor).</li>
+ *     <li><code>--output &lt;folder&gt;</code>: folder where the files are generated (<code>SoldProducts</code>
+ *     by default).</li>
+ * </ul>
+ * </p>
+ */
+public class GeneratorOptions {
+
+    // Largest number of sellers whose document numbers fit in the 9 digit permutation
+    private static final int MAX_SELLERS = 1_000_000_000;
+
+    private int sellers = 7;
+    private int products = 10;
+    private int salesPerSeller = 8;
+    private double zipfExponent = 0;
+    private boolean zipf = false;
+    private long seed = System.nanoTime();
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private String outputFolder = "SoldProducts";
+    private int days = 0;
+    private LocalDate lastDay = LocalDate.now();
+    private int batch = 0;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args The command line arguments.
+     * @return The generator options.
+     * @throws IllegalArgumentException If an argument is unknown or has an invalid value.
+     */
+    public static GeneratorOptions parse(String[] args) {
+        GeneratorOptions options = new GeneratorOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--sellers":
+                    options.sellers = parseCount(valueOf(args, ++i, arg), arg, 1);
+                    if (options.sellers > MAX_SELLERS) {
+                        throw new IllegalArgumentException("The value of --sellers cannot exceed " + MAX_SELLERS);
+                    }
+                    break;
+                case "--products":
+                    options.products = parseCount(valueOf(args, ++i, arg), arg, 1);
+                    break;
+                case "--sales":
+                    options.salesPerSeller = parseCount(valueOf(args, ++i, arg), arg, 0);
+                    break;
+                case "--zipf":
+                    options.zipfExponent = parseExponent(valueOf(args, ++i, arg));
+                    options.zipf = true;
+                    break;
+                case "--seed":
+                    options.seed = parseSeed(valueOf(args, ++i, arg));
+                    break;
+                case "--workers":
+                    int workers = parseCount(valueOf(args, ++i, arg), arg, 0);
+                    options.workers = workers == 0 ? Runtime.getRuntime().availableProcessors() : workers;
+                    break;
+                case "--days":
+                    options.days = parseCount(valueOf(args, ++i, arg), arg, 0);
+                    break;
+                case "--last-day":
+                    options.lastDay = parseDate(valueOf(args, ++i, arg));
+                    break;
+                case "--batch":
+                    options.batch = parseCount(valueOf(args, ++i, arg), arg, 0);
+                    break;
+                case "--output":
+                    options.outputFolder = valueOf(args, ++i, arg);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return options;
+    }
+
+    public int getSellers() {
+        return sellers;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+
+    public int getSalesPerSeller() {
+        return salesPerSeller;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    /**
+     * Tells whether the products of the sale lines are drawn by popularity.
+     *
+     * @return True if <code>--zipf</code> was given, false if the products are sold in catalog order.
+     */
+    public boolean isZipf() {
+        return zipf;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public String getOutputFolder() {
+        return outputFolder;
+    }
+
+    /**
+     * Gets the number of days the sales are spread over.
+     *
+     * @return The number of days, or 0 for undated sales.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    public LocalDate getLastDay() {
+        return lastDay;
+    }
+
+    /**
+     * Gets the number of sellers of each consolidated sales file.
+     *
+     * @return The number of sellers, or 0 for one sales file per seller.
+     */
+    public int getBatch() {
+        return batch;
+    }
+
+    private static String valueOf(String[] args, int index, String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+        return args[index];
+    }
+
+    private static int parseCount(String value, String name, int minimum) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < minimum) {
+                throw new IllegalArgumentException("The value of " + name + " must be at least " + minimum + ": " + value);
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private static double parseExponent(String value) {
+        try {
+            double exponent = Double.parseDouble(value);
+            if (!(exponent >= 0) || Double.isInfinite(exponent)) {
+                throw new IllegalArgumentException("The value of --zipf must be a number of 0 or more: " + value);
+            }
+            return exponent;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for --zipf: " + value);
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid value for --last-day: " + value);
+        }
+    }
+
+    private static long parseSeed(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for --seed: " + value);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package SalesInfo;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks from <code>1</code> to <code>n</code> with Zipf probabilities, proportional to
+ * <code>1 / rank^exponent</code>.
+ * <p>
+ * Uses the rejection-inversion method of Hörmann and Derflinger, which needs constant time and memory
+ * whatever the number of ranks, so millions of products can be sampled without a table. An exponent of
+ * 0 draws the ranks uniformly. The sampler holds no state and can be shared between threads.
+ * </p>
+ */
+public class ZipfSampler {
+
+    private final int numberOfElements;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralNumberOfElements;
+    private final double s;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param numberOfElements The number of ranks, at least 1.
+     * @param exponent         The exponent of the distribution, 0 or more.
+     */
+    public ZipfSampler(int numberOfElements, double exponent) {
+        if (numberOfElements < 1) {
+            throw new IllegalArgumentException("The number of elements must be positive: " + numberOfElements);
+        }
+        if (!(exponent >= 0)) {
+            throw new IllegalArgumentException("The Zipf exponent cannot be negative: " + exponent);
+        }
+        this.numberOfElements = numberOfElements;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Draws a rank.
+     *
+     * @param random The source of randomness.
+     * @return A rank between 1 and the number of elements.
+     */
+    public int sample(SplittableRandom random) {
+        if (exponent == 0) {
+            return random.nextInt(numberOfElements) + 1;
+        }
+        while (true) {
+            double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > numberOfElements) {
+                k = numberOfElements;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    /** Integral of {@link #h(double)}, <code>(x^(1 - exponent) - 1) / (1 - exponent)</code>. */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    /** Density of the continuous distribution, <code>1 / x^exponent</code>. */
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) {
+            // Rounding errors can push t below its domain
+            t = -1;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    /** <code>log(1 + x) / x</code>, accurate near 0. */
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /** <code>(exp(x) - 1) / x</code>, accurate near 0. */
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1 + x * 0.5 * (1 + x * (1.0 / 3.0) * (1 + 0.25 * x));
+    }
+}
@@ -0,0 +1,546 @@
+package Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Parses sales, products and sellers files directly from their bytes.
+ * <p>
+ * Files are read through a {@link FileChannel}, into a heap buffer for small files or memory-mapped
+ * for large ones; streams, such as decompressed sales files, are read in chunks of whole lines. Lines are split on the bytes without creating a <code>String</code> per line or
+ * an array per split. Integers, and prices through {@link Money}, are parsed in place; text is only
+ * decoded, as UTF-8, when a handler asks for it.
+ * </p>
+ * <p>
+ * Lines are split on <code>\n</code>, <code>\r</code> or <code>\r\n</code>, and fields are counted like
+ * <code>String.split(";")</code>, so trailing empty fields are ignored. A parser keeps scratch state and
+ * must be used by one thread at a time. Products and sellers files can also be parsed a byte range at a
+ * time, such as the ranges of {@link LineRanges}, so that several parsers share a large file.
+ * </p>
+ * <p>
+ * A sales line may carry a third field with its date, as <code>yyyy-MM-dd</code> or as a
+ * <code>yyyy-MM-ddTHH:mm[:ss]</code> timestamp whose time is dropped. Dates are passed on as days since
+ * 1970-01-01.
+ * </p>
+ */
+public class ByteLineParser {
+
+    // Files up to this size are read into a heap buffer, bigger ones are memory-mapped
+    private static final long MAP_THRESHOLD = 1 << 20;
+    // Maximum size of a mapped window; windows end on a line break
+    private static final long MAX_WINDOW = 1 << 28;
+    // Initial size of the chunks of a stream, grown for longer lines
+    private static final int STREAM_CHUNK_SIZE = 1 << 18;
+    private static final int MAX_FIELDS = 4;
+    private static final byte[][] HEADER_PREFIXES = {
+            "DNI;".getBytes(StandardCharsets.US_ASCII), "CC;".getBytes(StandardCharsets.US_ASCII),
+            "CE;".getBytes(StandardCharsets.US_ASCII), "TI;".getBytes(StandardCharsets.US_ASCII)
+    };
+    static final long INVALID_INT = Long.MIN_VALUE;
+    /** Day of a sales line without a date. */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int INVALID_DATE = Integer.MAX_VALUE;
+    private static final int DATE_LENGTH = 10;
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    // Most lines of a file share their date with the line before
+    private int lastDate = -1;
+    private int lastDay;
+
+    /**
+     * Receives the lines of a sales file.
+     */
+    public interface SalesHandler {
+        /**
+         * Called for a header line <code>&lt;documentType&gt;;&lt;documentNumber&gt;</code>.
+         * The document number range is empty if the header has no second field.
+         */
+        void header(ByteBuffer buffer, int documentStart, int documentEnd);
+
+        /**
+         * Called for a valid sales line.
+         */
+        void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity);
+
+        /**
+         * Called for a valid sales line with its day, or {@link #NO_DATE} if the line has no date.
+         * Handlers that do not need the date keep the default, which ignores it.
+         */
+        default void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity, int day) {
+            sale(buffer, productIdStart, productIdEnd, quantity);
+        }
+
+        /**
+         * Called for a line that is not valid.
+         */
+        void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason);
+    }
+
+    /**
+     * Receives the lines of a products file.
+     */
+    public interface ProductHandler {
+        /**
+         * Called for a valid products line, with the price in centavos.
+         */
+        void product(ByteBuffer buffer, int idStart, int idEnd, int nameStart, int nameEnd, long price);
+
+        /**
+         * Called for a line that is not valid. For {@link RejectReason#INVALID_PRICE} the ID range is
+         * the product ID, otherwise it is the whole line.
+         */
+        void reject(ByteBuffer buffer, int start, int end, RejectReason reason);
+    }
+
+    /**
+     * Receives the lines of a sellers file with exactly four fields; other lines are skipped.
+     */
+    public interface SellerHandler {
+        /**
+         * Called for a line <code>documentType;documentNumber;firstName;lastName</code>.
+         */
+        void seller(ByteBuffer buffer, int typeStart, int typeEnd, int numberStart, int numberEnd,
+                    int firstNameStart, int firstNameEnd, int lastNameStart, int lastNameEnd);
+    }
+
+    /**
+     * Parses a sales file.
+     *
+     * @param file    The sales file.
+     * @param handler The handler receiving the lines.
+     * @throws IOException If there is an error reading the file.
+     */
+    public void parseSales(Path file, SalesHandler handler) throws IOException {
+        readFile(file, buffer -> parseSales(buffer, handler));
+    }
+
+    /**
+     * Parses a sales file read from a stream, until the end of the stream. The stream is not closed.
+     *
+     * @param in      The stream of the sales file.
+     * @param handler The handler receiving the lines.
+     * @throws IOException If there is an error reading the stream.
+     */
+    public void parseSales(InputStream in, SalesHandler handler) throws IOException {
+        readStream(in, buffer -> parseSales(buffer, handler));
+    }
+
+    /**
+     * Parses a products file.
+     *
+     * @param file    The products file.
+     * @param handler The handler receiving the lines.
+     * @throws IOException If there is an error reading the file.
+     */
+    public void parseProducts(Path file, ProductHandler handler) throws IOException {
+        readFile(file, buffer -> parseProducts(buffer, handler));
+    }
+
+    /**
+     * Parses the products lines of a byte range of a products file.
+     *
+     * @param file    The products file.
+     * @param start   The start of the range, at the start of a line.
+     * @param end     The end of the range, after a line break or at the end of the file.
+     * @param handler The handler receiving the lines.
+     * @throws IOException If there is an error reading the file.
+     */
+    public void parseProducts(Path file, long start, long end, ProductHandler handler) throws IOException {
+        readRange(file, start, end, buffer -> parseProducts(buffer, handler));
+    }
+
+    /**
+     * Parses the sellers lines of a byte range of a sellers file.
+     *
+     * @param file    The sellers file.
+     * @param start   The start of the range, at the start of a line.
+     * @param end     The end of the range, after a line break or at the end of the file.
+     * @param handler The handler receiving the lines.
+     * @throws IOException If there is an error reading the file.
+     */
+    public void parseSellers(Path file, long start, long end, SellerHandler handler) throws IOException {
+        readRange(file, start, end, buffer -> parseSellers(buffer, handler));
+    }
+
+    /**
+     * Parses the sales lines between the position and the limit of a buffer.
+     *
+     * @param buffer  The buffer holding whole lines.
+     * @param handler The handler receiving the lines.
+     */
+    public void parseSales(ByteBuffer buffer, SalesHandler handler) {
+        int end = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < end) {
+            int lineEnd = lineEnd(buffer, lineStart, end);
+            parseSalesLine(buffer, lineStart, lineEnd, handler);
+            lineStart = nextLine(buffer, lineEnd, end);
+        }
+    }
+
+    /**
+     * Parses the products lines between the position and the limit of a buffer.
+     *
+     * @param buffer  The buffer holding whole lines.
+     * @param handler The handler receiving the lines.
+     */
+    public void parseProducts(ByteBuffer buffer, ProductHandler handler) {
+        int end = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < end) {
+            int lineEnd = lineEnd(buffer, lineStart, end);
+            parseProductLine(buffer, lineStart, lineEnd, handler);
+            lineStart = nextLine(buffer, lineEnd, end);
+        }
+    }
+
+    /**
+     * Parses the sellers lines between the position and the limit of a buffer.
+     *
+     * @param buffer  The buffer holding whole lines.
+     * @param handler The handler receiving the lines.
+     */
+    public void parseSellers(ByteBuffer buffer, SellerHandler handler) {
+        int end = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < end) {
+            int lineEnd = lineEnd(buffer, lineStart, end);
+            if (splitFields(buffer, lineStart, lineEnd) == 4) {
+                handler.seller(buffer, fieldStarts[0], fieldEnds[0], fieldStarts[1], fieldEnds[1],
+                        fieldStarts[2], fieldEnds[2], fieldStarts[3], fieldEnds[3]);
+            }
+            lineStart = nextLine(buffer, lineEnd, end);
+        }
+    }
+
+    private void parseSalesLine(ByteBuffer buffer, int start, int end, SalesHandler handler) {
+        int fields = splitFields(buffer, start, end);
+        if (isHeader(buffer, start, end)) {
+            if (fields >= 2) {
+                handler.header(buffer, fieldStarts[1], fieldEnds[1]);
+            } else {
+                handler.header(buffer, end, end);
+            }
+            return;
+        }
+        if (fields < 2) {
+            handler.reject(buffer, start, end, RejectReason.SALES_FORMAT);
+            return;
+        }
+        long quantity = parseInt(buffer, fieldStarts[1], fieldEnds[1]);
+        if (quantity == INVALID_INT) {
+            handler.reject(buffer, start, end, RejectReason.INVALID_QUANTITY);
+        } else if (quantity < 0) {
+            handler.reject(buffer, start, end, RejectReason.NEGATIVE_QUANTITY);
+        } else if (fields < 3 || fieldStarts[2] == fieldEnds[2]) {
+            handler.sale(buffer, fieldStarts[0], fieldEnds[0], (int) quantity, NO_DATE);
+        } else {
+            int day = parseDate(buffer, fieldStarts[2], fieldEnds[2]);
+            if (day == INVALID_DATE) {
+                handler.reject(buffer, start, end, RejectReason.INVALID_DATE);
+            } else {
+                handler.sale(buffer, fieldStarts[0], fieldEnds[0], (int) quantity, day);
+            }
+        }
+    }
+
+    /**
+     * Parses a <code>yyyy-MM-dd</code> date, optionally followed by <code>T</code> or a space and a
+     * <code>HH:mm</code> or <code>HH:mm:ss</code> time.
+     *
+     * @return The days since 1970-01-01, or {@link #INVALID_DATE} if the bytes are not a valid date.
+     */
+    private int parseDate(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length < DATE_LENGTH || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+            return INVALID_DATE;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int dayOfMonth = digits(buffer, start + 8, 2);
+        if (year < 0 || month < 0 || dayOfMonth < 0 || !isTime(buffer, start + DATE_LENGTH, end)) {
+            return INVALID_DATE;
+        }
+        int date = year * 10000 + month * 100 + dayOfMonth;
+        if (date != lastDate) {
+            try {
+                lastDay = (int) LocalDate.of(year, month, dayOfMonth).toEpochDay();
+            } catch (DateTimeException e) {
+                return INVALID_DATE;
+            }
+            lastDate = date;
+        }
+        return lastDay;
+    }
+
+    private static boolean isTime(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return true;
+        }
+        if ((length != 6 && length != 9) || (buffer.get(start) != 'T' && buffer.get(start) != ' ')
+                || buffer.get(start + 3) != ':') {
+            return false;
+        }
+        int hour = digits(buffer, start + 1, 2);
+        int minute = digits(buffer, start + 4, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return false;
+        }
+        if (length == 6) {
+            return true;
+        }
+        int second = digits(buffer, start + 7, 2);
+        return buffer.get(start + 6) == ':' && second >= 0 && second <= 59;
+    }
+
+    /**
+     * Parses a fixed number of ASCII digits.
+     *
+     * @return The value, or -1 if a byte is not a digit.
+     */
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void parseProductLine(ByteBuffer buffer, int start, int end, ProductHandler handler) {
+        if (splitFields(buffer, start, end) != 3) {
+            handler.reject(buffer, start, end, RejectReason.PRODUCT_FORMAT);
+            return;
+        }
+        long price;
+        try {
+            price = Money.parseCatalogPrice(buffer, fieldStarts[2], fieldEnds[2]);
+        } catch (NumberFormatException e) {
+            handler.reject(buffer, fieldStarts[0], fieldEnds[0], RejectReason.INVALID_PRICE);
+            return;
+        }
+        handler.product(buffer, fieldStarts[0], fieldEnds[0], fieldStarts[1], fieldEnds[1], price);
+    }
+
+    /**
+     * Records the bounds of the first fields of a line and returns the number of fields the way
+     * <code>String.split(";")</code> counts them.
+     */
+    private int splitFields(ByteBuffer buffer, int start, int end) {
+        if (start == end) {
+            fieldStarts[0] = start;
+            fieldEnds[0] = end;
+            return 1;
+        }
+        int count = 0;
+        int nonEmpty = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer.get(i) == ';') {
+                if (count < MAX_FIELDS) {
+                    fieldStarts[count] = fieldStart;
+                    fieldEnds[count] = i;
+                }
+                count++;
+                if (i > fieldStart) {
+                    nonEmpty = count;
+                }
+                fieldStart = i + 1;
+            }
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Checks whether a line is a header line, starting with a document type such as <code>DNI;</code>.
+     */
+    static boolean isHeader(ByteBuffer buffer, int start, int end) {
+        for (byte[] prefix : HEADER_PREFIXES) {
+            if (end - start >= prefix.length && matches(buffer, start, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer with the same rules as <code>Integer.parseInt</code> for ASCII digits.
+     *
+     * @return The value, or {@link #INVALID_INT} if the bytes are not a valid int.
+     */
+    static long parseInt(ByteBuffer buffer, int start, int end) {
+        if (start == end) {
+            return INVALID_INT;
+        }
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                return INVALID_INT;
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID_INT;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return INVALID_INT;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? INVALID_INT : value;
+    }
+
+    /**
+     * Decodes a range of a buffer as UTF-8 text.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the range, inclusive.
+     * @param end    The end of the range, exclusive.
+     * @return The decoded text.
+     */
+    public static String text(ByteBuffer buffer, int start, int end) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextLine(ByteBuffer buffer, int lineEnd, int end) {
+        if (lineEnd < end && buffer.get(lineEnd) == '\r' && lineEnd + 1 < end && buffer.get(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * Consumer of a buffer of whole lines that may throw an I/O error.
+     */
+    private interface BufferConsumer {
+        void accept(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Reads a file into buffers that only hold whole lines.
+     */
+    private static void readFile(Path file, BufferConsumer consumer) throws IOException {
+        readRange(file, 0, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Reads a byte range of a file into buffers that only hold whole lines. Small ranges are read in one
+     * heap buffer; large ranges are memory-mapped in windows that end on a line break.
+     */
+    private static void readRange(Path file, long start, long end, BufferConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(end, channel.size());
+            if (size - start <= MAP_THRESHOLD) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, size - start));
+                while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                    // Keep reading until the buffer is full or the file ends
+                }
+                buffer.flip();
+                consumer.accept(buffer);
+                return;
+            }
+            long position = start;
+            while (position < size) {
+                long length = Math.min(MAX_WINDOW, size - position);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int limit = (int) length;
+                if (position + length < size) {
+                    limit = lastLineBreak(window, limit);
+                    if (limit == 0) {
+                        throw new IOException("Line longer than " + MAX_WINDOW + " bytes in " + file);
+                    }
+                }
+                window.limit(limit);
+                consumer.accept(window);
+                position += limit;
+            }
+        }
+    }
+
+    /**
+     * Reads a stream into chunks that only hold whole lines, keeping the partial last line of a chunk for
+     * the next one.
+     */
+    private static void readStream(InputStream in, BufferConsumer consumer) throws IOException {
+        byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+        int length = 0;
+        while (true) {
+            if (length == chunk.length) {
+                if (chunk.length >= MAX_WINDOW) {
+                    throw new IOException("Line longer than " + MAX_WINDOW + " bytes");
+                }
+                chunk = Arrays.copyOf(chunk, chunk.length * 2);
+            }
+            int read = in.read(chunk, length, chunk.length - length);
+            if (read < 0) {
+                if (length > 0) {
+                    consumer.accept(ByteBuffer.wrap(chunk, 0, length));
+                }
+                return;
+            }
+            length += read;
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+            int limit = lastLineBreak(buffer, length);
+            if (limit > 0) {
+                buffer.limit(limit);
+                consumer.accept(buffer);
+                System.arraycopy(chunk, limit, chunk, 0, length - limit);
+                length -= limit;
+            }
+        }
+    }
+
+    private static int lastLineBreak(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,307 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads every sales file like {@link SalesIngestion}, saving periodic checkpoints a restarted run resumes from.
+ * <p>
+ * A checkpoint is a {@link SalesManifest} of the sales files merged so far and the aggregate of their
+ * sales. Since the partial aggregates are merged in file name order, the files of a checkpoint are the
+ * first files of the folder, and a resumed run that merges the remaining files in the same order builds
+ * the same aggregate as an uninterrupted run.
+ * </p>
+ * <p>
+ * A checkpoint is only resumed if it was built with the same products file and every file it records
+ * still has the size and modification time recorded; the files are not hashed, which would double the
+ * reading of a full run. Otherwise the sales are read again from the first file. Errors of the files of a
+ * checkpoint are left to the report of the interrupted run and are not reported again.
+ * </p>
+ * <p>
+ * The aggregate is written atomically before the manifest that refers to it, and the previous aggregate
+ * is deleted only after the new manifest is saved, so a run interrupted while saving a checkpoint leaves
+ * the previous one usable. The checkpoint is deleted once every sales file is read.
+ * </p>
+ * <p>
+ * Every checkpoint holds the whole aggregate, so its cost grows with the sales read so far. The thread
+ * merging the partial aggregates only serializes the aggregate into memory; the files are written and
+ * synced by a writer thread, and no checkpoint is started while the previous one is still being written,
+ * so a slow disk makes the checkpoints sparser instead of stalling the merge.
+ * </p>
+ */
+public class CheckpointedIngestion {
+
+    private static final String MANIFEST_FILE = "checkpoint.txt";
+    private static final String AGGREGATE_PREFIX = "aggregate-";
+    private static final String AGGREGATE_SUFFIX = ".bin";
+    // The files of a checkpoint are matched by size and modification time only
+    private static final String NO_HASH = "-";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads all the sales files of a folder, resuming from the checkpoint of an interrupted run if there is
+     * a usable one, and saving a checkpoint whenever the interval has passed since the previous one.
+     *
+     * @param salesFolder      The folder containing the sales files.
+     * @param productsFile     The products file the catalog was loaded from.
+     * @param checkpointFolder The folder where the checkpoint is kept.
+     * @param catalog          The product catalog used to price the sales.
+     * @param workers          The number of files read at the same time.
+     * @param intervalMillis   The minimum time between the starts of two checkpoints, in milliseconds; 0 starts
+     *                         a checkpoint after every file once the previous one is written.
+     * @param errors           The reporter of the rejected lines.
+     * @param metrics          The metrics of the run, whose {@link RunMetrics#INGEST_SALES} phase counts only the
+     *                         sales files read by this run and the bytes of the checkpoints written.
+     * @return The aggregate of all the valid sales lines of the sales folder.
+     */
+    public static SalesAggregate ingest(String salesFolder, String productsFile, String checkpointFolder,
+                                        ProductCatalog catalog, int workers, long intervalMillis, ErrorReporter errors,
+                                        RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            File[] salesFiles = SalesInput.listInputFiles(salesFolder);
+            if (salesFiles == null) {
+                errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+                return new SalesAggregate();
+            }
+
+            Path state = Paths.get(checkpointFolder);
+            SalesManifest previous = loadManifest(state.resolve(MANIFEST_FILE));
+            String catalogHash = catalogHash(productsFile);
+            SalesManifest checkpoint = new SalesManifest();
+            checkpoint.setCatalogHash(catalogHash != null ? catalogHash : "");
+            checkpoint.setGeneration(previous.getGeneration());
+            SalesAggregate total = null;
+            if (catalogHash != null && catalogHash.equals(previous.getCatalogHash())) {
+                total = resume(salesFiles, state, previous);
+            }
+            List<File> toRead = new ArrayList<>();
+            if (total != null) {
+                checkpoint.getFiles().putAll(previous.getFiles());
+                for (File salesFile : salesFiles) {
+                    if (!previous.getFiles().containsKey(salesFile.getName())) {
+                        toRead.add(salesFile);
+                    }
+                }
+            } else {
+                total = new SalesAggregate();
+                toRead.addAll(List.of(salesFiles));
+            }
+
+            SalesAggregate aggregate = total;
+            // Without the products file the checkpoint could not be checked when resuming, so none is saved
+            CheckpointWriter writer = catalogHash != null ? new CheckpointWriter(state, phase) : null;
+            long[] lastCheckpoint = {System.currentTimeMillis()};
+            try {
+                SalesIngestion.readSalesFiles(toRead.toArray(new File[0]), catalog, workers, errors, phase,
+                        (salesFile, partial) -> {
+                            aggregate.merge(partial);
+                            checkpoint.getFiles().put(salesFile.getName(),
+                                    new SalesManifest.Entry(salesFile.length(), salesFile.lastModified(), NO_HASH));
+                            long now = System.currentTimeMillis();
+                            if (writer != null && now - lastCheckpoint[0] >= intervalMillis && writer.isIdle()) {
+                                writer.start(checkpoint, aggregate);
+                                lastCheckpoint[0] = now;
+                            }
+                        });
+            } finally {
+                // A stopped run keeps the checkpoint being written, the last one it can resume from
+                if (writer != null) {
+                    writer.await();
+                }
+            }
+            delete(state, checkpoint);
+            return aggregate;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Loads the aggregate of a checkpoint if the files it records are the first sales files of the folder
+     * and are unchanged.
+     *
+     * @return The aggregate of the checkpoint, or null if it cannot be resumed.
+     */
+    private static SalesAggregate resume(File[] salesFiles, Path state, SalesManifest checkpoint) {
+        Map<String, SalesManifest.Entry> completed = checkpoint.getFiles();
+        if (completed.isEmpty() || completed.size() > salesFiles.length) {
+            return null;
+        }
+        for (int i = 0; i < completed.size(); i++) {
+            SalesManifest.Entry entry = completed.get(salesFiles[i].getName());
+            if (entry == null || !entry.matches(salesFiles[i])) {
+                return null;
+            }
+        }
+        Path aggregateFile = aggregateFile(state, checkpoint.getGeneration());
+        return Files.isRegularFile(aggregateFile) ? readAggregate(aggregateFile) : null;
+    }
+
+    /**
+     * Deletes the checkpoint once the run is complete, the manifest first so a failure leaves no checkpoint
+     * that could be resumed, and the checkpoint folder if it is left empty.
+     */
+    private static void delete(Path state, SalesManifest checkpoint) {
+        try {
+            Files.deleteIfExists(state.resolve(MANIFEST_FILE));
+            Files.deleteIfExists(aggregateFile(state, checkpoint.getGeneration()));
+            // Temporary files left by a run stopped while saving a checkpoint
+            File[] leftovers = state.toFile().listFiles(file -> file.getName().startsWith(AGGREGATE_PREFIX)
+                    || file.getName().startsWith(MANIFEST_FILE));
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    Files.deleteIfExists(leftover.toPath());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error deleting the ingestion checkpoint in " + state);
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.deleteIfExists(state);
+        } catch (IOException e) {
+            // The folder holds other files, which are left alone
+        }
+    }
+
+    private static SalesManifest loadManifest(Path manifestFile) {
+        try {
+            return SalesManifest.load(manifestFile);
+        } catch (IOException e) {
+            System.err.println("Error reading the ingestion checkpoint: " + manifestFile);
+            e.printStackTrace();
+            return new SalesManifest();
+        }
+    }
+
+    private static SalesAggregate readAggregate(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return SalesAggregate.readFrom(new DataInputStream(in));
+        } catch (IOException e) {
+            System.err.println("Error reading the checkpointed aggregate: " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static String catalogHash(String productsFile) {
+        try {
+            return SalesManifest.hash(Paths.get(productsFile));
+        } catch (IOException e) {
+            System.err.println("Error reading the products file: " + productsFile);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Path aggregateFile(Path state, long generation) {
+        return state.resolve(AGGREGATE_PREFIX + generation + AGGREGATE_SUFFIX);
+    }
+
+    /**
+     * Writes the checkpoints one at a time on a thread of its own, each from a copy of the manifest and the
+     * serialized aggregate taken when it is started.
+     */
+    private static class CheckpointWriter {
+        private final Path state;
+        private final RunMetrics.Phase phase;
+        private Thread thread;
+        // Set by the writer thread when a checkpoint cannot be saved, after which no more are attempted
+        private volatile boolean failed;
+
+        private CheckpointWriter(Path state, RunMetrics.Phase phase) {
+            this.state = state;
+            this.phase = phase;
+        }
+
+        /**
+         * Checks whether a checkpoint can be started: the previous one is written and none failed.
+         */
+        private boolean isIdle() {
+            return !failed && (thread == null || !thread.isAlive());
+        }
+
+        /**
+         * Starts saving a checkpoint as the next generation of the manifest.
+         */
+        private void start(SalesManifest checkpoint, SalesAggregate aggregate) {
+            long previousGeneration = checkpoint.getGeneration();
+            checkpoint.setGeneration(previousGeneration + 1);
+            SalesManifest manifest = new SalesManifest();
+            manifest.setCatalogHash(checkpoint.getCatalogHash());
+            manifest.setGeneration(checkpoint.getGeneration());
+            manifest.getFiles().putAll(checkpoint.getFiles());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutputStream data = new DataOutputStream(bytes);
+                aggregate.writeTo(data);
+                data.flush();
+            } catch (IOException e) {
+                System.err.println("Error serializing the ingestion checkpoint");
+                e.printStackTrace();
+                failed = true;
+                return;
+            }
+            thread = new Thread(() -> save(manifest, bytes, previousGeneration), "ingestion-checkpoint");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Waits for the checkpoint being written, if any, even if interrupted, keeping the interrupt status
+         * for the caller.
+         */
+        private void await() {
+            boolean interrupted = false;
+            while (thread != null && thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Writes the aggregate and then the manifest, and deletes the aggregate of the previous generation.
+         */
+        private void save(SalesManifest manifest, ByteArrayOutputStream aggregate, long previousGeneration) {
+            Path aggregateFile = aggregateFile(state, manifest.getGeneration());
+            Path manifestFile = state.resolve(MANIFEST_FILE);
+            try {
+                AtomicFiles.write(aggregateFile, aggregate::writeTo);
+                manifest.save(manifestFile);
+                phase.addBytesWritten(aggregate.size() + Files.size(manifestFile));
+            } catch (IOException e) {
+                System.err.println("Error saving the ingestion checkpoint in " + state);
+                e.printStackTrace();
+                failed = true;
+                return;
+            }
+            try {
+                Files.deleteIfExists(aggregateFile(state, previousGeneration));
+            } catch (IOException e) {
+                // A leftover aggregate only takes space, the saved checkpoint is already consistent
+                System.err.println("Error deleting the previous ingestion checkpoint in " + state);
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package Utils;
+
+/**
+ * How much of the reports is echoed to the console while they are written.
+ */
+public enum ConsoleMode {
+    /** Every row of the reports, then where they were saved. */
+    FULL,
+    /** Only the number of rows and the total of each report, and where it was saved. */
+    SUMMARY,
+    /** Nothing but errors, so the reports are written at disk speed. */
+    QUIET
+}
@@ -0,0 +1,286 @@
+package Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Streams report lines into a large NIO buffer, writing text, numbers and amounts straight as UTF-8
+ * bytes instead of building a string per field and per line.
+ * <p>
+ * Amounts are written as {@link Money#format(long)} writes them, with the separators of the default
+ * locale, so the reports do not change when they are streamed.
+ * </p>
+ */
+public class CsvWriter implements Closeable {
+
+    /** Size of the buffer of the report files, in bytes. */
+    public static final int FILE_BUFFER_SIZE = 1 << 20;
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+    private final char groupingSeparator;
+    private final char decimalSeparator;
+    private final char minusSign;
+    // False for locales with other digits or signs, whose amounts are formatted by Money
+    private final boolean plainAmounts;
+    // The stream written through the channel, flushed instead of closed; null for a file
+    private final OutputStream stream;
+    private long bytesWritten;
+
+    private CsvWriter(WritableByteChannel channel, ByteBuffer buffer, OutputStream stream) {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        this.channel = channel;
+        this.buffer = buffer;
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.minusSign = symbols.getMinusSign();
+        DecimalFormat format = new DecimalFormat("#,##0.00", symbols);
+        this.plainAmounts = symbols.getZeroDigit() == '0' && format.getPositivePrefix().isEmpty()
+                && format.getPositiveSuffix().isEmpty() && format.getNegativeSuffix().isEmpty()
+                && format.getNegativePrefix().equals(String.valueOf(minusSign));
+        this.stream = stream;
+    }
+
+    /**
+     * Opens a writer that replaces the content of a file, creating its folder if needed.
+     *
+     * @param file The file to write.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static CsvWriter open(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new CsvWriter(channel, ByteBuffer.allocateDirect(FILE_BUFFER_SIZE), null);
+    }
+
+    /**
+     * Opens a writer over a stream, such as <code>System.out</code>, which is flushed but not closed when
+     * the writer is closed. The stream then receives a few large writes instead of one per line.
+     *
+     * @param out The stream.
+     * @return The writer.
+     */
+    public static CsvWriter over(OutputStream out) {
+        return new CsvWriter(Channels.newChannel(out), ByteBuffer.allocate(STREAM_BUFFER_SIZE), out);
+    }
+
+    /**
+     * Writes a text.
+     *
+     * @param text The text.
+     * @return This writer.
+     * @throws IOException If the text cannot be written.
+     */
+    public CsvWriter write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (!buffer.hasRemaining()) {
+                    flushBuffer();
+                }
+                buffer.put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()) {
+                writeEncoded(text.substring(i, i + 2));
+                i++;
+            } else {
+                write(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a character.
+     *
+     * @param c The character.
+     * @return This writer.
+     * @throws IOException If the character cannot be written.
+     */
+    public CsvWriter write(char c) throws IOException {
+        if (c >= 0x80) {
+            return writeEncoded(String.valueOf(c));
+        }
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put((byte) c);
+        return this;
+    }
+
+    /**
+     * Writes a whole number.
+     *
+     * @param number The number.
+     * @return This writer.
+     * @throws IOException If the number cannot be written.
+     */
+    public CsvWriter write(long number) throws IOException {
+        if (number < 0) {
+            write('-');
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + Math.abs(number % 10));
+            number /= 10;
+        } while (number != 0);
+        reserve(count);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+        return this;
+    }
+
+    /**
+     * Writes an amount as {@link Money#format(long)} does, with the <code>#,##0.00</code> pattern.
+     *
+     * @param amount The amount in centavos.
+     * @return This writer.
+     * @throws IOException If the amount cannot be written.
+     */
+    public CsvWriter writeAmount(long amount) throws IOException {
+        return writeAmount(amount, groupingSeparator, decimalSeparator);
+    }
+
+    /**
+     * Writes an amount with the <code>#,##0.00</code> pattern and the given separators.
+     *
+     * @param amount            The amount in centavos.
+     * @param groupingSeparator The separator of the groups of thousands.
+     * @param decimalSeparator  The separator of the centavos.
+     * @return This writer.
+     * @throws IOException If the amount cannot be written.
+     */
+    public CsvWriter writeAmount(long amount, char groupingSeparator, char decimalSeparator) throws IOException {
+        if (!plainAmounts) {
+            return writeFormatted(Money.format(amount), groupingSeparator, decimalSeparator);
+        }
+        if (amount < 0) {
+            write(minusSign);
+        }
+        long units = Math.abs(amount / 100);
+        int centavos = (int) Math.abs(amount % 100);
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        while (count > 0) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            buffer.put(digits[--count]);
+            if (count > 0 && count % 3 == 0) {
+                write(groupingSeparator);
+            }
+        }
+        write(decimalSeparator);
+        reserve(2);
+        buffer.put((byte) ('0' + centavos / 10)).put((byte) ('0' + centavos % 10));
+        return this;
+    }
+
+    /**
+     * Gets the separator of the groups of thousands of the amounts.
+     *
+     * @return The grouping separator of the default locale.
+     */
+    public char getGroupingSeparator() {
+        return groupingSeparator;
+    }
+
+    /**
+     * Gets the separator of the centavos of the amounts.
+     *
+     * @return The decimal separator of the default locale.
+     */
+    public char getDecimalSeparator() {
+        return decimalSeparator;
+    }
+
+    /**
+     * Writes a line break.
+     *
+     * @return This writer.
+     * @throws IOException If the line break cannot be written.
+     */
+    public CsvWriter newLine() throws IOException {
+        return write(System.lineSeparator());
+    }
+
+    /**
+     * Gets the number of bytes written so far, buffered bytes included.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    /**
+     * Writes the buffered bytes.
+     *
+     * @throws IOException If the bytes cannot be written.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            if (stream == null) {
+                channel.close();
+            } else {
+                stream.flush();
+            }
+        }
+    }
+
+    private CsvWriter writeFormatted(String amount, char groupingSeparator, char decimalSeparator) throws IOException {
+        for (int i = 0; i < amount.length(); i++) {
+            char c = amount.charAt(i);
+            write(c == this.groupingSeparator ? groupingSeparator : c == this.decimalSeparator ? decimalSeparator : c);
+        }
+        return this;
+    }
+
+    private CsvWriter writeEncoded(String text) throws IOException {
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        reserve(encoded.length);
+        buffer.put(encoded);
+        return this;
+    }
+
+    private void reserve(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
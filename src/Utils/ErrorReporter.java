@@ -0,0 +1,241 @@
+package Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes the wrong files report through one long-lived buffered writer.
+ * <p>
+ * Any number of threads can report errors. Messages go through a bounded queue to a single writer
+ * thread, which appends them to the report, so callers never open the file and a flood of bad lines
+ * only waits when the queue is full. The number of errors of each {@link RejectReason} is counted as
+ * they are reported, and closing the reporter writes a summary of the counts, or
+ * <code>No errors found.</code> when there were none, unless the reporter was opened to leave the report
+ * unchanged without errors.
+ * </p>
+ * <p>
+ * Messages reported by one thread are written in the order they were reported; messages of different
+ * threads may interleave.
+ * </p>
+ * <p>
+ * Reports hold a shared lock and closing holds it exclusively, so a message is either queued before the
+ * end marker or rejected, and the summary is written only once the writer thread has written every queued
+ * message. A message is counted once it is queued, so the counts of the summary match the lines written.
+ * </p>
+ */
+public class ErrorReporter implements AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Tells the writer thread that no more messages will come
+    private static final String END = new String("END");
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLongArray counts = new AtomicLongArray(RejectReason.values().length);
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private final boolean summaryIfEmpty;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private volatile IOException failure;
+
+    private ErrorReporter(BufferedWriter writer, boolean summaryIfEmpty) {
+        this.writer = writer;
+        this.summaryIfEmpty = summaryIfEmpty;
+        this.writerThread = new Thread(this::writeMessages, "error-reporter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Opens the report in append mode and starts the writer thread.
+     *
+     * @param reportFile The path of the wrong files report.
+     * @return The reporter.
+     * @throws IOException If the report cannot be opened.
+     */
+    public static ErrorReporter open(String reportFile) throws IOException {
+        return open(reportFile, true);
+    }
+
+    /**
+     * Opens the report in append mode and starts the writer thread.
+     *
+     * @param reportFile     The path of the wrong files report.
+     * @param summaryIfEmpty True to write <code>No errors found.</code> when closed without errors, false to
+     *                       leave the report unchanged, as the repeated updates of a long-running process do.
+     * @return The reporter.
+     * @throws IOException If the report cannot be opened.
+     */
+    public static ErrorReporter open(String reportFile, boolean summaryIfEmpty) throws IOException {
+        File errorFile = new File(reportFile);
+        if (errorFile.getParentFile() != null) {
+            errorFile.getParentFile().mkdirs(); // Create parent directories if they don't exist
+        }
+        return new ErrorReporter(new BufferedWriter(new FileWriter(errorFile, true), BUFFER_SIZE), summaryIfEmpty);
+    }
+
+    /**
+     * Reports an error. Blocks while the queue is full; an interrupt does not drop the message, and the
+     * interrupt status is kept for the caller.
+     *
+     * @param reason  The category of the error.
+     * @param message The message written to the report.
+     * @throws IllegalStateException If the reporter is closed.
+     */
+    public void report(RejectReason reason, String message) {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The error reporter is closed");
+            }
+            putUninterruptibly(message);
+            counts.incrementAndGet(reason.ordinal());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of errors reported for a reason.
+     *
+     * @param reason The category of the errors.
+     * @return The number of errors.
+     */
+    public long getCount(RejectReason reason) {
+        return counts.get(reason.ordinal());
+    }
+
+    /**
+     * Gets the number of errors reported for all reasons.
+     *
+     * @return The total number of errors.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Checks whether any error was reported.
+     *
+     * @return True if at least one error was reported.
+     */
+    public boolean hasErrors() {
+        return getTotal() > 0;
+    }
+
+    /**
+     * Writes the pending messages and the summary, then closes the report. Waits for the reports in
+     * progress and for the writer thread even if interrupted, keeping the interrupt status for the caller.
+     *
+     * @throws IOException If the report cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            putUninterruptibly(END);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            writeSummary();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void putUninterruptibly(String message) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(message);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeSummary() throws IOException {
+        if (!hasErrors()) {
+            if (!summaryIfEmpty) {
+                return;
+            }
+            writer.write("No errors found.");
+            writer.newLine();
+            return;
+        }
+        writer.write("Summary of errors:");
+        writer.newLine();
+        for (RejectReason reason : RejectReason.values()) {
+            long count = getCount(reason);
+            if (count > 0) {
+                writer.write(reason.name() + ": " + count);
+                writer.newLine();
+            }
+        }
+        writer.write("Total: " + getTotal());
+        writer.newLine();
+    }
+
+    /**
+     * Body of the writer thread: appends messages until the end marker arrives. After a write error the
+     * remaining messages are still taken from the queue so reporting threads are never blocked, and the
+     * error is rethrown by {@link #close()} instead of writing a summary that no longer matches the lines.
+     */
+    private void writeMessages() {
+        while (true) {
+            String message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                // Only closing ends the thread, with the end marker
+                continue;
+            }
+            if (message == END) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    writer.write(message);
+                    writer.newLine();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Sorts more items than fit in memory by spilling sorted runs to files and merging them.
+ * <p>
+ * Items are collected in memory until their estimated size reaches the memory budget; they are then
+ * sorted and written as a run to a file of the spill folder. Once every item is offered, {@link #sorted()}
+ * merges the runs and the items still in memory with a k-way merge, holding one item and one read buffer
+ * per run. At most {@value #MAX_FAN_IN} runs are merged at once, so the memory and the files open during a
+ * merge stay bounded: with more runs, consecutive runs are first merged into longer runs, in as many passes
+ * as needed. The read buffers are sized from the memory budget. The final merge runs on its own thread and
+ * hands the items over in batches through a bounded queue, so the caller writes a batch while the next one
+ * is merged. The runs are merged once: callers that
+ * write the items to several outputs write each item to all of them in the same pass. Items that compare
+ * equal keep the order in which they were offered, as with an in-memory sort.
+ * </p>
+ * <p>
+ * With no run spilled the items are simply sorted in memory. Closing the sorter deletes the runs.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public class ExternalSorter<T> implements Closeable {
+
+    /** Maximum number of runs merged at once. */
+    public static final int MAX_FAN_IN = 64;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MIN_READ_BUFFER_SIZE = 1 << 12;
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_BATCHES = 4;
+
+    private final Comparator<? super T> ranking;
+    private final Codec<T> codec;
+    private final long memoryBudget;
+    private final Path spillFolder;
+    private final int readBufferSize;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Thread> merges = new ArrayList<>();
+    private List<T> items = new ArrayList<>();
+    private long itemsSize;
+    private long size;
+    private boolean sorted;
+
+    /**
+     * Writes, reads and sizes the items spilled to the runs.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface Codec<T> {
+        /**
+         * Writes an item to a run.
+         */
+        void write(DataOutputStream out, T item) throws IOException;
+
+        /**
+         * Reads back an item written by {@link #write(DataOutputStream, Object)}.
+         */
+        T read(DataInputStream in) throws IOException;
+
+        /**
+         * Estimates the heap used by an item kept in memory, in bytes.
+         */
+        long estimateSize(T item);
+    }
+
+    /**
+     * Creates a sorter.
+     *
+     * @param ranking      The order of the items, first item first.
+     * @param codec        The codec of the items spilled to the runs.
+     * @param memoryBudget The estimated size in bytes of the items kept in memory before a run is spilled.
+     * @param spillFolder  The folder of the run files, created when the first run is spilled.
+     */
+    public ExternalSorter(Comparator<? super T> ranking, Codec<T> codec, long memoryBudget, Path spillFolder) {
+        this.ranking = ranking;
+        this.codec = codec;
+        this.memoryBudget = memoryBudget;
+        this.spillFolder = spillFolder;
+        // The buffers of a merge take about as much memory as the items kept in memory
+        this.readBufferSize = (int) Math.max(MIN_READ_BUFFER_SIZE,
+                Math.min(BUFFER_SIZE, memoryBudget / (MAX_FAN_IN + 1)));
+    }
+
+    /**
+     * Adds an item, spilling the items in memory to a run if the memory budget is reached.
+     *
+     * @param item The item.
+     * @throws UncheckedIOException If a run cannot be written.
+     * @throws IllegalStateException If the items were already sorted.
+     */
+    public void offer(T item) {
+        if (sorted) {
+            throw new IllegalStateException("The items were already sorted");
+        }
+        items.add(item);
+        size++;
+        itemsSize += codec.estimateSize(item);
+        if (itemsSize >= memoryBudget) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error spilling a sorted run to " + spillFolder, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the items in order; calling it stops offering new items. When runs were spilled the items are
+     * merged as they are iterated, so they can be iterated only once. With more than {@value #MAX_FAN_IN}
+     * runs, the runs are first merged into fewer runs before this method returns.
+     *
+     * @return The items, first item first. Iterators rethrow the failure of the merge, wrapped in an
+     *         {@link UncheckedIOException} if a run cannot be read.
+     * @throws UncheckedIOException If the runs cannot be merged into fewer runs.
+     */
+    public Iterable<T> sorted() {
+        if (!sorted) {
+            items.sort(ranking);
+            sorted = true;
+            try {
+                while (runs.size() > MAX_FAN_IN) {
+                    mergePass();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error merging the sorted runs in " + spillFolder, e);
+            }
+        }
+        if (runs.isEmpty()) {
+            return Collections.unmodifiableList(items);
+        }
+        boolean[] iterated = new boolean[1];
+        return () -> {
+            if (iterated[0]) {
+                throw new IllegalStateException("The sorted runs were already merged");
+            }
+            iterated[0] = true;
+            return new Merge();
+        };
+    }
+
+    /**
+     * Gets the number of items offered.
+     *
+     * @return The number of items.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of runs spilled to files.
+     *
+     * @return The number of runs.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Stops the merges still running and deletes the runs, and the spill folder if it is left empty.
+     *
+     * @throws IOException If a run cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (merges) {
+            for (Thread merge : merges) {
+                merge.interrupt();
+            }
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        if (!runs.isEmpty()) {
+            try {
+                Files.deleteIfExists(spillFolder);
+            } catch (IOException e) {
+                // The folder holds other files, which are left alone
+            }
+        }
+        runs.clear();
+        items = new ArrayList<>();
+    }
+
+    private void spill() throws IOException {
+        items.sort(ranking);
+        Files.createDirectories(spillFolder);
+        Path run = Files.createTempFile(spillFolder, "run_", ".bin");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            out.writeLong(items.size());
+            for (T item : items) {
+                codec.write(out, item);
+            }
+        }
+        items = new ArrayList<>(items.size());
+        itemsSize = 0;
+    }
+
+    /**
+     * Merges every group of {@value #MAX_FAN_IN} consecutive runs into one run that takes their place, so
+     * equal items still come from the runs in the order they were offered.
+     */
+    private void mergePass() throws IOException {
+        List<Path> merged = new ArrayList<>();
+        boolean complete = false;
+        try {
+            mergeGroups(merged);
+            complete = true;
+        } finally {
+            if (!complete) {
+                // The runs not merged yet are still listed, and deleted on close
+                for (Path run : merged) {
+                    if (!runs.contains(run)) {
+                        Files.deleteIfExists(run);
+                    }
+                }
+            }
+        }
+        List<Path> replaced = new ArrayList<>(runs);
+        runs.clear();
+        runs.addAll(merged);
+        for (Path run : replaced) {
+            if (!merged.contains(run)) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Merges each group of runs, adding the run that takes its place to a list.
+     */
+    private void mergeGroups(List<Path> merged) throws IOException {
+        for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+            List<Path> group = runs.subList(start, Math.min(start + MAX_FAN_IN, runs.size()));
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            Path run = Files.createTempFile(spillFolder, "run_", ".bin");
+            merged.add(run);
+            long count = 0;
+            for (Path groupRun : group) {
+                try (DataInputStream in = new DataInputStream(Files.newInputStream(groupRun))) {
+                    count += in.readLong();
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+                out.writeLong(count);
+                mergeRuns(group, Collections.emptyIterator(), item -> codec.write(out, item));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("The merge of the sorted runs was interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Receives the merged items in order.
+     */
+    private interface ItemConsumer<T> {
+        void accept(T item) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Merges runs and items in memory, which follow the runs, passing the items to a consumer in order.
+     */
+    private void mergeRuns(List<Path> group, Iterator<T> memory, ItemConsumer<T> consumer)
+            throws IOException, InterruptedException {
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            // Equal items come from the earliest source, which holds the items offered first
+            PriorityQueue<Source> heads = new PriorityQueue<>(group.size() + 1, Comparator
+                    .<Source, T>comparing(source -> source.head, ranking).thenComparingInt(source -> source.order));
+            for (Path run : group) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(run), readBufferSize));
+                inputs.add(in);
+                Source source = new Source(in, in.readLong(), null, inputs.size());
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+            Source memorySource = new Source(null, 0, memory, inputs.size() + 1);
+            if (memorySource.advance()) {
+                heads.add(memorySource);
+            }
+            while (!heads.isEmpty()) {
+                Source source = heads.poll();
+                consumer.accept(source.head);
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+        } finally {
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Next item of a run, or of the items in memory, during a merge.
+     */
+    private class Source {
+        private final DataInputStream in;
+        private final Iterator<T> memory;
+        private final int order;
+        private long remaining;
+        private T head;
+
+        private Source(DataInputStream in, long remaining, Iterator<T> memory, int order) {
+            this.in = in;
+            this.remaining = remaining;
+            this.memory = memory;
+            this.order = order;
+        }
+
+        /**
+         * Moves to the next item.
+         *
+         * @return False once the source is exhausted.
+         */
+        private boolean advance() throws IOException {
+            if (memory != null) {
+                head = memory.hasNext() ? memory.next() : null;
+            } else if (remaining > 0) {
+                head = codec.read(in);
+                remaining--;
+            } else {
+                head = null;
+            }
+            return head != null;
+        }
+    }
+
+    /**
+     * One pass over the merged items. The merge thread fills batches that the iterator takes in order; an
+     * empty batch marks the end of the items.
+     */
+    private class Merge implements Iterator<T> {
+        private final BlockingQueue<List<T>> batches = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        private final Thread thread;
+        private volatile Throwable failure;
+        private List<T> batch = Collections.emptyList();
+        private int next;
+        private boolean ended;
+
+        private Merge() {
+            thread = new Thread(this::merge, "external-sort-merge");
+            thread.setDaemon(true);
+            synchronized (merges) {
+                merges.add(thread);
+            }
+            thread.start();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < batch.size()) {
+                return true;
+            }
+            if (ended) {
+                return false;
+            }
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("The merge of the sorted runs was interrupted", e);
+            }
+            next = 0;
+            if (batch.isEmpty()) {
+                ended = true;
+                if (failure instanceof IOException) {
+                    throw new UncheckedIOException("Error merging the sorted runs", (IOException) failure);
+                } else if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                } else if (failure != null) {
+                    throw new IllegalStateException("Error merging the sorted runs", failure);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(next++);
+        }
+
+        /**
+         * Body of the merge thread.
+         */
+        private void merge() {
+            try {
+                List<List<T>> filling = new ArrayList<>(List.of(new ArrayList<>(BATCH_SIZE)));
+                mergeRuns(runs, items.iterator(), item -> {
+                    filling.get(0).add(item);
+                    if (filling.get(0).size() == BATCH_SIZE) {
+                        batches.put(filling.get(0));
+                        filling.set(0, new ArrayList<>(BATCH_SIZE));
+                    }
+                });
+                if (!filling.get(0).isEmpty()) {
+                    batches.put(filling.get(0));
+                }
+                batches.put(Collections.emptyList());
+            } catch (InterruptedException e) {
+                // The sorter was closed before the items were all taken
+            } catch (Throwable e) {
+                // Anything the codec or the ranking throws ends the items, so the iterator is not left waiting
+                failure = e;
+                batches.clear();
+                batches.offer(Collections.emptyList());
+            } finally {
+                synchronized (merges) {
+                    merges.remove(thread);
+                }
+            }
+        }
+    }
+}
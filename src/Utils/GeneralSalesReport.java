@@ -1,108 +1,212 @@
 package Utils;
 
-import java.io.*;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import Entities.Seller;
+import Entities.SellerReportRow;
 
 /**
  * Utility class for displaying and saving sales reports.
  */
 public class GeneralSalesReport {
 
+    /** Header line of the sales report CSV. */
+    static final String CSV_HEADER = "First Name;Last Name;Total Sales";
+    private static final Path SORT_FOLDER = Path.of("SalesReport/Sort");
+
+    /** Spills the rows of the sales report to the runs of an external sort. */
+    private static final ExternalSorter.Codec<SellerReportRow> ROW_CODEC = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, SellerReportRow row) throws IOException {
+            out.writeUTF(row.getDocumentNumber());
+            out.writeUTF(row.getFirstName());
+            out.writeUTF(row.getLastName());
+            out.writeLong(row.getTotalSales());
+        }
+
+        @Override
+        public SellerReportRow read(DataInputStream in) throws IOException {
+            return new SellerReportRow(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+        }
+
+        @Override
+        public long estimateSize(SellerReportRow row) {
+            // The row, its three strings and their arrays, with the reference held by the list
+            return 160 + row.getDocumentNumber().length() + row.getFirstName().length() + row.getLastName().length();
+        }
+    };
+
     /**
-     * Displays and saves the sales report.
+     * Displays and saves the sales report. The rows are streamed to the CSV file and, in full console
+     * mode, to the console, without building a line per row. Without a limit on the number of sellers and
+     * with a sort memory budget, the rows are ranked with an {@link ExternalSorter}.
      *
      * @param sellers   A map where the key is the seller's document number and the value is the Seller object.
-     * @param totalSales A map where the key is the seller's document number and the value is the total sales amount.
+     * @param aggregate The aggregate built from the sales files, holding the total sales amount of each seller.
+     * @param options   The number of sellers reported, the console mode, the sort memory and the metrics of the run.
      */
-    public static void displayAndSaveSalesReport(Map<String, Seller> sellers, Map<String, Double> totalSales) {
-        List<String[]> salesData = new ArrayList<>();
-
-        // Collect sales data
-        for (Map.Entry<String, Double> entry : totalSales.entrySet()) {
-            String documentNumber = entry.getKey();
-            double total = entry.getValue() * 1000; // Multiplicar el total por 1000
-            Seller seller = sellers.get(documentNumber);
-
-            if (seller != null) {
-                // Format the total as Colombian currency
-                String formattedTotal = formatAsColombianCurrency(total);
-                salesData.add(new String[]{
-                    seller.getFirstName(),
-                    seller.getLastName(),
-                    formattedTotal
+    public static void displayAndSaveSalesReport(Map<String, Seller> sellers, SalesAggregate aggregate,
+                                                 ReportOptions options) {
+        int top = options.getTop();
+        ConsoleMode console = options.getConsole();
+        long sortMemory = options.getSortMemory();
+        RunMetrics metrics = options.getMetrics();
+        // Rank the known sellers by total sales in descending order, keeping only the top ones if requested
+        TopN<SellerReportRow> ranking = top > 0 || sortMemory <= 0 ? new TopN<>(top, SellerReportRow.RANKING) : null;
+        long[] unknownSellers = new long[1];
+        Iterable<SellerReportRow> salesData;
+        long rows;
+        try (ExternalSorter<SellerReportRow> sorter = ranking == null
+                ? new ExternalSorter<>(SellerReportRow.RANKING, ROW_CODEC, sortMemory, SORT_FOLDER) : null) {
+            RunMetrics.Phase build = metrics.phase(RunMetrics.BUILD_ROWS);
+            RunMetrics.Timer buildTimer = build.start();
+            try {
+                aggregate.forEachSeller((documentNumber, totalSales) -> {
+                    build.addLines(1);
+                    Seller seller = sellers.get(documentNumber);
+                    if (seller != null) {
+                        SellerReportRow row = new SellerReportRow(documentNumber, seller.getFirstName(),
+                                seller.getLastName(), totalSales);
+                        if (sorter != null) {
+                            sorter.offer(row);
+                        } else {
+                            ranking.offer(row);
+                        }
+                    } else if (console == ConsoleMode.FULL) {
+                        System.out.printf("Seller with Document Number %s not found.%n", documentNumber);
+                    } else {
+                        unknownSellers[0]++;
+                    }
                 });
-            } else {
-                System.out.printf("Seller with Document Number %s not found.%n", documentNumber);
+            } finally {
+                buildTimer.stop();
+            }
+            RunMetrics.Phase sort = metrics.phase(RunMetrics.SORT);
+            RunMetrics.Timer sortTimer = sort.start();
+            try {
+                if (sorter != null) {
+                    salesData = sorter.sorted();
+                    rows = sorter.size();
+                } else {
+                    List<SellerReportRow> ranked = ranking.toList();
+                    salesData = ranked;
+                    rows = ranked.size();
+                }
+                sort.addLines(rows);
+            } finally {
+                sortTimer.stop();
             }
-        }
 
-        // Sort by total sales in descending order
-        salesData.sort((a, b) -> Double.compare(
-            Double.parseDouble(b[2].replace(".", "").replace(",", ".")),
-            Double.parseDouble(a[2].replace(".", "").replace(",", "."))
-        ));
+            // Save to CSV, displaying the results in console in the same pass over the rows
+            long[] total = new long[1];
+            if (saveSalesReportToCSV(salesData, rows, console, total, metrics)
+                    && console == ConsoleMode.SUMMARY) {
+                System.out.printf("Sales report: %d sellers, %s in sales, %d sellers not found.%n", rows,
+                        formatAsColombianCurrency(total[0]), unknownSellers[0]);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error sorting the rows of the sales report");
+            e.printStackTrace();
+        }
+    }
 
-        // Display results in console
-        for (String[] data : salesData) {
-            System.out.printf("%s;%s;%s%n", data[0], data[1], data[2]);
+    /**
+     * Writes the rows of the sales report, as lines of the first name, last name and total sales
+     * separated by semicolons.
+     *
+     * @param out       The writer.
+     * @param salesData The ranked rows.
+     * @throws IOException If the rows cannot be written.
+     */
+    static void writeRows(CsvWriter out, Iterable<SellerReportRow> salesData) throws IOException {
+        for (SellerReportRow row : salesData) {
+            writeRow(out, row);
         }
+    }
+
+    /**
+     * Writes one row of the sales report.
+     *
+     * @param out The writer.
+     * @param row The row.
+     * @throws IOException If the row cannot be written.
+     */
+    private static void writeRow(CsvWriter out, SellerReportRow row) throws IOException {
+        // Format the total as Colombian currency: points for thousands
+        out.write(row.getFirstName()).write(';').write(row.getLastName()).write(';')
+                .writeAmount(row.getTotalSales(), colombianSeparator(out.getGroupingSeparator()),
+                        colombianSeparator(out.getDecimalSeparator())).newLine();
+    }
 
-        // Save to CSV
-        saveSalesReportToCSV(salesData);
+    private static char colombianSeparator(char separator) {
+        return separator == ',' ? '.' : separator;
     }
 
     /**
-    
+     * Formats an amount as Colombian currency.
      *
-     * @param amount The amount to format.
+     * @param amount The amount to format, in centavos.
      * @return The formatted currency string with points for thousands.
      */
-    private static String formatAsColombianCurrency(double amount) {
-        DecimalFormat df = new DecimalFormat("#,##0.00");
-        return df.format(amount).replace(",", "."); 
+    private static String formatAsColombianCurrency(long amount) {
+        return Money.format(amount).replace(",", ".");
     }
 
     /**
-     * Saves the sales report data to a CSV file.
+     * Saves the sales report data to a CSV file and, in full console mode, displays it in the console in
+     * the same pass over the rows, so rows merged from an external sort are merged once. The time of the
+     * pass is counted in the {@link RunMetrics#WRITE_CSV} phase, and the lines and bytes shown in the
+     * {@link RunMetrics#CONSOLE_OUTPUT} phase.
      *
-     * @param salesData The list of sales data to write to the CSV file.
+     * @param salesData The ranked rows to write to the CSV file.
+     * @param rows      The number of rows.
+     * @param console   How much of the report is shown in the console.
+     * @param total     Receives the total sales of the rows written.
+     * @param metrics   The metrics of the run.
+     * @return True if the report was saved.
      */
-    private static void saveSalesReportToCSV(List<String[]> salesData) {
+    private static boolean saveSalesReportToCSV(Iterable<SellerReportRow> salesData, long rows, ConsoleMode console,
+                                                long[] total, RunMetrics metrics) {
         String csvFile = "SalesReport/TotalSales/sales_report.csv";
 
-        // Create the directory if it doesn't exist
-        File reportFile = new File(csvFile);
-        reportFile.getParentFile().mkdirs();
-
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(reportFile))) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.WRITE_CSV);
+        RunMetrics.Timer timer = phase.start();
+        try (CsvWriter out = CsvWriter.open(new File(csvFile));
+             CsvWriter display = console == ConsoleMode.FULL ? CsvWriter.over(System.out) : null) {
             // Write CSV header
-            bw.write("First Name;Last Name;Total Sales");
-            bw.newLine();
+            out.write(CSV_HEADER).newLine();
 
             // Write sales data
-            for (String[] data : salesData) {
-                bw.write(String.join(";", data));
-                bw.newLine();
+            for (SellerReportRow row : salesData) {
+                writeRow(out, row);
+                if (display != null) {
+                    writeRow(display, row);
+                }
+                total[0] += row.getTotalSales();
+            }
+            phase.addFiles(1);
+            phase.addLines(rows + 1);
+            phase.addBytesWritten(out.getBytesWritten());
+            if (display != null) {
+                RunMetrics.Phase displayPhase = metrics.phase(RunMetrics.CONSOLE_OUTPUT);
+                displayPhase.addLines(rows);
+                displayPhase.addBytesWritten(display.getBytesWritten());
             }
-            System.out.println("Sales report saved to " + csvFile);
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            timer.stop();
+        }
+        if (console != ConsoleMode.QUIET) {
+            System.out.println("Sales report saved to " + csvFile);
         }
+        return true;
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
@@ -1,230 +1,204 @@
 package Utils;
 
 import Entities.Product;
+import Entities.ProductReportRow;
 
-import java.io.*;
-import java.text.DecimalFormat;
-import java.util.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Generates a report of sold products sorted by quantity in descending order.
- * Additionally, logs errors related to negative quantities and incorrect formats in sales.
+ * Additionally, reports sold products that are missing from the catalog or have an invalid price.
  */
 public class GenerateProductsReport {
 
-    private static final String SALES_FOLDER = "SoldProducts/Sales/";
-    private static final String PRODUCTS_FILE = "SoldProducts/Products/products_info.txt";
     private static final String PRODUCTS_REPORT_FILE = "SalesReport/Products/products_report.csv";
-    private static final String WRONG_FILES_FOLDER = "ReportWrongFiles/wrong_files_report.txt";
+    /** Header line of the products report CSV. */
+    static final String CSV_HEADER = "Product Name;Price;Quantity Sold;Total Revenue";
+    private static final Path SORT_FOLDER = Path.of("SalesReport/Sort");
+
+    /** Spills the rows of the products report to the runs of an external sort. */
+    private static final ExternalSorter.Codec<ProductReportRow> ROW_CODEC = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, ProductReportRow row) throws IOException {
+            out.writeUTF(row.getProductId());
+            out.writeUTF(row.getProductName());
+            out.writeLong(row.getPrice());
+            out.writeLong(row.getQuantitySold());
+            out.writeLong(row.getTotalRevenue());
+        }
 
-    // Formatter for prices in Colombian format (e.g., 1.000,00)
-    private static final DecimalFormat priceFormat = new DecimalFormat("#,##0.00");
+        @Override
+        public ProductReportRow read(DataInputStream in) throws IOException {
+            return new ProductReportRow(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+        }
 
-    private static boolean hasErrors = false; // Flag to check if there are errors
+        @Override
+        public long estimateSize(ProductReportRow row) {
+            // The row, its two strings and their arrays, with the reference held by the list
+            return 128 + row.getProductId().length() + row.getProductName().length();
+        }
+    };
 
     /**
      * Executes the generation of the product sales report.
-     * It processes sales data, generates a report in CSV format, 
-     * and logs any errors related to negative quantities or invalid formats.
+     * It processes sales data, generates a report in CSV format, streaming the rows to the CSV file and, in
+     * full console mode, to the console, and reports products that are not in the catalog or have an invalid
+     * price. Without a limit on the number of products and with a sort memory budget, the rows are ranked
+     * with an {@link ExternalSorter}.
+     *
+     * @param catalog   The product catalog loaded from the products file.
+     * @param aggregate The aggregate built from the sales files.
+     * @param errors    The reporter of the products that cannot be reported.
+     * @param options   The number of products reported, the console mode, the sort memory and the metrics of the run.
      */
-    public static void displayAndSaveProductsReport() {
-        try {
-            Map<String, Product> products = readProducts(); // Reads product data from file
-            Map<String, Integer> productSales = readSales(); // Reads sales data from files
-
-            // Collect sales data for the report
-            List<String[]> productData = new ArrayList<>();
-            for (String productId : productSales.keySet()) {
-                Product product = products.get(productId);
-                if (product != null) {
-                    int quantitySold = productSales.get(productId);
+    public static void displayAndSaveProductsReport(ProductCatalog catalog, SalesAggregate aggregate,
+                                                    ErrorReporter errors, ReportOptions options) {
+        int top = options.getTop();
+        ConsoleMode console = options.getConsole();
+        long sortMemory = options.getSortMemory();
+        RunMetrics metrics = options.getMetrics();
+        // Rank the products by quantity sold in descending order, keeping only the top ones if requested
+        TopN<ProductReportRow> ranking = top > 0 || sortMemory <= 0 ? new TopN<>(top, ProductReportRow.RANKING) : null;
+        try (ExternalSorter<ProductReportRow> sorter = ranking == null
+                ? new ExternalSorter<>(ProductReportRow.RANKING, ROW_CODEC, sortMemory, SORT_FOLDER) : null) {
+            RunMetrics.Phase build = metrics.phase(RunMetrics.BUILD_ROWS);
+            RunMetrics.Timer buildTimer = build.start();
+            try {
+                aggregate.forEachProduct((productId, quantitySold) -> {
+                    build.addLines(1);
+                    Product product = catalog.get(productId);
+                    if (product == null) {
+                        errors.report(RejectReason.UNKNOWN_PRODUCT, "Product with ID " + productId + " not found.");
+                        return;
+                    }
 
                     // Validate negative quantity or price
                     if (quantitySold < 0 || product.getPrice() <= 0) {
-                        logError("Product: " + productId + " has negative quantity or invalid price.");
-                        continue;
+                        errors.report(RejectReason.INVALID_PRODUCT, "Product: " + productId + " has negative quantity or invalid price.");
+                        return;
                     }
 
-                    double totalRevenue = product.getPrice() * quantitySold;
-
-                    // Format the price in Colombian format for display
-                    String formattedPrice = priceFormat.format(product.getPrice());
-
-                    // Add formatted data (price in Colombian format and quantity sold as integer)
-                    productData.add(new String[]{
-                        product.getProductName(),
-                        priceFormat.format(product.getPrice() * 1000), // Format price
-                        String.valueOf(quantitySold), // Quantity sold
-                        priceFormat.format(totalRevenue * 1000) // Total revenue
-                    });
-
+                    long totalRevenue = Money.times(product.getPrice(), quantitySold);
+                    ProductReportRow row = new ProductReportRow(productId, product.getProductName(), product.getPrice(),
+                            quantitySold, totalRevenue);
+                    if (sorter != null) {
+                        sorter.offer(row);
+                    } else {
+                        ranking.offer(row);
+                    }
+                });
+            } finally {
+                buildTimer.stop();
+            }
+            Iterable<ProductReportRow> productData;
+            long rows;
+            RunMetrics.Phase sort = metrics.phase(RunMetrics.SORT);
+            RunMetrics.Timer sortTimer = sort.start();
+            try {
+                if (sorter != null) {
+                    productData = sorter.sorted();
+                    rows = sorter.size();
                 } else {
-                    logError("Product with ID " + productId + " not found.");
+                    List<ProductReportRow> ranked = ranking.toList();
+                    productData = ranked;
+                    rows = ranked.size();
                 }
+                sort.addLines(rows);
+            } finally {
+                sortTimer.stop();
             }
 
-            // Sort by quantity sold in descending order
-            productData.sort((a, b) -> Integer.compare(Integer.parseInt(b[2]), Integer.parseInt(a[2])));
+            // Save to CSV file, displaying the results in console (optional) in the same pass over the rows
+            long[] totals = new long[2];
+            saveProductReportToCSV(productData, rows, console, totals, metrics);
 
-            // Display results in console (optional)
-            for (String[] data : productData) {
-                System.out.printf("%s; %s; %s; %s%n", data[0], data[1], data[2], data[3]);
+            if (console == ConsoleMode.SUMMARY) {
+                System.out.printf("Products report: %d products, %d units sold, %s in revenue.%n", rows,
+                        totals[0], Money.format(totals[1]));
             }
-
-            // Save to CSV file
-            saveProductReportToCSV(productData);
-
-            // Log if no errors were found
-            if (!hasErrors) {
-                logNoErrorsFound();
+            if (console != ConsoleMode.QUIET) {
+                System.out.println("Product report successfully generated at: " + PRODUCTS_REPORT_FILE);
             }
-
-            System.out.println("Product report successfully generated at: " + PRODUCTS_REPORT_FILE);
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             System.err.println("Error generating the product report.");
             e.printStackTrace();
         }
     }
 
     /**
-     * Reads the product information from the product file.
-     * 
-     * @return A map containing product data with product ID as the key and Product objects as values.
-     * @throws IOException If there is an error reading the file.
-     */
-    private static Map<String, Product> readProducts() throws IOException {
-        Map<String, Product> products = new HashMap<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(PRODUCTS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(";");
-                if (parts.length == 3) {
-                    String productId = parts[0];
-                    String productName = parts[1];
-                    try {
-                        double price = Double.parseDouble(parts[2].replace(",", ""));
-                        products.put(productId, new Product(productId, productName, price));
-                    } catch (NumberFormatException e) {
-                        logError("Invalid price format for product: " + productId);
-                    }
-                } else {
-                    logError("Error in product format: " + line);
-                }
-            }
-        }
-        return products;
-    }
-
-    /**
-     * Reads the sales files from the sales directory and accumulates the quantity sold for each product.
-     * Logs errors related to negative quantities or invalid sales formats.
-     * 
-     * @return A map where each key is a product ID and the value is the total quantity sold for that product.
-     * @throws IOException If there is an error reading the sales files.
-     */
-    private static Map<String, Integer> readSales() throws IOException {
-        Map<String, Integer> productSales = new HashMap<>();
-        File folder = new File(SALES_FOLDER);
-        File[] salesFiles = folder.listFiles();
-
-        if (salesFiles != null) {
-            for (File salesFile : salesFiles) {
-                try (BufferedReader br = new BufferedReader(new FileReader(salesFile))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        // Skip header lines
-                        if (line.startsWith("DNI") || line.startsWith("CC") || line.startsWith("CE") || line.startsWith("TI")) {
-                            continue;
-                        }
-                        String[] parts = line.split(";");
-                        if (parts.length >= 2) {
-                            String productId = parts[0];
-                            try {
-                                int quantity = Integer.parseInt(parts[1]);
-
-                                // Check for negative quantity
-                                if (quantity < 0) {
-                                    logError("Negative quantity in sales file " + salesFile.getName() + ": " + line);
-                                    continue;
-                                }
-
-                                productSales.put(productId, productSales.getOrDefault(productId, 0) + quantity);
-                            } catch (NumberFormatException e) {
-                                logError("Invalid sales quantity format in file " + salesFile.getName() + ": " + line);
-                            }
-                        } else {
-                            logError("Sales format error in file " + salesFile.getName() + ": " + line);
-                        }
-                    }
-                }
-            }
-        } else {
-            logError("No sales files found in the folder: " + SALES_FOLDER);
-        }
-        return productSales;
-    }
-
-    /**
-     * Saves the product report to a CSV file.
+     * Saves the product report to a CSV file and, in full console mode, displays it in the console in the
+     * same pass over the rows, so rows merged from an external sort are merged once. The time of the pass
+     * is counted in the {@link RunMetrics#WRITE_CSV} phase, and the lines and bytes shown in the
+     * {@link RunMetrics#CONSOLE_OUTPUT} phase.
      *
-     * @param productData List of sold products with details like name, price, quantity sold, and total revenue.
+     * @param productData Ranked rows of sold products with details like name, price, quantity sold, and total revenue.
+     * @param rows        The number of rows.
+     * @param console     How much of the report is shown in the console.
+     * @param totals      Receives the units sold and the total revenue of the rows written.
+     * @param metrics     The metrics of the run.
      * @throws IOException If there is an error writing the file.
      */
-    private static void saveProductReportToCSV(List<String[]> productData) throws IOException {
-        // Create the directory if it doesn't exist
-        File reportFile = new File(PRODUCTS_REPORT_FILE);
-        reportFile.getParentFile().mkdirs();
-
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(reportFile))) {
+    private static void saveProductReportToCSV(Iterable<ProductReportRow> productData, long rows, ConsoleMode console,
+                                               long[] totals, RunMetrics metrics) throws IOException {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.WRITE_CSV);
+        RunMetrics.Timer timer = phase.start();
+        try (CsvWriter out = CsvWriter.open(new File(PRODUCTS_REPORT_FILE));
+             CsvWriter display = console == ConsoleMode.FULL ? CsvWriter.over(System.out) : null) {
             // Write CSV header
-            bw.write("Product Name;Price;Quantity Sold;Total Revenue");
-            bw.newLine();
+            out.write(CSV_HEADER).newLine();
 
             // Write product sales data
-            for (String[] product : productData) {
-                bw.write(String.join(";", product));
-                bw.newLine();
+            for (ProductReportRow row : productData) {
+                writeRow(out, row);
+                if (display != null) {
+                    display.write(row.getProductName()).write("; ").writeAmount(row.getPrice()).write("; ")
+                            .write(row.getQuantitySold()).write("; ").writeAmount(row.getTotalRevenue()).newLine();
+                }
+                totals[0] += row.getQuantitySold();
+                totals[1] += row.getTotalRevenue();
             }
+            phase.addFiles(1);
+            phase.addLines(rows + 1);
+            phase.addBytesWritten(out.getBytesWritten());
+            if (display != null) {
+                RunMetrics.Phase displayPhase = metrics.phase(RunMetrics.CONSOLE_OUTPUT);
+                displayPhase.addLines(rows);
+                displayPhase.addBytesWritten(display.getBytesWritten());
+            }
+        } finally {
+            timer.stop();
         }
     }
 
     /**
-     * Logs an error in the wrong files report. This method appends the error message to the wrong files log.
+     * Writes the rows of the products report, as lines of the name, price, quantity sold and total revenue
+     * separated by semicolons.
      *
-     * @param errorMessage The error message to log.
+     * @param out         The writer.
+     * @param productData The ranked rows.
+     * @throws IOException If the rows cannot be written.
      */
-    private static void logError(String errorMessage) {
-        hasErrors = true;
-        File errorFile = new File(WRONG_FILES_FOLDER);
-        errorFile.getParentFile().mkdirs(); // Create parent directories if they don't exist
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(errorFile, true))) { // Append mode
-            bw.write(errorMessage);
-            bw.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
+    static void writeRows(CsvWriter out, Iterable<ProductReportRow> productData) throws IOException {
+        for (ProductReportRow row : productData) {
+            writeRow(out, row);
         }
     }
 
     /**
-     * Logs a message indicating that no errors were found.
+     * Writes one row of the products report.
+     *
+     * @param out The writer.
+     * @param row The row.
+     * @throws IOException If the row cannot be written.
      */
-    private static void logNoErrorsFound() {
-        File errorFile = new File(WRONG_FILES_FOLDER);
-        errorFile.getParentFile().mkdirs(); // Create parent directories if they don't exist
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(errorFile, true))) { // Append mode
-            bw.write("No errors found.");
-            bw.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static void writeRow(CsvWriter out, ProductReportRow row) throws IOException {
+        out.write(row.getProductName()).write(';').writeAmount(row.getPrice()).write(';')
+                .write(row.getQuantitySold()).write(';').writeAmount(row.getTotalRevenue()).newLine();
     }
 }
-
-
-
-
-
-
-
-
-
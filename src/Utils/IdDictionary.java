@@ -0,0 +1,167 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dictionary that encodes text IDs as consecutive int ordinals.
+ * <p>
+ * The dictionary is an open-addressing table of ordinals. IDs can be looked up straight from the bytes
+ * of a buffer: ASCII IDs are hashed and compared on the bytes, so a <code>String</code> is only created
+ * the first time an ID is seen. Ordinals are assigned in order of first appearance, starting at 0.
+ * </p>
+ */
+public class IdDictionary {
+
+    /** Returned by lookups when an ID is not in the dictionary. */
+    public static final int ABSENT = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] ids;
+    private int[] hashes;
+    private int[] table; // ordinal + 1 for each slot, 0 for an empty slot
+    private int size;
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public IdDictionary() {
+        ids = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Gets the number of IDs in the dictionary.
+     *
+     * @return The number of IDs, which is also the next ordinal to be assigned.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the ID of an ordinal.
+     *
+     * @param ordinal The ordinal.
+     * @return The ID.
+     */
+    public String idOf(int ordinal) {
+        return ids[ordinal];
+    }
+
+    /**
+     * Gets the ordinal of an ID.
+     *
+     * @param id The ID.
+     * @return The ordinal, or {@link #ABSENT} if the ID is not in the dictionary.
+     */
+    public int get(String id) {
+        int hash = id.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int ordinal = table[slot] - 1;
+            if (hashes[ordinal] == hash && ids[ordinal].equals(id)) {
+                return ordinal;
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Gets the ordinal of an ID, adding the ID if it is not in the dictionary.
+     *
+     * @param id The ID.
+     * @return The ordinal of the ID.
+     */
+    public int add(String id) {
+        int hash = id.hashCode();
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int ordinal = table[slot] - 1;
+            if (hashes[ordinal] == hash && ids[ordinal].equals(id)) {
+                return ordinal;
+            }
+        }
+        return insert(slot, id, hash);
+    }
+
+    /**
+     * Gets the ordinal of an ID held in a buffer, adding the ID if it is not in the dictionary.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the ID, inclusive.
+     * @param end    The end of the ID, exclusive.
+     * @return The ordinal of the ID.
+     */
+    public int add(ByteBuffer buffer, int start, int end) {
+        // Hash like String.hashCode so IDs added as text and as bytes share their slots
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                return add(ByteLineParser.text(buffer, start, end));
+            }
+            hash = 31 * hash + b;
+        }
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int ordinal = table[slot] - 1;
+            if (hashes[ordinal] == hash && equalsAscii(ids[ordinal], buffer, start, end)) {
+                return ordinal;
+            }
+        }
+        return insert(slot, ByteLineParser.text(buffer, start, end), hash);
+    }
+
+    private int insert(int slot, String id, int hash) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        ids[size] = id;
+        hashes[size] = hash;
+        table[slot] = size + 1;
+        size++;
+        // Keep the table at most half full
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = mix(hashes[ordinal]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = ordinal + 1;
+        }
+    }
+
+    private static boolean equalsAscii(String id, ByteBuffer buffer, int start, int end) {
+        if (id.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a String hash code, which are poorly distributed for short numeric IDs.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
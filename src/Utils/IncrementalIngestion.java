@@ -0,0 +1,275 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the sales aggregate up to date across runs, reading only the sales files that changed.
+ * <p>
+ * The state folder holds a {@link SalesManifest}, the partial aggregate of every sales file and the
+ * total aggregate. A run compares the sales folder against the manifest: a file with the size and
+ * modification time recorded is assumed unchanged, otherwise its content hash decides. The partials of
+ * changed and removed files are subtracted from the saved total, and new and changed files are read
+ * and merged, so the work done depends on the files that changed rather than on all the files.
+ * </p>
+ * <p>
+ * The partials embed the prices of the catalog, so a change of the products file rebuilds the total
+ * from every sales file. Errors of unchanged files were reported by the run that read them and are not
+ * reported again.
+ * </p>
+ * <p>
+ * State files are written atomically and the manifest last, and files the new manifest no longer
+ * needs are deleted only after it is saved, so an interrupted run leaves the previous state usable.
+ * </p>
+ */
+public class IncrementalIngestion {
+
+    private static final String MANIFEST_FILE = "manifest.txt";
+    private static final String PARTIALS_FOLDER = "partials";
+    private static final String AGGREGATE_PREFIX = "aggregate-";
+    private static final String STATE_SUFFIX = ".bin";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Updates the saved aggregate with the changes of the sales folder and saves the new state.
+     *
+     * @param salesFolder  The folder containing the sales files.
+     * @param productsFile The products file the catalog was loaded from.
+     * @param stateFolder  The folder where the manifest and the aggregates are kept.
+     * @param catalog      The product catalog used to price the sales.
+     * @param workers      The number of files read at the same time.
+     * @param errors       The reporter of the rejected lines.
+     * @param metrics      The metrics of the run, whose {@link RunMetrics#INGEST_SALES} phase counts only the
+     *                     sales files read again.
+     * @return The aggregate of all the valid sales lines of the sales folder.
+     */
+    public static SalesAggregate ingest(String salesFolder, String productsFile, String stateFolder,
+                                        ProductCatalog catalog, int workers, ErrorReporter errors, RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            File[] salesFiles = SalesInput.listInputFiles(salesFolder);
+            if (salesFiles == null) {
+                errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+                return new SalesAggregate();
+            }
+
+            Path state = Paths.get(stateFolder);
+            SalesManifest previous = loadManifest(state.resolve(MANIFEST_FILE));
+            String catalogHash = catalogHash(productsFile);
+            SalesAggregate total = null;
+            if (catalogHash != null && catalogHash.equals(previous.getCatalogHash())) {
+                total = loadTotal(state, previous);
+            }
+            SalesAggregate aggregate = null;
+            if (total != null) {
+                aggregate = update(salesFiles, state, previous, total, catalogHash, catalog, workers, errors, phase);
+            }
+            if (aggregate == null) {
+                // Nothing usable to start from: rebuild from every sales file
+                SalesManifest empty = new SalesManifest();
+                empty.setGeneration(previous.getGeneration());
+                aggregate = update(salesFiles, state, empty, new SalesAggregate(), catalogHash, catalog, workers, errors,
+                        phase);
+            }
+            return aggregate;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Applies the differences between the sales folder and a manifest to the total of that manifest,
+     * then saves the new state.
+     *
+     * @return The updated total, or null if the partial of a changed or removed file is missing.
+     */
+    private static SalesAggregate update(File[] salesFiles, Path state, SalesManifest previous, SalesAggregate total,
+                                         String catalogHash, ProductCatalog catalog, int workers, ErrorReporter errors,
+                                         RunMetrics.Phase phase) {
+        SalesManifest manifest = new SalesManifest();
+        manifest.setCatalogHash(catalogHash != null ? catalogHash : "");
+        manifest.setGeneration(previous.getGeneration() + 1);
+        Map<String, SalesManifest.Entry> known = new HashMap<>(previous.getFiles());
+        List<File> toRead = new ArrayList<>();
+        Map<File, SalesManifest.Entry> current = new HashMap<>();
+        for (File salesFile : salesFiles) {
+            SalesManifest.Entry entry = known.get(salesFile.getName());
+            if (entry != null && entry.matches(salesFile)) {
+                manifest.getFiles().put(salesFile.getName(), entry);
+                known.remove(salesFile.getName());
+                continue;
+            }
+            // The size, modification time and hash are taken before reading, so a file changed meanwhile
+            // does not match its entry and is read again by the next run
+            long size = salesFile.length();
+            long lastModified = salesFile.lastModified();
+            String hash = hash(salesFile);
+            if (entry != null && entry.getHash().equals(hash)) {
+                // Touched but not changed: only the recorded size and modification time are updated
+                manifest.getFiles().put(salesFile.getName(), new SalesManifest.Entry(size, lastModified, hash));
+                known.remove(salesFile.getName());
+                continue;
+            }
+            toRead.add(salesFile);
+            current.put(salesFile, new SalesManifest.Entry(size, lastModified, hash));
+        }
+
+        // The known files left were changed or removed
+        for (Map.Entry<String, SalesManifest.Entry> stale : known.entrySet()) {
+            SalesAggregate partial = loadPartial(state, stale.getKey(), stale.getValue().getHash());
+            if (partial == null) {
+                return null;
+            }
+            total.subtract(partial);
+        }
+
+        boolean[] complete = {catalogHash != null};
+        SalesIngestion.readSalesFiles(toRead.toArray(new File[0]), catalog, workers, errors, phase, (salesFile, partial) -> {
+            total.merge(partial);
+            SalesManifest.Entry entry = current.get(salesFile);
+            if (complete[0]) {
+                complete[0] = entry.getHash() != null
+                        && savePartial(state, salesFile.getName(), entry.getHash(), partial);
+                manifest.getFiles().put(salesFile.getName(), entry);
+            }
+        });
+
+        // Without every partial the new state could not be updated later, so the previous one is kept
+        if (complete[0]) {
+            saveState(state, manifest, total, previous);
+        }
+        return total;
+    }
+
+    /**
+     * Saves the total and the manifest, then deletes the total and the partials of the previous run
+     * that are no longer referenced.
+     */
+    private static void saveState(Path state, SalesManifest manifest, SalesAggregate aggregate, SalesManifest previous) {
+        try {
+            writeAggregate(aggregateFile(state, manifest.getGeneration()), aggregate);
+            manifest.save(state.resolve(MANIFEST_FILE));
+        } catch (IOException e) {
+            System.err.println("Error saving the incremental state in " + state);
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.deleteIfExists(aggregateFile(state, previous.getGeneration()));
+            Set<String> live = new HashSet<>();
+            for (Map.Entry<String, SalesManifest.Entry> file : manifest.getFiles().entrySet()) {
+                live.add(partialFile(state, file.getKey(), file.getValue().getHash()).getFileName().toString());
+            }
+            File[] partials = state.resolve(PARTIALS_FOLDER).toFile().listFiles(File::isFile);
+            if (partials != null) {
+                for (File partial : partials) {
+                    if (!live.contains(partial.getName())) {
+                        Files.deleteIfExists(partial.toPath());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Leftover files only take space, the saved state is already consistent
+            System.err.println("Error deleting old incremental state files in " + state);
+            e.printStackTrace();
+        }
+    }
+
+    private static SalesManifest loadManifest(Path manifestFile) {
+        try {
+            return SalesManifest.load(manifestFile);
+        } catch (IOException e) {
+            System.err.println("Error reading the sales manifest: " + manifestFile);
+            e.printStackTrace();
+            return new SalesManifest();
+        }
+    }
+
+    private static SalesAggregate loadTotal(Path state, SalesManifest manifest) {
+        Path aggregateFile = aggregateFile(state, manifest.getGeneration());
+        if (!Files.isRegularFile(aggregateFile)) {
+            return null;
+        }
+        return readAggregate(aggregateFile);
+    }
+
+    private static SalesAggregate loadPartial(Path state, String fileName, String hash) {
+        Path partialFile = partialFile(state, fileName, hash);
+        return Files.isRegularFile(partialFile) ? readAggregate(partialFile) : null;
+    }
+
+    private static boolean savePartial(Path state, String fileName, String hash, SalesAggregate partial) {
+        try {
+            writeAggregate(partialFile(state, fileName, hash), partial);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving the partial aggregate of " + fileName);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static SalesAggregate readAggregate(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return SalesAggregate.readFrom(new DataInputStream(in));
+        } catch (IOException e) {
+            System.err.println("Error reading the saved aggregate: " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void writeAggregate(Path file, SalesAggregate aggregate) throws IOException {
+        AtomicFiles.write(file, out -> {
+            DataOutputStream data = new DataOutputStream(out);
+            aggregate.writeTo(data);
+            data.flush();
+        });
+    }
+
+    private static String catalogHash(String productsFile) {
+        try {
+            return SalesManifest.hash(Paths.get(productsFile));
+        } catch (IOException e) {
+            System.err.println("Error reading the products file: " + productsFile);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static String hash(File salesFile) {
+        try {
+            return SalesManifest.hash(salesFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Error reading sales file " + salesFile.getName());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Path aggregateFile(Path state, long generation) {
+        return state.resolve(AGGREGATE_PREFIX + generation + STATE_SUFFIX);
+    }
+
+    /**
+     * Partials are named after the file and its content hash, so the partial of a changed file never
+     * overwrites the one the current manifest refers to.
+     */
+    private static Path partialFile(Path state, String fileName, String hash) {
+        return state.resolve(PARTIALS_FOLDER).resolve(fileName + "." + hash + STATE_SUFFIX);
+    }
+}
@@ -0,0 +1,151 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a large text file into byte ranges of whole lines that are parsed at the same time.
+ * <p>
+ * The file is cut near equal fractions of its size, each cut moved forward to just after the next
+ * <code>\n</code>, so every line belongs to exactly one range. Ranges are parsed on a fork-join pool into
+ * one result each, and the results are passed to a consumer on the calling thread in file order while the
+ * later ranges are still being parsed, so merging them gives the same result as a single pass over the file.
+ * Files smaller than {@link #MIN_RANGE_SIZE} per worker are split in fewer ranges, down to one.
+ * </p>
+ */
+public class LineRanges {
+
+    /** Smallest range worth a task of its own. */
+    static final long MIN_RANGE_SIZE = 1 << 20;
+    private static final int SCAN_SIZE = 1 << 12;
+
+    /**
+     * Parses a byte range of a file.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface RangeParser<T> {
+        T parse(long start, long end) throws IOException;
+    }
+
+    /**
+     * Receives the result of each range.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface RangeConsumer<T> {
+        void accept(T result);
+    }
+
+    /**
+     * Splits a file into ranges of whole lines.
+     *
+     * @param file  The file.
+     * @param parts The maximum number of ranges.
+     * @return The bounds of the ranges: range <code>i</code> goes from <code>bounds[i]</code>, inclusive, to
+     *         <code>bounds[i + 1]</code>, exclusive; the first bound is 0 and the last the size of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long[] split(Path file, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int ranges = (int) Math.max(1, Math.min(parts, size / MIN_RANGE_SIZE));
+            List<Long> bounds = new ArrayList<>(ranges + 1);
+            bounds.add(0L);
+            ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+            for (int i = 1; i < ranges; i++) {
+                long cut = Math.max(size * i / ranges, bounds.get(bounds.size() - 1));
+                long bound = nextLineStart(channel, cut, size, scan);
+                if (bound >= size) {
+                    break;
+                }
+                if (bound > bounds.get(bounds.size() - 1)) {
+                    bounds.add(bound);
+                }
+            }
+            bounds.add(size);
+            long[] result = new long[bounds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = bounds.get(i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Splits a file into ranges of whole lines, parses them with several workers and passes their results
+     * to a consumer on the calling thread, in file order.
+     *
+     * @param file     The file.
+     * @param workers  The number of ranges parsed at the same time; 1 parses the whole file as one range on
+     *                 the calling thread.
+     * @param parser   The parser of one range.
+     * @param consumer The consumer of the results.
+     * @param <T>      The type of the results.
+     * @throws IOException If the file cannot be read.
+     */
+    public static <T> void parseInOrder(Path file, int workers, RangeParser<T> parser, RangeConsumer<T> consumer)
+            throws IOException {
+        long[] bounds = split(file, Math.max(1, workers));
+        if (bounds.length == 2) {
+            consumer.accept(parser.parse(bounds[0], bounds[1]));
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(workers, bounds.length - 1));
+        try {
+            List<Future<T>> results = new ArrayList<>(bounds.length - 1);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                results.add(pool.submit(() -> parser.parse(start, end)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                consumer.accept(results.get(i).get());
+                results.set(i, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parsing of " + file + " was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Error parsing " + file, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the start of the first line that starts at or after a position.
+     *
+     * @return The position just after the first <code>\n</code> at or after <code>position - 1</code>, or the
+     *         size of the file if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer scan)
+            throws IOException {
+        long offset = Math.max(0, position - 1);
+        while (offset < size) {
+            scan.clear();
+            int read = channel.read(scan, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package Utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from <code>long</code> keys to <code>long</code> counters.
+ * <p>
+ * Keys and values are kept in primitive arrays, so adding to a counter does not box. The key
+ * <code>Long.MIN_VALUE</code> is reserved to mark empty slots.
+ * </p>
+ */
+public class LongLongHashMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    /**
+     * Receives the entries of the map.
+     */
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Creates an empty map.
+     */
+    public LongLongHashMap() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds a delta to the counter of a key, creating the counter with the delta if it does not exist.
+     *
+     * @param key   The key, other than <code>Long.MIN_VALUE</code>.
+     * @param delta The value to add.
+     */
+    public void add(long key, long delta) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        // Keep the table at most half full
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes a key from the map.
+     *
+     * @param key The key.
+     */
+    public void remove(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Shift back the following entries of the probe sequence so lookups still find them
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = EMPTY;
+        values[free] = 0;
+        size--;
+    }
+
+    /**
+     * Gets the counter of a key.
+     *
+     * @param key          The key.
+     * @param defaultValue The value returned if the key is not in the map.
+     * @return The counter of the key, or the default value.
+     */
+    public long get(long key, long defaultValue) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the number of keys in the map.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every entry of the map to a consumer, in no particular order.
+     *
+     * @param consumer The consumer of the entries.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,120 @@
+package Utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+
+/**
+ * Exact money arithmetic on <code>long</code> amounts of centavos.
+ * <p>
+ * Prices, revenues and totals are kept as whole centavos from the moment the catalog is loaded, so
+ * sums are exact and amounts are compared as plain integers. Prices in the products file are written
+ * in thousands of pesos with commas ignored, as the reports have always read them: <code>17.000</code>
+ * is 17 thousand pesos.
+ * </p>
+ */
+public class Money {
+
+    /** Number of decimal digits of an amount: amounts are in centavos. */
+    public static final int SCALE = 2;
+
+    // A catalog price is in thousands of pesos: 3 digits to pesos plus the centavos
+    private static final int CATALOG_SHIFT = 3 + SCALE;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L
+    };
+    // Longest mantissa that cannot overflow while reading one more digit
+    private static final long MAX_MANTISSA = Long.MAX_VALUE / 10 - 9;
+
+    private Money() {
+    }
+
+    /**
+     * Parses a catalog price held in a buffer. Commas are ignored and a point separates the decimals.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the price, inclusive.
+     * @param end    The end of the price, exclusive.
+     * @return The price in centavos.
+     * @throws NumberFormatException If the bytes are not a valid price.
+     */
+    public static long parseCatalogPrice(ByteBuffer buffer, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimalPoint = false;
+        boolean negative = false;
+        int i = start;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa > MAX_MANTISSA || (decimalPoint && scale == CATALOG_SHIFT)) {
+                    return parseCatalogPrice(ByteLineParser.text(buffer, start, end));
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimalPoint) {
+                    scale++;
+                }
+            } else if (b == '.' && !decimalPoint) {
+                decimalPoint = true;
+            } else if (b != ',') {
+                return parseCatalogPrice(ByteLineParser.text(buffer, start, end));
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid price: " + ByteLineParser.text(buffer, start, end));
+        }
+        try {
+            long amount = Math.multiplyExact(mantissa, POWERS_OF_TEN[CATALOG_SHIFT - scale]);
+            return negative ? -amount : amount;
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Price out of range: " + ByteLineParser.text(buffer, start, end));
+        }
+    }
+
+    /**
+     * Parses a catalog price. Commas are ignored; digits below one centavo are rounded half to even.
+     *
+     * @param text The price as written in the products file.
+     * @return The price in centavos.
+     * @throws NumberFormatException If the text is not a valid price.
+     */
+    public static long parseCatalogPrice(String text) {
+        try {
+            return new BigDecimal(text.replace(",", "").trim())
+                    .movePointRight(CATALOG_SHIFT)
+                    .setScale(0, RoundingMode.HALF_EVEN)
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Price out of range: " + text);
+        }
+    }
+
+    /**
+     * Multiplies a unit price by a quantity.
+     *
+     * @param price    The unit price in centavos.
+     * @param quantity The quantity.
+     * @return The total in centavos.
+     * @throws ArithmeticException If the result overflows.
+     */
+    public static long times(long price, long quantity) {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    /**
+     * Formats an amount with the <code>#,##0.00</code> pattern of the default locale.
+     *
+     * @param amount The amount in centavos.
+     * @return The formatted amount.
+     */
+    public static String format(long amount) {
+        return new DecimalFormat("#,##0.00").format(BigDecimal.valueOf(amount, SCALE));
+    }
+}
@@ -0,0 +1,690 @@
+package Utils;
+
+import Entities.Product;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap catalog of products, loaded once from the products file.
+ * <p>
+ * The catalog replaces scanning the products file for every sales line: the file is read a single time
+ * and prices are then looked up by product ID in constant time. Lines that cannot be parsed are not
+ * added to the catalog and are sent to the {@link ErrorReporter}.
+ * </p>
+ * <p>
+ * Products are not kept as objects on the heap, so the heap used by the catalog stays flat whatever the
+ * number of products. They are stored in direct buffers:
+ * <ul>
+ *     <li>records: for each product, in file order, its price, the lengths of its ID and name and their
+ *     UTF-8 bytes;</li>
+ *     <li>slots: an open-addressing table with linear probing, at most half full, whose slots hold the
+ *     hash of an ID in the upper 32 bits and the offset of its record plus one in the lower 32 bits;</li>
+ *     <li>dense prices: the prices of the IDs in the <code>P%03d</code> scheme indexed by their
+ *     {@link ProductKeys dense key}, so sales lines are priced without hashing. The table is only built
+ *     when the highest key is at most four times the number of products;
+ *     for sparser numbers, or keys above the table, prices are looked up in the slots.</li>
+ * </ul>
+ * IDs are looked up straight from the bytes of a sales line, without creating a <code>String</code>.
+ * A product ID repeated in the products file keeps its last line; the records of the replaced lines are
+ * dropped when the catalog is built. The catalog can be saved as an image and mapped back with
+ * {@link #map(Path)}, which makes it available without parsing the products file. The image records the
+ * size, modification time and content hash of the products file it was built from, checked by
+ * {@link #isImageOf(Path, Path)}. Records are addressed with <code>int</code> offsets, so they are limited
+ * to 2 GB.
+ * </p>
+ */
+public class ProductCatalog {
+
+    /** Extension of the catalog images written by {@link #save(Path)}. */
+    public static final String IMAGE_SUFFIX = ".catalog";
+
+    private static final int IMAGE_MAGIC = 0x54414350;
+    private static final int IMAGE_VERSION = 2;
+    private static final int IMAGE_HEADER_SIZE = 48;
+    // Size, modification time and CRC-32C of the products file, after the sizes of the sections
+    private static final int IMAGE_SOURCE_OFFSET = 24;
+    private static final long NO_SOURCE = -1;
+    // Rough size of one "id;name;price" line, used to pre-size the tables for large catalogs
+    private static final int ESTIMATED_BYTES_PER_LINE = 24;
+    private static final int MIN_CAPACITY = 16;
+    // Highest dense key per product for which the dense prices are built, which bounds their size
+    private static final int MAX_DENSE_KEYS_PER_PRODUCT = 4;
+    // Slots are 8 bytes and one buffer cannot exceed 2 GB
+    private static final int MAX_CAPACITY = 1 << 27;
+    // Price, ID length and name length in front of the bytes of every record
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int ID_LENGTH_OFFSET = 8;
+    private static final int NAME_LENGTH_OFFSET = 12;
+    // Marks the ID length of a record replaced by a later line with the same ID
+    private static final int REPLACED = Integer.MIN_VALUE;
+    private static final long EMPTY_SLOT = 0;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private final ByteBuffer records;
+    private final int recordsLength;
+    private final ByteBuffer slots;
+    private final ByteBuffer densePrices;
+    private final int size;
+    // The products file the catalog was loaded from, with its size and modification time before loading
+    private Path sourceFile;
+    private long sourceSize = NO_SOURCE;
+    private long sourceModified = NO_SOURCE;
+
+    /**
+     * Receives the products of the catalog.
+     */
+    public interface ProductConsumer {
+        void accept(String productId, String productName, long price);
+    }
+
+    private ProductCatalog(ByteBuffer records, int recordsLength, ByteBuffer slots, ByteBuffer densePrices, int size) {
+        this.records = records;
+        this.recordsLength = recordsLength;
+        this.slots = slots;
+        this.densePrices = densePrices;
+        this.size = size;
+    }
+
+    /**
+     * Loads the catalog from a products file with lines in the format <code>id;name;price</code>.
+     *
+     * @param productsFile The path of the products file.
+     * @param errors       The reporter of the lines that cannot be loaded.
+     * @return The loaded catalog.
+     * @throws IOException If there is an error reading the file.
+     */
+    public static ProductCatalog load(String productsFile, ErrorReporter errors) throws IOException {
+        return load(productsFile, 1, errors);
+    }
+
+    /**
+     * Loads the catalog from a products file with lines in the format <code>id;name;price</code>, using the
+     * given number of workers. A large file is split in ranges of lines (see {@link LineRanges}) parsed into
+     * records at the same time; the records are then indexed, and the rejected lines reported, in file order,
+     * so the catalog and the report are the same whatever the number of workers. The records of a range are
+     * kept on the heap, trimmed to their size, and released once they are copied to the catalog, so the
+     * direct memory used is the one of the catalog alone.
+     *
+     * @param productsFile The path of the products file.
+     * @param workers      The number of ranges of the file parsed at the same time; 1 loads the file on the
+     *                     calling thread.
+     * @param errors       The reporter of the lines that cannot be loaded.
+     * @return The loaded catalog.
+     * @throws IOException If there is an error reading the file.
+     */
+    public static ProductCatalog load(String productsFile, int workers, ErrorReporter errors) throws IOException {
+        File file = new File(productsFile);
+        long sourceSize = file.length();
+        long sourceModified = file.lastModified();
+        ProductCatalog catalog = loadRecords(file, workers, errors);
+        catalog.sourceFile = file.toPath();
+        catalog.sourceSize = sourceSize;
+        catalog.sourceModified = sourceModified;
+        return catalog;
+    }
+
+    private static ProductCatalog loadRecords(File file, int workers, ErrorReporter errors) throws IOException {
+        Builder builder = new Builder(file.length() / ESTIMATED_BYTES_PER_LINE, file.length());
+        if (workers <= 1) {
+            new ByteLineParser().parseProducts(file.toPath(), new RangeLoader(builder, errors));
+            return builder.build();
+        }
+        LineRanges.parseInOrder(file.toPath(), workers, (start, end) -> {
+            RangeLoader range = new RangeLoader(
+                    new Builder((end - start) / ESTIMATED_BYTES_PER_LINE, end - start, false), null);
+            new ByteLineParser().parseProducts(file.toPath(), start, end, range);
+            range.builder.trim();
+            return range;
+        }, range -> {
+            builder.addAll(range.builder);
+            for (int i = 0; i < range.rejects.size(); i++) {
+                errors.report(range.rejectReasons.get(i), range.rejects.get(i));
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Maps a catalog image written by {@link #save(Path)}, without copying it to memory.
+     *
+     * @param imageFile The catalog image.
+     * @return The catalog, backed by the mapped file.
+     * @throws IOException If the image cannot be read or is not a catalog image.
+     */
+    public static ProductCatalog map(Path imageFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(IMAGE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading until the header is read or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != IMAGE_MAGIC || header.getInt(4) != IMAGE_VERSION) {
+                throw new IOException("Not a catalog image: " + imageFile);
+            }
+            int size = header.getInt(8);
+            int capacity = header.getInt(12);
+            int denseLength = header.getInt(16);
+            int recordsLength = header.getInt(20);
+            long slotsOffset = IMAGE_HEADER_SIZE;
+            long denseOffset = slotsOffset + 8L * capacity;
+            long recordsOffset = denseOffset + 8L * denseLength;
+            if (recordsOffset + recordsLength != channel.size()) {
+                throw new IOException("Truncated catalog image: " + imageFile);
+            }
+            // Each section is mapped on its own, since one mapping cannot exceed 2 GB
+            ByteBuffer slots = map(channel, slotsOffset, 8L * capacity);
+            ByteBuffer densePrices = map(channel, denseOffset, 8L * denseLength);
+            ByteBuffer records = map(channel, recordsOffset, recordsLength);
+            return new ProductCatalog(records, recordsLength, slots, densePrices, size);
+        }
+    }
+
+    /**
+     * Checks whether an image was saved from a products file as it is now: with the same size,
+     * modification time and content hash. Images of an older format are never current.
+     *
+     * @param imageFile    The catalog image.
+     * @param productsFile The products file.
+     * @return True if the image can be mapped instead of loading the products file.
+     * @throws IOException If the image or the products file cannot be read.
+     */
+    public static boolean isImageOf(Path imageFile, Path productsFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(IMAGE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading until the header is read or the file ends
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != IMAGE_MAGIC || header.getInt(4) != IMAGE_VERSION) {
+            return false;
+        }
+        File products = productsFile.toFile();
+        if (header.getLong(IMAGE_SOURCE_OFFSET) != products.length()
+                || header.getLong(IMAGE_SOURCE_OFFSET + 8) != products.lastModified()) {
+            return false;
+        }
+        return header.getInt(IMAGE_SOURCE_OFFSET + 16) == hash(productsFile);
+    }
+
+    /**
+     * Creates an empty catalog, used when the products file cannot be read.
+     *
+     * @return A catalog without products.
+     */
+    public static ProductCatalog empty() {
+        return new Builder(0, 0).build();
+    }
+
+    /**
+     * Saves the catalog as an image that {@link #map(Path)} reads back. The image is replaced atomically.
+     * The image of a catalog loaded from a products file records the size, modification time and content
+     * hash of the file; other images are never current for {@link #isImageOf(Path, Path)}.
+     *
+     * @param imageFile The path of the image.
+     * @throws IOException If the image cannot be written, or if the products file changed since it was loaded.
+     */
+    public void save(Path imageFile) throws IOException {
+        long size = NO_SOURCE;
+        long modified = NO_SOURCE;
+        int hash = 0;
+        if (sourceFile != null) {
+            hash = hash(sourceFile);
+            File source = sourceFile.toFile();
+            if (source.length() != sourceSize || source.lastModified() != sourceModified) {
+                throw new IOException("The products file changed while the catalog was loaded: " + sourceFile);
+            }
+            size = sourceSize;
+            modified = sourceModified;
+        }
+        ByteBuffer header = ByteBuffer.allocate(IMAGE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(IMAGE_MAGIC).putInt(IMAGE_VERSION).putInt(this.size).putInt(slots.capacity() / 8)
+                .putInt(densePrices.capacity() / 8).putInt(recordsLength)
+                .putLong(size).putLong(modified).putInt(hash).clear();
+        AtomicFiles.write(imageFile, out -> {
+            WritableByteChannel channel = Channels.newChannel(out);
+            writeFully(channel, header);
+            writeFully(channel, slots.duplicate().clear());
+            writeFully(channel, densePrices.duplicate().clear());
+            writeFully(channel, records.slice(0, recordsLength));
+        });
+    }
+
+    /**
+     * Gets a product by its ID. The product is created on every call from the stored record.
+     *
+     * @param productId The product ID.
+     * @return The product, or null if it is not in the catalog.
+     */
+    public Product get(String productId) {
+        byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+        int record = find(ByteBuffer.wrap(id), 0, id.length);
+        if (record < 0) {
+            return null;
+        }
+        return new Product(productId, string(nameStart(record), records.getInt(record + NAME_LENGTH_OFFSET)),
+                records.getLong(record));
+    }
+
+    /**
+     * Checks whether a product is in the catalog.
+     *
+     * @param productId The product ID.
+     * @return True if the catalog has a product with the ID.
+     */
+    public boolean contains(String productId) {
+        byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+        return find(ByteBuffer.wrap(id), 0, id.length) >= 0;
+    }
+
+    /**
+     * Gets the price of a product by its ID.
+     *
+     * @param productId The product ID.
+     * @return The price of the product in centavos, or 0 if not found.
+     */
+    public long getPrice(String productId) {
+        int key = ProductKeys.denseKey(productId);
+        if (key != ProductKeys.NO_KEY && key < densePrices.capacity() / 8) {
+            return densePrices.getLong(8 * key);
+        }
+        byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+        int record = find(ByteBuffer.wrap(id), 0, id.length);
+        return record >= 0 ? records.getLong(record) : 0;
+    }
+
+    /**
+     * Gets the price of a product by its ID held in a buffer.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the product ID, inclusive.
+     * @param end    The end of the product ID, exclusive.
+     * @return The price of the product in centavos, or 0 if not found.
+     */
+    public long getPrice(ByteBuffer buffer, int start, int end) {
+        int key = ProductKeys.denseKey(buffer, start, end);
+        if (key != ProductKeys.NO_KEY && key < densePrices.capacity() / 8) {
+            return densePrices.getLong(8 * key);
+        }
+        int record = find(buffer, start, end);
+        return record >= 0 ? records.getLong(record) : 0;
+    }
+
+    /**
+     * Gets the number of products in the catalog.
+     *
+     * @return The number of products.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every product of the catalog to a consumer, in the order of the products file.
+     *
+     * @param consumer The consumer of the products.
+     */
+    public void forEach(ProductConsumer consumer) {
+        forEachRecord((record, idStart, idLength) -> consumer.accept(string(idStart, idLength),
+                string(idStart + idLength, records.getInt(record + NAME_LENGTH_OFFSET)), records.getLong(record)));
+    }
+
+    /**
+     * Finds the record of a product ID held in a buffer.
+     *
+     * @return The offset of the record, or -1 if the ID is not in the catalog.
+     */
+    private int find(ByteBuffer buffer, int start, int end) {
+        if (size == 0) {
+            return -1;
+        }
+        int hash = hash(buffer, start, end);
+        int mask = slots.capacity() / 8 - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = slots.getLong(8 * slot);
+            if (entry == EMPTY_SLOT) {
+                return -1;
+            }
+            int record = (int) (entry & OFFSET_MASK) - 1;
+            if ((int) (entry >>> 32) == hash && idEquals(records, record, buffer, start, end)) {
+                return record;
+            }
+        }
+    }
+
+    private int nameStart(int record) {
+        return record + RECORD_HEADER_SIZE + (records.getInt(record + ID_LENGTH_OFFSET) & Integer.MAX_VALUE);
+    }
+
+    private String string(int start, int length) {
+        byte[] bytes = new byte[length];
+        records.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean idEquals(ByteBuffer records, int record, ByteBuffer buffer, int start, int end) {
+        int length = records.getInt(record + ID_LENGTH_OFFSET) & Integer.MAX_VALUE;
+        if (length != end - start) {
+            return false;
+        }
+        int idStart = record + RECORD_HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            if (records.get(idStart + i) != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the bytes of an ID with FNV-1a and a final mix, so that IDs differing only in their last
+     * digits spread over the table.
+     */
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static int hash(Path file) throws IOException {
+        return Integer.parseUnsignedInt(SalesManifest.hash(file), 16);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        return allocate(bytes, true);
+    }
+
+    private static ByteBuffer allocate(long bytes, boolean direct) {
+        int capacity = Math.toIntExact(bytes);
+        return (direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Adds the products of a products file, or of a range of its lines, to a builder. Rejected lines are
+     * reported, or kept to be reported later in file order when there is no reporter.
+     */
+    private static class RangeLoader implements ByteLineParser.ProductHandler {
+        private final Builder builder;
+        private final ErrorReporter errors;
+        private final List<RejectReason> rejectReasons = new ArrayList<>();
+        private final List<String> rejects = new ArrayList<>();
+
+        private RangeLoader(Builder builder, ErrorReporter errors) {
+            this.builder = builder;
+            this.errors = errors;
+        }
+
+        @Override
+        public void product(ByteBuffer buffer, int idStart, int idEnd, int nameStart, int nameEnd, long price) {
+            builder.add(buffer, idStart, idEnd, buffer, nameStart, nameEnd, price);
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int start, int end, RejectReason reason) {
+            String message;
+            if (reason == RejectReason.INVALID_PRICE) {
+                message = "Invalid price format for product: " + ByteLineParser.text(buffer, start, end);
+            } else {
+                message = "Error in product format: " + ByteLineParser.text(buffer, start, end);
+            }
+            if (errors != null) {
+                errors.report(reason, message);
+            } else {
+                rejectReasons.add(reason);
+                rejects.add(message);
+            }
+        }
+    }
+
+    /**
+     * Collects the products of a catalog into growing direct buffers.
+     */
+    static class Builder {
+        private ByteBuffer records;
+        private int recordsLength;
+        private ByteBuffer slots;
+        private int size;
+        private int denseLength;
+        // Bytes of the records replaced by a later line with the same ID
+        private long replacedBytes;
+        private final boolean indexed;
+
+        /**
+         * Creates a builder sized for an expected number of products, so large catalogs are not
+         * rehashed or copied while loading.
+         *
+         * @param expectedProducts The expected number of products.
+         * @param expectedBytes    The expected size of the IDs and names of the products.
+         */
+        Builder(long expectedProducts, long expectedBytes) {
+            this(expectedProducts, expectedBytes, true);
+        }
+
+        /**
+         * Creates a builder sized for an expected number of products.
+         *
+         * @param expectedProducts The expected number of products.
+         * @param expectedBytes    The expected size of the IDs and names of the products.
+         * @param indexed          False to only collect the records, without replacing repeated IDs, in heap
+         *                         buffers, for a builder whose products are only added to another one with
+         *                         {@link #addAll(Builder)}.
+         */
+        Builder(long expectedProducts, long expectedBytes, boolean indexed) {
+            long recordBytes = expectedBytes + RECORD_HEADER_SIZE * (expectedProducts + 1);
+            records = allocate(Math.min(Math.max(recordBytes, 1024), Integer.MAX_VALUE - 8), indexed);
+            slots = allocate(8L * (indexed ? capacityFor(expectedProducts) : MIN_CAPACITY), indexed);
+            this.indexed = indexed;
+        }
+
+        /**
+         * Adds a product whose ID and name are held in buffers, replacing a product with the same ID.
+         *
+         * @param idBuffer   The buffer holding the ID.
+         * @param idStart    The start of the ID, inclusive.
+         * @param idEnd      The end of the ID, exclusive.
+         * @param nameBuffer The buffer holding the name.
+         * @param nameStart  The start of the name, inclusive.
+         * @param nameEnd    The end of the name, exclusive.
+         * @param price      The price in centavos.
+         */
+        void add(ByteBuffer idBuffer, int idStart, int idEnd, ByteBuffer nameBuffer, int nameStart, int nameEnd,
+                 long price) {
+            int idLength = idEnd - idStart;
+            int nameLength = nameEnd - nameStart;
+            int record = reserve((long) RECORD_HEADER_SIZE + idLength + nameLength);
+            records.putLong(record, price);
+            records.putInt(record + ID_LENGTH_OFFSET, idLength);
+            records.putInt(record + NAME_LENGTH_OFFSET, nameLength);
+            records.put(record + RECORD_HEADER_SIZE, idBuffer, idStart, idLength);
+            records.put(record + RECORD_HEADER_SIZE + idLength, nameBuffer, nameStart, nameLength);
+            if (!indexed) {
+                return;
+            }
+
+            int hash = hash(idBuffer, idStart, idEnd);
+            long entry = (long) hash << 32 | (record + 1L);
+            int mask = slots.capacity() / 8 - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long existing = slots.getLong(8 * slot);
+                if (existing == EMPTY_SLOT) {
+                    slots.putLong(8 * slot, entry);
+                    size++;
+                    break;
+                }
+                int existingRecord = (int) (existing & OFFSET_MASK) - 1;
+                if ((int) (existing >>> 32) == hash && idEquals(records, existingRecord, idBuffer, idStart, idEnd)) {
+                    replacedBytes += RECORD_HEADER_SIZE + idLength + records.getInt(existingRecord + NAME_LENGTH_OFFSET);
+                    records.putInt(existingRecord + ID_LENGTH_OFFSET, idLength | REPLACED);
+                    slots.putLong(8 * slot, entry);
+                    break;
+                }
+            }
+            int key = ProductKeys.denseKey(idBuffer, idStart, idEnd);
+            if (key != ProductKeys.NO_KEY) {
+                denseLength = Math.max(denseLength, key + 1);
+            }
+            int capacity = slots.capacity() / 8;
+            if (size * 2L > capacity) {
+                if (capacity == MAX_CAPACITY) {
+                    if (size * 4L > capacity * 3L) {
+                        throw new IllegalStateException("The product catalog exceeds " + size + " products");
+                    }
+                } else {
+                    rehash(capacity * 2);
+                }
+            }
+        }
+
+        /**
+         * Adds a product, replacing a product with the same ID.
+         *
+         * @param productId   The product ID.
+         * @param productName The product name.
+         * @param price       The price in centavos.
+         */
+        void add(String productId, String productName, long price) {
+            ByteBuffer id = ByteBuffer.wrap(productId.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer name = ByteBuffer.wrap(productName.getBytes(StandardCharsets.UTF_8));
+            add(id, 0, id.capacity(), name, 0, name.capacity(), price);
+        }
+
+        /**
+         * Adds the products of another builder in the order they were added to it, as if their lines followed
+         * the lines already added.
+         *
+         * @param other The builder whose products are added.
+         */
+        void addAll(Builder other) {
+            forEachRecord(other.records, other.recordsLength, (record, idStart, idLength) -> {
+                int nameStart = idStart + idLength;
+                add(other.records, idStart, nameStart, other.records, nameStart,
+                        nameStart + other.records.getInt(record + NAME_LENGTH_OFFSET), other.records.getLong(record));
+            });
+        }
+
+        /**
+         * Shrinks the records to their length, for a builder kept until its products are added to another one.
+         */
+        void trim() {
+            if (records.capacity() > recordsLength) {
+                ByteBuffer trimmed = allocate(recordsLength, records.isDirect());
+                trimmed.put(0, records, 0, recordsLength);
+                records = trimmed;
+            }
+        }
+
+        /**
+         * Builds the catalog, indexing the prices of the products in the <code>P%03d</code> scheme when their
+         * numbers are dense enough. If lines
+         * were replaced by later lines with the same ID, the records left are first copied to new buffers of
+         * their size, so neither the catalog nor its image keeps the replaced records.
+         *
+         * @return The catalog.
+         */
+        ProductCatalog build() {
+            if (replacedBytes > 0) {
+                Builder compact = new Builder(size, recordsLength - replacedBytes - (long) RECORD_HEADER_SIZE * size);
+                compact.addAll(this);
+                return compact.build();
+            }
+            // A few high product numbers would make the table far larger than the catalog
+            int dense = denseLength <= (long) MAX_DENSE_KEYS_PER_PRODUCT * size ? denseLength : 0;
+            ByteBuffer densePrices = allocate(8L * dense);
+            ProductCatalog catalog = new ProductCatalog(records, recordsLength, slots, densePrices, size);
+            catalog.forEachRecord((record, idStart, idLength) -> {
+                int key = ProductKeys.denseKey(records, idStart, idStart + idLength);
+                if (key != ProductKeys.NO_KEY && key < dense) {
+                    densePrices.putLong(8 * key, records.getLong(record));
+                }
+            });
+            return catalog;
+        }
+
+        private int reserve(long length) {
+            long end = recordsLength + length;
+            if (end > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("The product catalog exceeds 2 GB");
+            }
+            if (end > records.capacity()) {
+                ByteBuffer grown = allocate(Math.min(Math.max(end, 2L * records.capacity()), Integer.MAX_VALUE - 8),
+                        indexed);
+                grown.put(0, records, 0, recordsLength);
+                records = grown;
+            }
+            int record = recordsLength;
+            recordsLength = (int) end;
+            return record;
+        }
+
+        private void rehash(int capacity) {
+            ByteBuffer grown = allocate(8L * capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < slots.capacity(); i += 8) {
+                long entry = slots.getLong(i);
+                if (entry != EMPTY_SLOT) {
+                    int slot = (int) (entry >>> 32) & mask;
+                    while (grown.getLong(8 * slot) != EMPTY_SLOT) {
+                        slot = (slot + 1) & mask;
+                    }
+                    grown.putLong(8 * slot, entry);
+                }
+            }
+            slots = grown;
+        }
+
+        private static int capacityFor(long expectedProducts) {
+            long capacity = MIN_CAPACITY;
+            while (capacity < expectedProducts * 2 + 2 && capacity < MAX_CAPACITY) {
+                capacity <<= 1;
+            }
+            return (int) capacity;
+        }
+    }
+
+    /**
+     * Receives the records of the products that were not replaced.
+     */
+    private interface RecordConsumer {
+        void accept(int record, int idStart, int idLength);
+    }
+
+    private void forEachRecord(RecordConsumer consumer) {
+        forEachRecord(records, recordsLength, consumer);
+    }
+
+    private static void forEachRecord(ByteBuffer records, int recordsLength, RecordConsumer consumer) {
+        int record = 0;
+        while (record < recordsLength) {
+            int idLength = records.getInt(record + ID_LENGTH_OFFSET);
+            int idBytes = idLength & Integer.MAX_VALUE;
+            int idStart = record + RECORD_HEADER_SIZE;
+            if ((idLength & REPLACED) == 0) {
+                consumer.accept(record, idStart, idBytes);
+            }
+            record = idStart + idBytes + records.getInt(record + NAME_LENGTH_OFFSET);
+        }
+    }
+}
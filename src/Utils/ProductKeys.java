@@ -0,0 +1,96 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dense encoding of the product IDs generated as <code>P%03d</code>.
+ * <p>
+ * An ID in that scheme is encoded as its number, so it can index a primitive array without hashing or
+ * creating a <code>String</code>. IDs that do not follow the scheme, or whose number is too large, have
+ * no dense key and are handled by an {@link IdDictionary}.
+ * </p>
+ */
+public class ProductKeys {
+
+    /** Dense keys are below this limit, which bounds the arrays indexed by them. */
+    public static final int DENSE_LIMIT = 1 << 24;
+    /** Returned when an ID has no dense key. */
+    public static final int NO_KEY = -1;
+
+    private static final int MIN_DIGITS = 3;
+    private static final int MAX_DIGITS = 9;
+
+    private ProductKeys() {
+    }
+
+    /**
+     * Gets the dense key of a product ID held in a buffer.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the ID, inclusive.
+     * @param end    The end of the ID, exclusive.
+     * @return The number of the ID, or {@link #NO_KEY} if it is not written exactly as <code>P%03d</code>.
+     */
+    public static int denseKey(ByteBuffer buffer, int start, int end) {
+        int digits = end - start - 1;
+        if (digits < MIN_DIGITS || digits > MAX_DIGITS || buffer.get(start) != 'P') {
+            return NO_KEY;
+        }
+        // Longer numbers are written without leading zeros
+        if (digits > MIN_DIGITS && buffer.get(start + 1) == '0') {
+            return NO_KEY;
+        }
+        int value = 0;
+        for (int i = start + 1; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NO_KEY;
+            }
+            value = value * 10 + digit;
+        }
+        return value < DENSE_LIMIT ? value : NO_KEY;
+    }
+
+    /**
+     * Gets the dense key of a product ID.
+     *
+     * @param productId The product ID.
+     * @return The number of the ID, or {@link #NO_KEY} if it is not written exactly as <code>P%03d</code>.
+     */
+    public static int denseKey(String productId) {
+        int digits = productId.length() - 1;
+        if (digits < MIN_DIGITS || digits > MAX_DIGITS || productId.charAt(0) != 'P') {
+            return NO_KEY;
+        }
+        if (digits > MIN_DIGITS && productId.charAt(1) == '0') {
+            return NO_KEY;
+        }
+        int value = 0;
+        for (int i = 1; i < productId.length(); i++) {
+            int digit = productId.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NO_KEY;
+            }
+            value = value * 10 + digit;
+        }
+        return value < DENSE_LIMIT ? value : NO_KEY;
+    }
+
+    /**
+     * Gets the product ID of a dense key.
+     *
+     * @param key The dense key.
+     * @return The product ID in the <code>P%03d</code> scheme.
+     */
+    public static String productId(int key) {
+        String number = Integer.toString(key);
+        switch (number.length()) {
+            case 1:
+                return "P00" + number;
+            case 2:
+                return "P0" + number;
+            default:
+                return "P" + number;
+        }
+    }
+}
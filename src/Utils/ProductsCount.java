@@ -1,14 +1,12 @@
 package Utils;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
- * Provides random product-related data.
+ * Provides random product-related data, drawn from the {@link SplittableRandom} passed in.
  */
 public class ProductsCount {
 
-    private static final Random RANDOM = new Random();
-
     // Array of product names
     private static final String[] PRODUCT_NAMES = {
             "libra_lentejas", "bolsa_yogurt", "pan_baguette", "botella_aceite",
@@ -29,19 +27,21 @@ public class ProductsCount {
     /**
      * Returns a random product name from the predefined list.
      *
+     * @param random The source of randomness.
      * @return A randomly selected product name.
      */
-    public static String getRandomProductName() {
-        return PRODUCT_NAMES[RANDOM.nextInt(PRODUCT_NAMES.length)];
+    public static String getRandomProductName(SplittableRandom random) {
+        return PRODUCT_NAMES[random.nextInt(PRODUCT_NAMES.length)];
     }
 
     /**
      * Returns a random product price from the predefined list.
      *
+     * @param random The source of randomness.
      * @return A randomly selected product price.
      */
-    public static int getRandomProductPrice() {
-        return PRODUCT_PRICES[RANDOM.nextInt(PRODUCT_PRICES.length)];
+    public static int getRandomProductPrice(SplittableRandom random) {
+        return PRODUCT_PRICES[random.nextInt(PRODUCT_PRICES.length)];
     }
 }
 
@@ -0,0 +1,25 @@
+package Utils;
+
+/**
+ * Reasons why a line of a sales or products file, or a whole file or product, is rejected.
+ */
+public enum RejectReason {
+    /** A sales line with a quantity below zero. */
+    NEGATIVE_QUANTITY,
+    /** A sales line whose quantity is not a valid integer. */
+    INVALID_QUANTITY,
+    /** A sales line without a product ID and a quantity. */
+    SALES_FORMAT,
+    /** A products line whose price is not a valid number. */
+    INVALID_PRICE,
+    /** A products line that does not have exactly an ID, a name and a price. */
+    PRODUCT_FORMAT,
+    /** A product sold that is not in the catalog. */
+    UNKNOWN_PRODUCT,
+    /** A product sold with a negative quantity or a price that is not positive. */
+    INVALID_PRODUCT,
+    /** A sales file or folder that cannot be read. */
+    UNREADABLE_FILE,
+    /** A sales line whose date is not a valid <code>yyyy-MM-dd</code> date or timestamp. */
+    INVALID_DATE
+}
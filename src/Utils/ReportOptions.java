@@ -0,0 +1,79 @@
+package Utils;
+
+/**
+ * Options of the sales and products reports: how many rows are reported, how much is shown in the
+ * console, how the rows are ranked and where the timings are recorded.
+ * <p>
+ * The defaults report every row in full console mode, rank the rows in memory and record the timings in
+ * metrics of their own. Setters return the options, so they can be chained.
+ * </p>
+ */
+public class ReportOptions {
+
+    private int top = 0;
+    private ConsoleMode console = ConsoleMode.FULL;
+    private long sortMemory = 0;
+    private RunMetrics metrics = new RunMetrics();
+
+    /**
+     * Sets the number of sellers and products reported.
+     *
+     * @param top The number of rows with the highest sales to report, or 0 to report them all.
+     * @return These options.
+     */
+    public ReportOptions setTop(int top) {
+        this.top = top;
+        return this;
+    }
+
+    /**
+     * Sets how much of the reports is shown in the console.
+     *
+     * @param console The console mode.
+     * @return These options.
+     */
+    public ReportOptions setConsole(ConsoleMode console) {
+        this.console = console;
+        return this;
+    }
+
+    /**
+     * Sets the memory used to rank the rows when every row is reported. Beyond it the rows are ranked with
+     * an {@link ExternalSorter}, spilling sorted runs under <code>SalesReport/Sort/</code> that are merged
+     * while the report is written.
+     *
+     * @param sortMemory The estimated size in bytes of the rows ranked in memory, or 0 to rank them all in memory.
+     * @return These options.
+     */
+    public ReportOptions setSortMemory(long sortMemory) {
+        this.sortMemory = sortMemory;
+        return this;
+    }
+
+    /**
+     * Sets the metrics the time of building, ranking and writing the rows is recorded in.
+     *
+     * @param metrics The metrics of the run.
+     * @return These options.
+     */
+    public ReportOptions setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public ConsoleMode getConsole() {
+        return console;
+    }
+
+    public long getSortMemory() {
+        return sortMemory;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+}
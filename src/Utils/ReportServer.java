@@ -0,0 +1,439 @@
+package Utils;
+
+import Entities.Product;
+import Entities.ProductReportRow;
+import Entities.Seller;
+import Entities.SellerReportRow;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server of the reports, answering from the aggregates in memory.
+ * <p>
+ * The server listens on the loopback address only and answers <code>GET</code> and <code>HEAD</code>
+ * requests for:
+ * <ul>
+ *     <li><code>/sales.csv</code> and <code>/sales.json</code>: the sales report, every seller ranked by total
+ *     sales.</li>
+ *     <li><code>/products.csv</code> and <code>/products.json</code>: the products report, every product ranked by
+ *     quantity sold.</li>
+ *     <li><code>/sellers/&lt;documentNumber&gt;.csv</code> and <code>.json</code>: the products sold by a seller.</li>
+ *     <li><code>/products/&lt;productId&gt;.csv</code> and <code>.json</code>: the sellers of a product.</li>
+ * </ul>
+ * The CSV reports have the same content as the report files.
+ * </p>
+ * <p>
+ * Responses are serialized once: the reports when the aggregates are published, the lookups on their first
+ * request. Every response carries an <code>ETag</code> computed from its content, so it only changes when the
+ * aggregates do, and a request whose <code>If-None-Match</code> matches is answered with
+ * <code>304 Not Modified</code> and no body. Until the first aggregates are published the server answers
+ * <code>503 Service Unavailable</code>.
+ * </p>
+ */
+public class ReportServer implements Closeable {
+
+    private static final String CSV_TYPE = "text/csv; charset=UTF-8";
+    private static final String JSON_TYPE = "application/json; charset=UTF-8";
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String JSON_EXTENSION = ".json";
+    private static final String SALES_PATH = "/sales";
+    private static final String PRODUCTS_PATH = "/products";
+    private static final String SELLER_PREFIX = "/sellers/";
+    private static final String PRODUCT_PREFIX = "/products/";
+    private static final int ETAG_BYTES = 12;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile Content content;
+
+    private ReportServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on the loopback address, answering requests on one thread per available processor.
+     *
+     * @param port The port to listen on, or 0 to pick a free one.
+     * @return The running server.
+     * @throws IOException If the port cannot be bound.
+     */
+    public static ReportServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ReportServer reportServer = new ReportServer(server, executor);
+        server.createContext("/", reportServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        return reportServer;
+    }
+
+    /**
+     * Replaces the aggregates the server answers from. The reports are serialized before the call returns;
+     * requests in flight finish with the previous aggregates.
+     *
+     * @param sellers   A map where the key is the seller's document number and the value is the Seller object.
+     * @param catalog   The product catalog loaded from the products file.
+     * @param aggregate The aggregate built from the sales files.
+     */
+    public void publish(Map<String, Seller> sellers, ProductCatalog catalog, SalesAggregate aggregate) {
+        Content next = new Content(sellers, catalog, SalesCube.build(aggregate, sellers, catalog));
+        List<SellerReportRow> salesRows = salesRows(sellers, aggregate);
+        List<ProductReportRow> productRows = productRows(catalog, aggregate);
+        next.responses.put(SALES_PATH + CSV_EXTENSION, csv(out -> {
+            out.write(GeneralSalesReport.CSV_HEADER).newLine();
+            GeneralSalesReport.writeRows(out, salesRows);
+        }));
+        next.responses.put(SALES_PATH + JSON_EXTENSION, json(salesJson(salesRows)));
+        next.responses.put(PRODUCTS_PATH + CSV_EXTENSION, csv(out -> {
+            out.write(GenerateProductsReport.CSV_HEADER).newLine();
+            GenerateProductsReport.writeRows(out, productRows);
+        }));
+        next.responses.put(PRODUCTS_PATH + JSON_EXTENSION, json(productsJson(productRows)));
+        content = next;
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, dropping the requests in flight.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Content current = content;
+            if (current == null) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            Response response = current.response(exchange.getRequestURI().getPath());
+            if (response == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", response.etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), response.etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", response.type);
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", Integer.toString(response.body.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, response.body.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response.body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Checks an <code>If-None-Match</code> header against the ETag of a response.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<SellerReportRow> salesRows(Map<String, Seller> sellers, SalesAggregate aggregate) {
+        TopN<SellerReportRow> ranking = new TopN<>(0, SellerReportRow.RANKING);
+        aggregate.forEachSeller((documentNumber, totalSales) -> {
+            Seller seller = sellers.get(documentNumber);
+            if (seller != null) {
+                ranking.offer(new SellerReportRow(documentNumber, seller.getFirstName(), seller.getLastName(), totalSales));
+            }
+        });
+        return ranking.toList();
+    }
+
+    /**
+     * Ranks the products of the products report, leaving out the same products it does.
+     */
+    private static List<ProductReportRow> productRows(ProductCatalog catalog, SalesAggregate aggregate) {
+        TopN<ProductReportRow> ranking = new TopN<>(0, ProductReportRow.RANKING);
+        aggregate.forEachProduct((productId, quantitySold) -> {
+            Product product = catalog.get(productId);
+            if (product != null && quantitySold >= 0 && product.getPrice() > 0) {
+                ranking.offer(new ProductReportRow(productId, product.getProductName(), product.getPrice(),
+                        quantitySold, Money.times(product.getPrice(), quantitySold)));
+            }
+        });
+        return ranking.toList();
+    }
+
+    private static String salesJson(List<SellerReportRow> rows) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rows.size(); i++) {
+            SellerReportRow row = rows.get(i);
+            json.append(i > 0 ? ",\n" : "\n").append("{\"documentNumber\":");
+            string(json, row.getDocumentNumber()).append(",\"firstName\":");
+            string(json, row.getFirstName()).append(",\"lastName\":");
+            string(json, row.getLastName()).append(",\"totalSales\":");
+            amount(json, row.getTotalSales()).append('}');
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    private static String productsJson(List<ProductReportRow> rows) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rows.size(); i++) {
+            ProductReportRow row = rows.get(i);
+            json.append(i > 0 ? ",\n" : "\n").append("{\"productId\":");
+            string(json, row.getProductId()).append(",\"productName\":");
+            string(json, row.getProductName()).append(",\"price\":");
+            amount(json, row.getPrice()).append(",\"quantitySold\":").append(row.getQuantitySold())
+                    .append(",\"totalRevenue\":");
+            amount(json, row.getTotalRevenue()).append('}');
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    /**
+     * Writes a JSON string, or <code>null</code>.
+     */
+    private static StringBuilder string(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Writes an amount of centavos as a JSON number with two decimals.
+     */
+    private static StringBuilder amount(StringBuilder json, long amount) {
+        return json.append(BigDecimal.valueOf(amount, Money.SCALE).toPlainString());
+    }
+
+    /**
+     * Writes the body of a CSV response.
+     */
+    private interface CsvBody {
+        void write(CsvWriter out) throws IOException;
+    }
+
+    private static Response csv(CsvBody body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter out = CsvWriter.over(bytes)) {
+            body.write(out);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return new Response(bytes.toByteArray(), CSV_TYPE);
+    }
+
+    private static Response json(String body) {
+        return new Response(body.getBytes(StandardCharsets.UTF_8), JSON_TYPE);
+    }
+
+    /**
+     * A serialized response and its ETag.
+     */
+    private static class Response {
+        private final byte[] body;
+        private final String type;
+        private final String etag;
+
+        private Response(byte[] body, String type) {
+            this.body = body;
+            this.type = type;
+            this.etag = etagOf(body);
+        }
+
+        private static String etagOf(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                StringBuilder etag = new StringBuilder("\"");
+                for (int i = 0; i < ETAG_BYTES; i++) {
+                    etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                            .append(Character.forDigit(digest[i] & 0xF, 16));
+                }
+                return etag.append('"').toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    }
+
+    /**
+     * The aggregates of one publication and the responses serialized from them.
+     */
+    private static class Content {
+        private final Map<String, Seller> sellers;
+        private final ProductCatalog catalog;
+        private final SalesCube cube;
+        private final Map<String, Response> responses = new ConcurrentHashMap<>();
+
+        private Content(Map<String, Seller> sellers, ProductCatalog catalog, SalesCube cube) {
+            this.sellers = sellers;
+            this.catalog = catalog;
+            this.cube = cube;
+        }
+
+        /**
+         * Gets the response of a path, serializing and caching the lookups of known sellers and products.
+         *
+         * @return The response, or null if there is nothing at the path.
+         */
+        private Response response(String path) {
+            Response response = responses.get(path);
+            if (response != null) {
+                return response;
+            }
+            boolean csv = path.endsWith(CSV_EXTENSION);
+            if (!csv && !path.endsWith(JSON_EXTENSION)) {
+                return null;
+            }
+            String key = path.substring(0, path.length() - (csv ? CSV_EXTENSION : JSON_EXTENSION).length());
+            if (key.startsWith(SELLER_PREFIX)) {
+                String documentNumber = key.substring(SELLER_PREFIX.length());
+                if (!sellers.containsKey(documentNumber) && !cube.containsSeller(documentNumber)) {
+                    return null;
+                }
+                return responses.computeIfAbsent(path, p -> csv ? sellerCsv(documentNumber) : sellerJson(documentNumber));
+            }
+            if (key.startsWith(PRODUCT_PREFIX)) {
+                String productId = key.substring(PRODUCT_PREFIX.length());
+                if (catalog.get(productId) == null && !cube.containsProduct(productId)) {
+                    return null;
+                }
+                return responses.computeIfAbsent(path, p -> csv ? productCsv(productId) : productJson(productId));
+            }
+            return null;
+        }
+
+        private Response sellerCsv(String documentNumber) {
+            return csv(out -> {
+                out.write("Product ID;Product Name;Quantity Sold;Total Revenue").newLine();
+                for (SalesCube.Entry entry : cube.topProducts(documentNumber, 0)) {
+                    out.write(entry.getId()).write(';').write(productName(entry.getId())).write(';')
+                            .write(entry.getQuantity()).write(';').writeAmount(entry.getRevenue()).newLine();
+                }
+            });
+        }
+
+        private Response sellerJson(String documentNumber) {
+            Seller seller = sellers.get(documentNumber);
+            StringBuilder json = new StringBuilder("{\"documentNumber\":");
+            string(json, documentNumber).append(",\"documentType\":");
+            string(json, seller != null ? seller.getDocumentType() : null).append(",\"firstName\":");
+            string(json, seller != null ? seller.getFirstName() : null).append(",\"lastName\":");
+            string(json, seller != null ? seller.getLastName() : null).append(",\"totalSales\":");
+            amount(json, cube.getSellerRevenue(documentNumber)).append(",\"products\":[");
+            List<SalesCube.Entry> products = cube.topProducts(documentNumber, 0);
+            for (int i = 0; i < products.size(); i++) {
+                SalesCube.Entry entry = products.get(i);
+                json.append(i > 0 ? ",\n" : "\n").append("{\"productId\":");
+                string(json, entry.getId()).append(",\"productName\":");
+                string(json, productName(entry.getId())).append(",\"quantitySold\":").append(entry.getQuantity())
+                        .append(",\"totalRevenue\":");
+                amount(json, entry.getRevenue()).append('}');
+            }
+            return json(json.append("\n]}\n").toString());
+        }
+
+        private Response productCsv(String productId) {
+            return csv(out -> {
+                out.write("Document Number;First Name;Last Name;Quantity Sold;Total Revenue").newLine();
+                for (SalesCube.Entry entry : cube.topSellers(productId, 0)) {
+                    Seller seller = sellers.get(entry.getId());
+                    out.write(entry.getId()).write(';').write(seller != null ? seller.getFirstName() : "").write(';')
+                            .write(seller != null ? seller.getLastName() : "").write(';').write(entry.getQuantity())
+                            .write(';').writeAmount(entry.getRevenue()).newLine();
+                }
+            });
+        }
+
+        private Response productJson(String productId) {
+            Product product = catalog.get(productId);
+            StringBuilder json = new StringBuilder("{\"productId\":");
+            string(json, productId).append(",\"productName\":");
+            string(json, product != null ? product.getProductName() : null).append(",\"price\":");
+            amount(json, product != null ? product.getPrice() : 0).append(",\"quantitySold\":")
+                    .append(cube.getProductQuantity(productId)).append(",\"totalRevenue\":");
+            amount(json, cube.getProductRevenue(productId)).append(",\"sellers\":[");
+            List<SalesCube.Entry> sellerEntries = cube.topSellers(productId, 0);
+            for (int i = 0; i < sellerEntries.size(); i++) {
+                SalesCube.Entry entry = sellerEntries.get(i);
+                Seller seller = sellers.get(entry.getId());
+                json.append(i > 0 ? ",\n" : "\n").append("{\"documentNumber\":");
+                string(json, entry.getId()).append(",\"firstName\":");
+                string(json, seller != null ? seller.getFirstName() : null).append(",\"lastName\":");
+                string(json, seller != null ? seller.getLastName() : null).append(",\"quantitySold\":")
+                        .append(entry.getQuantity()).append(",\"totalRevenue\":");
+                amount(json, entry.getRevenue()).append('}');
+            }
+            return json(json.append("\n]}\n").toString());
+        }
+
+        private String productName(String productId) {
+            Product product = catalog.get(productId);
+            return product != null ? product.getProductName() : "";
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads the sales files into {@link SalesRollups}, splitting the sales of each file by day.
+ * <p>
+ * The sales lines are parsed with the same rules as {@link SalesIngestion}. Lines with a date go to the
+ * bucket of that day; lines without one go to the day the sales file, or the archive holding it, was last
+ * modified, in the default time zone, so folders written before sales were dated still have a place in time.
+ * </p>
+ * <p>
+ * Rollups can be kept across runs in a state folder: the daily sales of every sales file are saved next
+ * to a {@link SalesManifest}, and a later run loads them instead of reading the files again when the file
+ * still has the size and modification time recorded, which also fixes the day of its undated sales. The
+ * rollups are then built from the saved and the newly read days in file name order, so they are the same
+ * as the rollups of a full read. As with {@link IncrementalIngestion}, a change of the products file reads
+ * every sales file again, and errors of the files loaded from the state are not reported again.
+ * </p>
+ */
+public class RollupIngestion {
+
+    private static final String ROLLUPS_FOLDER = "rollups";
+    private static final String MANIFEST_FILE = "manifest.txt";
+    private static final String DAYS_SUFFIX = ".bin";
+    // The saved days of a file are matched by size and modification time only
+    private static final String NO_HASH = "-";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads all the sales files in a folder into rollups, recording the time, the files, the lines and
+     * the bytes read in the {@link RunMetrics#INGEST_SALES} phase.
+     *
+     * @param salesFolder The folder containing the sales files.
+     * @param catalog     The product catalog used to price the sales.
+     * @param workers     The number of files read at the same time; 1 reads them on the calling thread.
+     * @param errors      The reporter of the rejected lines.
+     * @param metrics     The metrics of the run.
+     * @return The rollups of all the valid sales lines.
+     */
+    public static SalesRollups ingest(String salesFolder, ProductCatalog catalog, int workers, ErrorReporter errors,
+                                      RunMetrics metrics) {
+        return ingest(salesFolder, null, null, catalog, workers, errors, metrics);
+    }
+
+    /**
+     * Builds the rollups of all the sales files in a folder, reading only the files whose daily sales are
+     * not saved in the state folder, and saves the daily sales of the files read for the next run.
+     *
+     * @param salesFolder  The folder containing the sales files.
+     * @param productsFile The products file the catalog was loaded from, or null to keep no state.
+     * @param stateFolder  The folder where the state of the incremental runs is kept, or null to keep no state.
+     * @param catalog      The product catalog used to price the sales.
+     * @param workers      The number of files read at the same time; 1 reads them on the calling thread.
+     * @param errors       The reporter of the rejected lines.
+     * @param metrics      The metrics of the run, whose {@link RunMetrics#INGEST_SALES} phase counts only the
+     *                     sales files read again.
+     * @return The rollups of all the valid sales lines.
+     */
+    public static SalesRollups ingest(String salesFolder, String productsFile, String stateFolder,
+                                      ProductCatalog catalog, int workers, ErrorReporter errors, RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            SalesRollups rollups = new SalesRollups();
+            File[] salesFiles = SalesInput.listInputFiles(salesFolder);
+            if (salesFiles == null) {
+                errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+                return rollups;
+            }
+
+            String catalogHash = stateFolder != null ? catalogHash(productsFile) : null;
+            // Without the products file the saved days could not be checked by a later run, so none are kept
+            Path state = catalogHash != null ? Paths.get(stateFolder).resolve(ROLLUPS_FOLDER) : null;
+            SalesManifest previous = new SalesManifest();
+            if (state != null) {
+                SalesManifest saved = loadManifest(state.resolve(MANIFEST_FILE));
+                if (catalogHash.equals(saved.getCatalogHash())) {
+                    previous = saved;
+                }
+            }
+            Map<String, SalesManifest.Entry> known = previous.getFiles();
+            SalesManifest manifest = new SalesManifest();
+            manifest.setCatalogHash(catalogHash != null ? catalogHash : "");
+            boolean[] complete = {state != null};
+            SalesIngestion.readInOrder(salesFiles, workers,
+                    salesFile -> readOrLoad(salesFile, state, known.get(salesFile.getName()), catalog, errors, phase),
+                    (salesFile, result) -> {
+                        for (String documentNumber : result.sellers) {
+                            rollups.addSeller(documentNumber);
+                        }
+                        result.days.forEach(rollups::add);
+                        if (complete[0]) {
+                            complete[0] = result.saved;
+                            manifest.getFiles().put(salesFile.getName(), result.entry);
+                        }
+                    });
+
+            // Without the days of every file the next run could not use the state, so the previous one is kept
+            if (complete[0]) {
+                saveState(state, manifest);
+            }
+            return rollups;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Loads the saved daily sales of a file if it is unchanged since they were saved, otherwise reads the
+     * file and, with a state folder, saves its daily sales.
+     *
+     * @param state The folder of the saved days, or null to keep no state.
+     * @param entry The entry of the file in the manifest of the previous run, or null if it has none.
+     */
+    private static DatedSales readOrLoad(File salesFile, Path state, SalesManifest.Entry entry, ProductCatalog catalog,
+                                         ErrorReporter errors, RunMetrics.Phase phase) {
+        if (entry != null && entry.matches(salesFile)) {
+            DatedSales saved = loadDays(daysFile(state, salesFile.getName(), entry));
+            if (saved != null) {
+                saved.entry = entry;
+                saved.saved = true;
+                return saved;
+            }
+        }
+        // The size and modification time are taken before reading, so a file changed meanwhile is read again
+        SalesManifest.Entry current = new SalesManifest.Entry(salesFile.length(), salesFile.lastModified(), NO_HASH);
+        DatedSales result = readSalesFile(salesFile, catalog, errors, phase);
+        result.entry = current;
+        result.saved = state != null && saveDays(daysFile(state, salesFile.getName(), current), result);
+        return result;
+    }
+
+    /**
+     * Reads the sales files held in one input file into one partial aggregate per day.
+     *
+     * @param salesFile The input file, a sales file or a file holding several.
+     * @param catalog   The product catalog used to price the sales.
+     * @param errors    The reporter of the rejected lines.
+     * @param phase     The phase counting the files, lines and bytes read.
+     * @return The sales of the input file by day.
+     */
+    private static DatedSales readSalesFile(File salesFile, ProductCatalog catalog, ErrorReporter errors,
+                                            RunMetrics.Phase phase) {
+        long modified = Instant.ofEpochMilli(salesFile.lastModified()).atZone(ZoneId.systemDefault())
+                .toLocalDate().toEpochDay();
+        DatedInput result = new DatedInput(catalog, errors, modified);
+        try {
+            SalesInput.forEachSalesFile(salesFile, new ByteLineParser(), result);
+        } catch (IOException e) {
+            errors.report(RejectReason.UNREADABLE_FILE, "Error reading sales file " + salesFile.getName());
+            e.printStackTrace();
+        }
+        DatedSales sales = new DatedSales(result.days);
+        long lines = 0;
+        for (DatedFile file : result.files) {
+            sales.sellers.add(file.documentNumber);
+            lines += file.lines;
+        }
+        phase.addFiles(1);
+        phase.addLines(lines);
+        phase.addBytesRead(salesFile.length());
+        return sales;
+    }
+
+    /**
+     * Saves the manifest, then deletes the saved days it no longer refers to.
+     */
+    private static void saveState(Path state, SalesManifest manifest) {
+        try {
+            manifest.save(state.resolve(MANIFEST_FILE));
+        } catch (IOException e) {
+            System.err.println("Error saving the rollups state in " + state);
+            e.printStackTrace();
+            return;
+        }
+        Set<String> live = new HashSet<>();
+        for (Map.Entry<String, SalesManifest.Entry> file : manifest.getFiles().entrySet()) {
+            live.add(daysFile(state, file.getKey(), file.getValue()).getFileName().toString());
+        }
+        File[] saved = state.toFile().listFiles(file -> file.isFile() && file.getName().endsWith(DAYS_SUFFIX));
+        if (saved == null) {
+            return;
+        }
+        try {
+            for (File file : saved) {
+                if (!live.contains(file.getName())) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        } catch (IOException e) {
+            // Leftover files only take space, the saved state is already consistent
+            System.err.println("Error deleting old rollups state files in " + state);
+            e.printStackTrace();
+        }
+    }
+
+    private static SalesManifest loadManifest(Path manifestFile) {
+        try {
+            return SalesManifest.load(manifestFile);
+        } catch (IOException e) {
+            System.err.println("Error reading the rollups manifest: " + manifestFile);
+            e.printStackTrace();
+            return new SalesManifest();
+        }
+    }
+
+    /**
+     * Reads the daily sales of a file: the sellers of the file, then the number of days and each day
+     * followed by its aggregate.
+     */
+    private static DatedSales loadDays(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            DataInputStream data = new DataInputStream(in);
+            DatedSales sales = new DatedSales(new TreeMap<>());
+            int sellers = data.readInt();
+            for (int i = 0; i < sellers; i++) {
+                sales.sellers.add(data.readUTF());
+            }
+            int days = data.readInt();
+            for (int i = 0; i < days; i++) {
+                long day = data.readLong();
+                sales.days.put(day, SalesAggregate.readFrom(data));
+            }
+            return sales;
+        } catch (IOException e) {
+            System.err.println("Error reading the saved daily sales: " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean saveDays(Path file, DatedSales sales) {
+        try {
+            AtomicFiles.write(file, out -> {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(sales.sellers.size());
+                for (String documentNumber : sales.sellers) {
+                    data.writeUTF(documentNumber);
+                }
+                data.writeInt(sales.days.size());
+                for (Map.Entry<Long, SalesAggregate> day : sales.days.entrySet()) {
+                    data.writeLong(day.getKey());
+                    day.getValue().writeTo(data);
+                }
+                data.flush();
+            });
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving the daily sales to " + file);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static String catalogHash(String productsFile) {
+        try {
+            return SalesManifest.hash(Paths.get(productsFile));
+        } catch (IOException e) {
+            System.err.println("Error reading the products file: " + productsFile);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The saved days are named after the file, its size and its modification time, so the days of a
+     * changed file never overwrite the ones the current manifest refers to.
+     */
+    private static Path daysFile(Path state, String fileName, SalesManifest.Entry entry) {
+        return state.resolve(fileName + "." + entry.getSize() + "-" + entry.getLastModified() + DAYS_SUFFIX);
+    }
+
+    /**
+     * The sales of one input file by day, read from the file or loaded from the state.
+     */
+    private static class DatedSales {
+        private final List<String> sellers = new ArrayList<>();
+        private final Map<Long, SalesAggregate> days;
+        // The size and modification time the days were built from, and whether they are in the state folder
+        private SalesManifest.Entry entry;
+        private boolean saved;
+
+        private DatedSales(Map<Long, SalesAggregate> days) {
+            this.days = days;
+        }
+    }
+
+    /**
+     * Sales of the sales files held in one input file, split by day.
+     */
+    private static class DatedInput implements SalesInput.HandlerFactory {
+        private final Map<Long, SalesAggregate> days = new TreeMap<>();
+        private final List<DatedFile> files = new ArrayList<>();
+        private final ProductCatalog catalog;
+        private final ErrorReporter errors;
+        private final long modifiedDay;
+
+        private DatedInput(ProductCatalog catalog, ErrorReporter errors, long modifiedDay) {
+            this.catalog = catalog;
+            this.errors = errors;
+            this.modifiedDay = modifiedDay;
+        }
+
+        @Override
+        public ByteLineParser.SalesHandler open(String fileName) {
+            DatedFile file = new DatedFile(fileName, days, catalog, errors, modifiedDay);
+            files.add(file);
+            return file;
+        }
+    }
+
+    /**
+     * Sales lines of one sales file, or seller section, added to the aggregates of their days by the parser.
+     */
+    private static class DatedFile implements ByteLineParser.SalesHandler {
+        private final Map<Long, SalesAggregate> days;
+        private final String fileName;
+        private final ProductCatalog catalog;
+        private final ErrorReporter errors;
+        private final long modifiedDay;
+        private String documentNumber;
+        private boolean documentFixed;
+        private long lines;
+        // The aggregate of the day of the previous line and the seller's ordinal in it
+        private long currentDay = Long.MIN_VALUE;
+        private SalesAggregate current;
+        private int seller;
+
+        private DatedFile(String fileName, Map<Long, SalesAggregate> days, ProductCatalog catalog, ErrorReporter errors,
+                          long modifiedDay) {
+            this.fileName = fileName;
+            this.days = days;
+            this.catalog = catalog;
+            this.errors = errors;
+            this.modifiedDay = modifiedDay;
+            this.documentNumber = SalesIngestion.documentNumberFromFileName(fileName);
+        }
+
+        @Override
+        public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+            // The header carries the seller's document number
+            if (documentEnd > documentStart && !documentFixed) {
+                documentNumber = ByteLineParser.text(buffer, documentStart, documentEnd);
+            }
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+            sale(buffer, productIdStart, productIdEnd, quantity, ByteLineParser.NO_DATE);
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity, int day) {
+            documentFixed = true;
+            lines++;
+            long saleDay = day == ByteLineParser.NO_DATE ? modifiedDay : day;
+            if (saleDay != currentDay) {
+                current = days.computeIfAbsent(saleDay, key -> new SalesAggregate());
+                seller = current.sellerOrdinal(documentNumber);
+                currentDay = saleDay;
+            }
+            int productKey = current.productKey(buffer, productIdStart, productIdEnd);
+            current.addSale(seller, productKey, quantity, catalog.getPrice(buffer, productIdStart, productIdEnd));
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+            documentFixed = true;
+            lines++;
+            SalesIngestion.reportRejectedLine(errors, fileName, ByteLineParser.text(buffer, lineStart, lineEnd), reason);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package Utils;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of the phases of a run, exported as JSON and in the Prometheus text format.
+ * <p>
+ * Each phase accumulates its wall time, the files and lines it went through and the bytes it read and
+ * wrote; a phase timed several times, such as the sorting of both reports, adds up. Counters can be
+ * updated from several threads. The number of records rejected for each {@link RejectReason} is copied
+ * from the {@link ErrorReporter} before exporting.
+ * </p>
+ * <p>
+ * Both files are replaced atomically, so a scraper never reads a half-written file.
+ * </p>
+ */
+public class RunMetrics {
+
+    /** Reading the sellers file. */
+    public static final String READ_SELLERS = "read_sellers";
+    /** Loading the products file into the catalog. */
+    public static final String LOAD_CATALOG = "load_catalog";
+    /** Validating the sales files and quarantining the files with too many errors. */
+    public static final String VALIDATE_SALES = "validate_sales";
+    /** Reading the sales files, or the snapshot, into the aggregate. */
+    public static final String INGEST_SALES = "ingest_sales";
+    /** Building the rows of the reports from the aggregate: looking up the sellers and pricing the products. */
+    public static final String BUILD_ROWS = "build_rows";
+    /** Ranking the rows of the reports. */
+    public static final String SORT = "sort";
+    /** Writing the report CSV files. */
+    public static final String WRITE_CSV = "write_csv";
+    /** Echoing the reports to the console. */
+    public static final String CONSOLE_OUTPUT = "console_output";
+    /** Flushing the wrong files report and writing its summary. */
+    public static final String ERROR_LOGGING = "error_logging";
+
+    private static final String PREFIX = "sales_report_";
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final long[] rejected = new long[RejectReason.values().length];
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private long endNanos;
+
+    /**
+     * Gets a phase, creating it on first use. Phases are exported in the order they were first used.
+     *
+     * @param name The name of the phase.
+     * @return The phase.
+     */
+    public synchronized Phase phase(String name) {
+        return phases.computeIfAbsent(name, Phase::new);
+    }
+
+    /**
+     * Copies the number of errors reported for each reason.
+     *
+     * @param errors The reporter of the run.
+     */
+    public synchronized void recordRejects(ErrorReporter errors) {
+        for (RejectReason reason : RejectReason.values()) {
+            rejected[reason.ordinal()] = errors.getCount(reason);
+        }
+    }
+
+    /**
+     * Marks the end of the run. The wall time of the run is measured up to the first call.
+     */
+    public synchronized void finish() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Writes the metrics as a JSON object.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeJson(String file) throws IOException {
+        finish();
+        List<Phase> snapshot = phases();
+        AtomicFiles.write(Paths.get(file), out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(String.format(Locale.ROOT, "{%n  \"startTime\": %d,%n  \"wallSeconds\": %.6f,%n  \"phases\": [",
+                    startMillis, seconds(endNanos - startNanos)));
+            for (int i = 0; i < snapshot.size(); i++) {
+                Phase phase = snapshot.get(i);
+                writer.write(String.format(Locale.ROOT, "%s%n    {\"name\": \"%s\", \"calls\": %d, \"wallSeconds\": %.6f, "
+                                + "\"files\": %d, \"lines\": %d, \"bytesRead\": %d, \"bytesWritten\": %d, "
+                                + "\"filesPerSecond\": %.1f, \"linesPerSecond\": %.1f}",
+                        i > 0 ? "," : "", phase.name, phase.calls.get(), phase.getSeconds(), phase.files.get(),
+                        phase.lines.get(), phase.bytesRead.get(), phase.bytesWritten.get(),
+                        phase.perSecond(phase.files.get()), phase.perSecond(phase.lines.get())));
+            }
+            writer.write(String.format("%n  ],%n  \"rejected\": {"));
+            RejectReason[] reasons = RejectReason.values();
+            for (int i = 0; i < reasons.length; i++) {
+                writer.write(String.format(Locale.ROOT, "%s%n    \"%s\": %d", i > 0 ? "," : "", reasons[i].name(),
+                        rejected(reasons[i])));
+            }
+            writer.write(String.format("%n  }%n}%n"));
+            writer.flush();
+        });
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format, as gauges of the last run.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writePrometheus(String file) throws IOException {
+        finish();
+        List<Phase> snapshot = phases();
+        AtomicFiles.write(Paths.get(file), out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gauge(writer, "run_start_time_seconds", "Start time of the run, in seconds since the epoch.");
+            writer.write(String.format(Locale.ROOT, "%srun_start_time_seconds %.3f\n", PREFIX, startMillis / 1000.0));
+            gauge(writer, "run_seconds", "Wall time of the run.");
+            writer.write(String.format(Locale.ROOT, "%srun_seconds %.6f\n", PREFIX, seconds(endNanos - startNanos)));
+
+            phaseGauge(writer, snapshot, "phase_seconds", "Wall time spent in each phase.", Phase::getSeconds);
+            phaseGauge(writer, snapshot, "phase_files", "Files processed by each phase.", phase -> phase.files.get());
+            phaseGauge(writer, snapshot, "phase_lines", "Lines processed by each phase.", phase -> phase.lines.get());
+            phaseGauge(writer, snapshot, "phase_bytes_read", "Bytes read by each phase.", phase -> phase.bytesRead.get());
+            phaseGauge(writer, snapshot, "phase_bytes_written", "Bytes written by each phase.",
+                    phase -> phase.bytesWritten.get());
+            phaseGauge(writer, snapshot, "phase_files_per_second", "Files processed per second by each phase.",
+                    phase -> phase.perSecond(phase.files.get()));
+            phaseGauge(writer, snapshot, "phase_lines_per_second", "Lines processed per second by each phase.",
+                    phase -> phase.perSecond(phase.lines.get()));
+
+            gauge(writer, "rejected_records", "Records rejected in the run, by reason.");
+            for (RejectReason reason : RejectReason.values()) {
+                writer.write(String.format(Locale.ROOT, "%srejected_records{reason=\"%s\"} %d\n", PREFIX,
+                        reason.name(), rejected(reason)));
+            }
+            writer.flush();
+        });
+    }
+
+    private synchronized List<Phase> phases() {
+        return new ArrayList<>(phases.values());
+    }
+
+    private synchronized long rejected(RejectReason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    private interface PhaseValue {
+        double of(Phase phase);
+    }
+
+    private static void gauge(Writer writer, String name, String help) throws IOException {
+        writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + PREFIX + name + " gauge\n");
+    }
+
+    private static void phaseGauge(Writer writer, List<Phase> phases, String name, String help, PhaseValue value)
+            throws IOException {
+        gauge(writer, name, help);
+        for (Phase phase : phases) {
+            writer.write(String.format(Locale.ROOT, "%s%s{phase=\"%s\"} %s\n", PREFIX, name, phase.name,
+                    number(value.of(phase))));
+        }
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * The time and the counters of one phase.
+     */
+    public static class Phase {
+        private final String name;
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Starts timing the phase until the returned timer is stopped, which callers do in a
+         * <code>finally</code> block.
+         *
+         * @return The timer.
+         */
+        public Timer start() {
+            long start = System.nanoTime();
+            return () -> {
+                nanos.addAndGet(System.nanoTime() - start);
+                calls.incrementAndGet();
+            };
+        }
+
+        public void addFiles(long count) {
+            files.addAndGet(count);
+        }
+
+        public void addLines(long count) {
+            lines.addAndGet(count);
+        }
+
+        public void addBytesRead(long count) {
+            bytesRead.addAndGet(count);
+        }
+
+        public void addBytesWritten(long count) {
+            bytesWritten.addAndGet(count);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the wall time of the phase.
+         *
+         * @return The time, in seconds.
+         */
+        public double getSeconds() {
+            return seconds(nanos.get());
+        }
+
+        private double perSecond(long count) {
+            long elapsed = nanos.get();
+            return elapsed > 0 ? count / seconds(elapsed) : 0;
+        }
+    }
+
+    /**
+     * Times one run of a phase.
+     */
+    public interface Timer {
+        /**
+         * Stops timing and adds the time elapsed since the timer was started to its phase.
+         */
+        void stop();
+    }
+}
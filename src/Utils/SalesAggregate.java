@@ -0,0 +1,454 @@
+package Utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Combined result of reading the sales files once.
+ * <p>
+ * The aggregate holds the revenue of each seller, the quantity sold of each product and the quantity
+ * of each product sold by each seller, so both the sales report and the products report can be
+ * rendered from a single pass over the sales directory.
+ * </p>
+ * <p>
+ * Counters are kept in primitive arrays so adding a sale does not box, and revenues are exact amounts
+ * of centavos (see {@link Money}). Sellers are encoded as ordinals by an {@link IdDictionary}.
+ * Products in the <code>P%03d</code> scheme are keyed by their number (see {@link ProductKeys}); other
+ * product IDs get a key above {@link ProductKeys#DENSE_LIMIT} from a dictionary. The counters of a
+ * product are found through a {@link LongLongHashMap} from its key, so an aggregate only holds the
+ * products it was given, however high their numbers. The seller and product pairs are counted in a
+ * {@link LongLongHashMap} too.
+ * </p>
+ * <p>
+ * Each seller and product also counts the partial aggregates merged into it, so a partial aggregate
+ * can be subtracted again: sellers and products left without any source are no longer reported.
+ * </p>
+ */
+public class SalesAggregate {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int FORMAT_VERSION = 2;
+
+    private final IdDictionary sellerIds = new IdDictionary();
+    private long[] sellerRevenue = new long[INITIAL_CAPACITY];
+    // Number of partial aggregates each seller and product comes from, 0 when absent
+    private int[] sellerSources = new int[INITIAL_CAPACITY];
+    private final IdDictionary otherProductIds = new IdDictionary();
+    // Index of the counters of each product key, in order of first appearance
+    private final LongLongHashMap productIndexes = new LongLongHashMap();
+    private int[] productKeys = new int[INITIAL_CAPACITY];
+    private long[] productQuantities = new long[INITIAL_CAPACITY];
+    private int[] productSources = new int[INITIAL_CAPACITY];
+    private int products;
+    private final LongLongHashMap sellerProductQuantities = new LongLongHashMap();
+
+    /**
+     * Receives the revenue of each seller.
+     */
+    public interface SellerConsumer {
+        void accept(String documentNumber, long revenue);
+    }
+
+    /**
+     * Receives the quantity sold of each product.
+     */
+    public interface ProductConsumer {
+        void accept(String productId, long quantity);
+    }
+
+    /**
+     * Receives the quantity of a product sold by a seller.
+     */
+    public interface SaleConsumer {
+        void accept(String documentNumber, String productId, long quantity);
+    }
+
+    /**
+     * Registers a seller so it appears in the aggregate even if none of its sales are valid.
+     *
+     * @param documentNumber The seller's document number.
+     */
+    public void addSeller(String documentNumber) {
+        sellerOrdinal(documentNumber);
+    }
+
+    /**
+     * Gets the ordinal of a seller, registering the seller if needed.
+     *
+     * @param documentNumber The seller's document number.
+     * @return The ordinal of the seller in this aggregate.
+     */
+    public int sellerOrdinal(String documentNumber) {
+        int ordinal = ordinalOf(documentNumber);
+        if (sellerSources[ordinal] == 0) {
+            sellerSources[ordinal] = 1;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Gets the key of a product ID.
+     *
+     * @param productId The product ID.
+     * @return The key of the product in this aggregate.
+     */
+    public int productKey(String productId) {
+        int key = ProductKeys.denseKey(productId);
+        return key != ProductKeys.NO_KEY ? key : ProductKeys.DENSE_LIMIT + otherProductIds.add(productId);
+    }
+
+    /**
+     * Gets the key of a product ID held in a buffer, without creating a <code>String</code> for IDs
+     * in the <code>P%03d</code> scheme or already seen.
+     *
+     * @param buffer The buffer.
+     * @param start  The start of the ID, inclusive.
+     * @param end    The end of the ID, exclusive.
+     * @return The key of the product in this aggregate.
+     */
+    public int productKey(ByteBuffer buffer, int start, int end) {
+        int key = ProductKeys.denseKey(buffer, start, end);
+        return key != ProductKeys.NO_KEY
+                ? key
+                : ProductKeys.DENSE_LIMIT + otherProductIds.add(buffer, start, end);
+    }
+
+    /**
+     * Gets the product ID of a product key.
+     *
+     * @param productKey The key of the product in this aggregate.
+     * @return The product ID.
+     */
+    public String productId(int productKey) {
+        return productKey < ProductKeys.DENSE_LIMIT
+                ? ProductKeys.productId(productKey)
+                : otherProductIds.idOf(productKey - ProductKeys.DENSE_LIMIT);
+    }
+
+    /**
+     * Adds a sale line to the aggregate.
+     *
+     * @param documentNumber The document number of the seller who made the sale.
+     * @param productId      The ID of the product sold.
+     * @param quantity       The quantity sold.
+     * @param price          The price per unit of the product, in centavos.
+     */
+    public void addSale(String documentNumber, String productId, int quantity, long price) {
+        addSale(sellerOrdinal(documentNumber), productKey(productId), quantity, price);
+    }
+
+    /**
+     * Adds a sale line to the aggregate using encoded IDs.
+     *
+     * @param seller     The ordinal of the seller, from {@link #sellerOrdinal(String)}.
+     * @param productKey The key of the product, from {@link #productKey(String)}.
+     * @param quantity   The quantity sold.
+     * @param price      The price per unit of the product, in centavos.
+     */
+    public void addSale(int seller, int productKey, int quantity, long price) {
+        sellerRevenue[seller] = Math.addExact(sellerRevenue[seller], Money.times(price, quantity));
+        addProductQuantity(productKey, quantity, 0);
+        sellerProductQuantities.add(pairKey(seller, productKey), quantity);
+    }
+
+    /**
+     * Adds all the values of another aggregate to this one.
+     *
+     * @param other The aggregate to merge into this one.
+     */
+    public void merge(SalesAggregate other) {
+        combine(other, 1);
+    }
+
+    /**
+     * Removes the values of an aggregate that was merged into this one before.
+     *
+     * @param other The aggregate to subtract from this one.
+     */
+    public void subtract(SalesAggregate other) {
+        combine(other, -1);
+    }
+
+    /**
+     * Adds the values of another aggregate multiplied by a sign, remapping its ordinals and keys to the
+     * ones of this aggregate.
+     */
+    private void combine(SalesAggregate other, int sign) {
+        int[] sellers = new int[other.sellerIds.size()];
+        for (int i = 0; i < sellers.length; i++) {
+            sellers[i] = ordinalOf(other.sellerIds.idOf(i));
+            sellerRevenue[sellers[i]] = Math.addExact(sellerRevenue[sellers[i]], sign * other.sellerRevenue[i]);
+            sellerSources[sellers[i]] += sign * other.sellerSources[i];
+        }
+        int[] otherProducts = new int[other.otherProductIds.size()];
+        for (int i = 0; i < otherProducts.length; i++) {
+            otherProducts[i] = productKey(other.otherProductIds.idOf(i));
+        }
+        for (int i = 0; i < other.products; i++) {
+            if (other.productSources[i] != 0) {
+                int productKey = other.productKeys[i];
+                if (productKey >= ProductKeys.DENSE_LIMIT) {
+                    productKey = otherProducts[productKey - ProductKeys.DENSE_LIMIT];
+                }
+                addProductQuantity(productKey, sign * other.productQuantities[i], sign * other.productSources[i]);
+            }
+        }
+        other.sellerProductQuantities.forEach((pair, quantity) -> {
+            int productKey = productKeyOf(pair);
+            if (productKey >= ProductKeys.DENSE_LIMIT) {
+                productKey = otherProducts[productKey - ProductKeys.DENSE_LIMIT];
+            }
+            long key = pairKey(sellers[sellerOf(pair)], productKey);
+            sellerProductQuantities.add(key, sign * quantity);
+            if (sign < 0 && sellerProductQuantities.get(key, 0) == 0) {
+                sellerProductQuantities.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Passes the revenue of every seller to a consumer, in order of first appearance.
+     *
+     * @param consumer The consumer of the revenues.
+     */
+    public void forEachSeller(SellerConsumer consumer) {
+        for (int i = 0; i < sellerIds.size(); i++) {
+            if (sellerSources[i] > 0) {
+                consumer.accept(sellerIds.idOf(i), sellerRevenue[i]);
+            }
+        }
+    }
+
+    /**
+     * Passes the quantity of every product sold to a consumer: products in the <code>P%03d</code>
+     * scheme by number, then the other products in order of first appearance.
+     *
+     * @param consumer The consumer of the quantities.
+     */
+    public void forEachProduct(ProductConsumer consumer) {
+        // Dense keys are the product numbers and the other keys follow in order of first appearance, so
+        // sorting by key gives that order
+        long[] order = new long[products];
+        int present = 0;
+        for (int i = 0; i < products; i++) {
+            if (productSources[i] > 0) {
+                order[present++] = ((long) productKeys[i] << 32) | i;
+            }
+        }
+        Arrays.sort(order, 0, present);
+        for (int i = 0; i < present; i++) {
+            int index = (int) order[i];
+            consumer.accept(productId(productKeys[index]), productQuantities[index]);
+        }
+    }
+
+    /**
+     * Passes the quantity of every product sold by every seller to a consumer, in no particular order.
+     *
+     * @param consumer The consumer of the quantities.
+     */
+    public void forEachSale(SaleConsumer consumer) {
+        sellerProductQuantities.forEach((pair, quantity) -> {
+            int seller = sellerOf(pair);
+            if (sellerSources[seller] > 0) {
+                consumer.accept(sellerIds.idOf(seller), productId(productKeyOf(pair)), quantity);
+            }
+        });
+    }
+
+    /**
+     * Gets the total revenue of each seller.
+     *
+     * @return A map where the key is the seller's document number and the value is the total sales amount in centavos.
+     */
+    public Map<String, Long> getSellerRevenue() {
+        Map<String, Long> revenue = new HashMap<>();
+        forEachSeller(revenue::put);
+        return revenue;
+    }
+
+    /**
+     * Gets the total quantity sold of each product.
+     *
+     * @return A map where the key is the product ID and the value is the quantity sold.
+     */
+    public Map<String, Long> getProductQuantities() {
+        Map<String, Long> quantities = new HashMap<>();
+        forEachProduct(quantities::put);
+        return quantities;
+    }
+
+    /**
+     * Gets the quantity of each product sold by a seller.
+     *
+     * @param documentNumber The seller's document number.
+     * @return A map where the key is the product ID and the value is the quantity sold by the seller.
+     */
+    public Map<String, Long> getProductsSoldBy(String documentNumber) {
+        Map<String, Long> products = new HashMap<>();
+        int seller = sellerIds.get(documentNumber);
+        if (seller != IdDictionary.ABSENT) {
+            sellerProductQuantities.forEach((pair, quantity) -> {
+                if (sellerOf(pair) == seller) {
+                    products.put(productId(productKeyOf(pair)), quantity);
+                }
+            });
+        }
+        return products;
+    }
+
+    /**
+     * Gets the quantity of a product sold by a seller.
+     *
+     * @param documentNumber The seller's document number.
+     * @param productId      The product ID.
+     * @return The quantity sold, or 0 if the seller did not sell the product.
+     */
+    public long getQuantity(String documentNumber, String productId) {
+        int seller = sellerIds.get(documentNumber);
+        if (seller == IdDictionary.ABSENT) {
+            return 0;
+        }
+        int productKey = ProductKeys.denseKey(productId);
+        if (productKey == ProductKeys.NO_KEY) {
+            int ordinal = otherProductIds.get(productId);
+            if (ordinal == IdDictionary.ABSENT) {
+                return 0;
+            }
+            productKey = ProductKeys.DENSE_LIMIT + ordinal;
+        }
+        return sellerProductQuantities.get(pairKey(seller, productKey), 0);
+    }
+
+    /**
+     * Writes the aggregate in a binary form that {@link #readFrom(DataInput)} reads back.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the aggregate cannot be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(sellerIds.size());
+        for (int i = 0; i < sellerIds.size(); i++) {
+            out.writeUTF(sellerIds.idOf(i));
+            out.writeLong(sellerRevenue[i]);
+            out.writeInt(sellerSources[i]);
+        }
+        // The dictionary is written whole so reading it back restores the keys of the other products
+        out.writeInt(otherProductIds.size());
+        for (int i = 0; i < otherProductIds.size(); i++) {
+            out.writeUTF(otherProductIds.idOf(i));
+        }
+        int present = 0;
+        for (int i = 0; i < products; i++) {
+            if (productSources[i] != 0) {
+                present++;
+            }
+        }
+        out.writeInt(present);
+        for (int i = 0; i < products; i++) {
+            if (productSources[i] != 0) {
+                out.writeInt(productKeys[i]);
+                out.writeLong(productQuantities[i]);
+                out.writeInt(productSources[i]);
+            }
+        }
+        // The pairs are written with the ordinals and keys of this aggregate, which reading restores
+        long[] pairs = new long[sellerProductQuantities.size() * 2];
+        int[] index = {0};
+        sellerProductQuantities.forEach((pair, quantity) -> {
+            pairs[index[0]++] = pair;
+            pairs[index[0]++] = quantity;
+        });
+        out.writeInt(sellerProductQuantities.size());
+        for (long value : pairs) {
+            out.writeLong(value);
+        }
+    }
+
+    /**
+     * Reads an aggregate written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The input to read from.
+     * @return The aggregate.
+     * @throws IOException If the aggregate cannot be read or was written in another format.
+     */
+    public static SalesAggregate readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported sales aggregate format: " + version);
+        }
+        SalesAggregate aggregate = new SalesAggregate();
+        int sellers = in.readInt();
+        for (int i = 0; i < sellers; i++) {
+            int ordinal = aggregate.ordinalOf(in.readUTF());
+            aggregate.sellerRevenue[ordinal] = in.readLong();
+            aggregate.sellerSources[ordinal] = in.readInt();
+        }
+        int others = in.readInt();
+        for (int i = 0; i < others; i++) {
+            aggregate.otherProductIds.add(in.readUTF());
+        }
+        int products = in.readInt();
+        for (int i = 0; i < products; i++) {
+            int productKey = in.readInt();
+            long quantity = in.readLong();
+            int sources = in.readInt();
+            if (productKey < 0 || productKey >= ProductKeys.DENSE_LIMIT + others || sources == 0) {
+                throw new IOException("Invalid product key in sales aggregate: " + productKey);
+            }
+            aggregate.addProductQuantity(productKey, quantity, sources);
+        }
+        int pairs = in.readInt();
+        for (int i = 0; i < pairs; i++) {
+            aggregate.sellerProductQuantities.add(in.readLong(), in.readLong());
+        }
+        return aggregate;
+    }
+
+    private int ordinalOf(String documentNumber) {
+        int ordinal = sellerIds.add(documentNumber);
+        if (ordinal == sellerRevenue.length) {
+            sellerRevenue = Arrays.copyOf(sellerRevenue, ordinal * 2);
+            sellerSources = Arrays.copyOf(sellerSources, ordinal * 2);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Adds a quantity and a number of sources to a product. With no sources the quantity comes from a
+     * sale of this aggregate, which counts as a source once.
+     */
+    private void addProductQuantity(int productKey, long quantity, int sources) {
+        int index = (int) productIndexes.get(productKey, -1);
+        if (index < 0) {
+            index = products++;
+            if (index == productKeys.length) {
+                productKeys = Arrays.copyOf(productKeys, index * 2);
+                productQuantities = Arrays.copyOf(productQuantities, index * 2);
+                productSources = Arrays.copyOf(productSources, index * 2);
+            }
+            productKeys[index] = productKey;
+            productIndexes.add(productKey, index);
+        }
+        productQuantities[index] += quantity;
+        productSources[index] = sources != 0 ? productSources[index] + sources : Math.max(productSources[index], 1);
+    }
+
+    private static long pairKey(int seller, int productKey) {
+        return ((long) seller << 32) | productKey;
+    }
+
+    private static int sellerOf(long pairKey) {
+        return (int) (pairKey >>> 32);
+    }
+
+    private static int productKeyOf(long pairKey) {
+        return (int) pairKey;
+    }
+}
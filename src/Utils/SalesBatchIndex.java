@@ -0,0 +1,138 @@
+package Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offset index of the seller sections of a consolidated sales file (see {@link SalesInput}).
+ * <p>
+ * The index is kept next to the consolidated file, as <code>batch_&lt;name&gt;.txt.idx</code>, with a
+ * first line <code>#&lt;size&gt;;&lt;lastModified&gt;</code> of the file it was built from and then one line
+ * <code>&lt;documentNumber&gt;;&lt;offset&gt;;&lt;length&gt;</code> per section, in file order. With the index
+ * a reader can fetch the sales of one seller with a single positioned read instead of scanning the whole file,
+ * and tell from the first line whether the file changed since. The ingestion itself reads consolidated files
+ * whole and does not use the index. Only plain, uncompressed consolidated files can be indexed.
+ * </p>
+ */
+public class SalesBatchIndex {
+
+    /** Extension of the index files, added to the name of the consolidated file. */
+    public static final String INDEX_SUFFIX = ".idx";
+    private static final String STAMP_PREFIX = "#";
+    private static final int CHUNK_SIZE = 1 << 20;
+    // Header lines are only kept up to this length to read their document number
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    private SalesBatchIndex() {
+    }
+
+    /**
+     * Scans a consolidated file for its seller sections and saves the index next to it.
+     *
+     * @param batchFile The consolidated file.
+     * @throws IOException If the consolidated file cannot be read or the index cannot be written.
+     */
+    public static void build(Path batchFile) throws IOException {
+        String stamp = stamp(batchFile);
+        Map<String, List<long[]>> sections = scan(batchFile);
+        AtomicFiles.write(indexFile(batchFile), out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(stamp);
+            writer.write('\n');
+            for (Map.Entry<String, List<long[]>> seller : sections.entrySet()) {
+                for (long[] section : seller.getValue()) {
+                    writer.write(seller.getKey() + ";" + section[0] + ";" + section[1] + "\n");
+                }
+            }
+            writer.flush();
+        });
+    }
+
+    /**
+     * Gets the path of the index of a consolidated file.
+     *
+     * @param batchFile The consolidated file.
+     * @return The path of the index.
+     */
+    public static Path indexFile(Path batchFile) {
+        return batchFile.resolveSibling(batchFile.getFileName() + INDEX_SUFFIX);
+    }
+
+    private static String stamp(Path batchFile) throws IOException {
+        return STAMP_PREFIX + Files.size(batchFile) + ";" + Files.getLastModifiedTime(batchFile).toMillis();
+    }
+
+    /**
+     * Finds the header lines of a consolidated file. Each section runs from its header line to the next
+     * header line or the end of the file; lines before the first header belong to no seller.
+     */
+    private static Map<String, List<long[]>> scan(Path batchFile) throws IOException {
+        List<String> documentNumbers = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        byte[] line = new byte[MAX_HEADER_LENGTH];
+        ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+        int lineLength = 0;
+        long lineStart = 0;
+        long position = 0;
+        try (InputStream in = Files.newInputStream(batchFile)) {
+            int read;
+            while ((read = in.read(chunk)) >= 0) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte b = chunk[i];
+                    if (b == '\n' || b == '\r') {
+                        addHeader(lineBuffer, lineLength, lineStart, documentNumbers, offsets);
+                        lineStart = position + 1;
+                        lineLength = 0;
+                    } else if (lineLength < line.length) {
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+        }
+        addHeader(lineBuffer, lineLength, lineStart, documentNumbers, offsets);
+
+        Map<String, List<long[]>> sections = new LinkedHashMap<>();
+        for (int i = 0; i < offsets.size(); i++) {
+            long end = i + 1 < offsets.size() ? offsets.get(i + 1) : position;
+            addSection(sections, documentNumbers.get(i), offsets.get(i), end - offsets.get(i));
+        }
+        return sections;
+    }
+
+    /**
+     * Records a line as the start of a section if it is a header line.
+     */
+    private static void addHeader(ByteBuffer line, int length, long offset, List<String> documentNumbers,
+                                  List<Long> offsets) {
+        if (length == 0 || !ByteLineParser.isHeader(line, 0, length)) {
+            return;
+        }
+        int start = 0;
+        while (line.get(start) != ';') {
+            start++;
+        }
+        start++;
+        int end = start;
+        while (end < length && line.get(end) != ';') {
+            end++;
+        }
+        documentNumbers.add(ByteLineParser.text(line, start, end));
+        offsets.add(offset);
+    }
+
+    private static void addSection(Map<String, List<long[]>> sections, String documentNumber, long offset,
+                                   long length) {
+        sections.computeIfAbsent(documentNumber, key -> new ArrayList<>()).add(new long[]{offset, length});
+    }
+}
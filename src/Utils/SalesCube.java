@@ -0,0 +1,486 @@
+package Utils;
+
+import Entities.Seller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seller by product cube of the quantities sold, answering ad-hoc questions from memory.
+ * <p>
+ * The cube is built once from a {@link SalesAggregate}. Sellers and products are encoded as ordinals by
+ * {@link IdDictionary} instances, and each seller keeps the index of their document type
+ * (<code>CC</code>, <code>CE</code>, <code>TI</code>, ...) as found in the sellers file. When at least a third of
+ * the cells have sales, the quantities are held in one dense array, row by seller; otherwise only the cells with sales
+ * are held, once by seller and once by product, so both kinds of question read a contiguous run of cells.
+ * </p>
+ * <p>
+ * The revenue of a seller is the exact total of the aggregate. The revenue of a cell, and the product totals, are the
+ * quantity times the catalog price; products missing from the catalog have no revenue.
+ * </p>
+ */
+public class SalesCube {
+
+    private static final int NO_TYPE = -1;
+    // Dense cells take 8 bytes each, sparse cells 24 (a product or seller ordinal and a quantity, held twice)
+    private static final int DENSE_FILL_DIVISOR = 3;
+    private static final long MAX_DENSE_CELLS = 1 << 25;
+
+    private final IdDictionary sellerIds = new IdDictionary();
+    private final IdDictionary productIds = new IdDictionary();
+    private final List<String> documentTypes = new ArrayList<>();
+    private long[] sellerRevenue;
+    private int[] sellerTypes;
+    private long[] prices;
+    private long[] productQuantities;
+    private int cellCount;
+    // Dense layout: quantity of seller s and product p at s * productCount + p
+    private long[] denseCells;
+    // Sparse layout: the cells of seller s are at sellerStart[s] until sellerStart[s + 1], and likewise by product
+    private int[] sellerStart;
+    private int[] sellerCellProducts;
+    private long[] sellerCellQuantities;
+    private int[] productStart;
+    private int[] productCellSellers;
+    private long[] productCellQuantities;
+
+    /**
+     * Receives the quantity of a product in one cell.
+     */
+    private interface CellConsumer {
+        void accept(int ordinal, long quantity);
+    }
+
+    /**
+     * Builds the cube of an aggregate.
+     *
+     * @param aggregate The aggregate built from the sales files.
+     * @param sellers   A map where the key is the seller's document number and the value is the Seller object.
+     * @param catalog   The product catalog used to price the cells.
+     * @return The cube.
+     */
+    public static SalesCube build(SalesAggregate aggregate, Map<String, Seller> sellers, ProductCatalog catalog) {
+        SalesCube cube = new SalesCube();
+        List<Long> revenues = new ArrayList<>();
+        aggregate.forEachSeller((documentNumber, revenue) -> {
+            cube.sellerIds.add(documentNumber);
+            revenues.add(revenue);
+        });
+        List<Long> quantities = new ArrayList<>();
+        aggregate.forEachProduct((productId, quantity) -> {
+            cube.productIds.add(productId);
+            quantities.add(quantity);
+        });
+
+        int sellerCount = cube.sellerIds.size();
+        int productCount = cube.productIds.size();
+        cube.sellerRevenue = new long[sellerCount];
+        cube.sellerTypes = new int[sellerCount];
+        for (int seller = 0; seller < sellerCount; seller++) {
+            cube.sellerRevenue[seller] = revenues.get(seller);
+            Seller info = sellers.get(cube.sellerIds.idOf(seller));
+            cube.sellerTypes[seller] = info != null ? cube.typeIndex(info.getDocumentType()) : NO_TYPE;
+        }
+        cube.prices = new long[productCount];
+        cube.productQuantities = new long[productCount];
+        for (int product = 0; product < productCount; product++) {
+            cube.prices[product] = catalog.getPrice(cube.productIds.idOf(product));
+            cube.productQuantities[product] = quantities.get(product);
+        }
+
+        // Count the cells with sales first, to choose the layout and size the sparse arrays
+        int[] sellerCells = new int[sellerCount];
+        int[] productCells = new int[productCount];
+        aggregate.forEachSale((documentNumber, productId, quantity) -> {
+            if (quantity != 0) {
+                sellerCells[cube.sellerIds.get(documentNumber)]++;
+                productCells[cube.productIds.get(productId)]++;
+                cube.cellCount++;
+            }
+        });
+        long totalCells = (long) sellerCount * productCount;
+        if (totalCells <= MAX_DENSE_CELLS && (long) cube.cellCount * DENSE_FILL_DIVISOR >= totalCells) {
+            cube.fillDense(aggregate, productCount, totalCells);
+        } else {
+            cube.fillSparse(aggregate, sellerCells, productCells);
+        }
+        return cube;
+    }
+
+    private void fillDense(SalesAggregate aggregate, int productCount, long totalCells) {
+        denseCells = new long[(int) totalCells];
+        aggregate.forEachSale((documentNumber, productId, quantity) ->
+                denseCells[sellerIds.get(documentNumber) * productCount + productIds.get(productId)] = quantity);
+    }
+
+    private void fillSparse(SalesAggregate aggregate, int[] sellerCells, int[] productCells) {
+        sellerStart = offsets(sellerCells);
+        productStart = offsets(productCells);
+        sellerCellProducts = new int[cellCount];
+        sellerCellQuantities = new long[cellCount];
+        productCellSellers = new int[cellCount];
+        productCellQuantities = new long[cellCount];
+        // Reuse the counts as the next free position of each row
+        System.arraycopy(sellerStart, 0, sellerCells, 0, sellerCells.length);
+        System.arraycopy(productStart, 0, productCells, 0, productCells.length);
+        aggregate.forEachSale((documentNumber, productId, quantity) -> {
+            if (quantity != 0) {
+                int seller = sellerIds.get(documentNumber);
+                int product = productIds.get(productId);
+                int bySeller = sellerCells[seller]++;
+                sellerCellProducts[bySeller] = product;
+                sellerCellQuantities[bySeller] = quantity;
+                int byProduct = productCells[product]++;
+                productCellSellers[byProduct] = seller;
+                productCellQuantities[byProduct] = quantity;
+            }
+        });
+    }
+
+    private static int[] offsets(int[] counts) {
+        int[] start = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            start[i + 1] = start[i] + counts[i];
+        }
+        return start;
+    }
+
+    private int typeIndex(String documentType) {
+        int index = documentTypes.indexOf(documentType);
+        if (index < 0) {
+            documentTypes.add(documentType);
+            index = documentTypes.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether a seller is in the cube, even without any sales.
+     *
+     * @param documentNumber The seller's document number.
+     * @return True if the seller's sales files were read.
+     */
+    public boolean containsSeller(String documentNumber) {
+        return sellerIds.get(documentNumber) != IdDictionary.ABSENT;
+    }
+
+    /**
+     * Checks whether a product was sold.
+     *
+     * @param productId The product ID.
+     * @return True if the product appears in the sales.
+     */
+    public boolean containsProduct(String productId) {
+        return productIds.get(productId) != IdDictionary.ABSENT;
+    }
+
+    /**
+     * Gets the total revenue of a seller.
+     *
+     * @param documentNumber The seller's document number.
+     * @return The revenue in centavos, or 0 if the seller has no sales.
+     */
+    public long getSellerRevenue(String documentNumber) {
+        int seller = sellerIds.get(documentNumber);
+        return seller != IdDictionary.ABSENT ? sellerRevenue[seller] : 0;
+    }
+
+    /**
+     * Gets the total quantity sold of a product.
+     *
+     * @param productId The product ID.
+     * @return The quantity sold, or 0 if the product was not sold.
+     */
+    public long getProductQuantity(String productId) {
+        int product = productIds.get(productId);
+        return product != IdDictionary.ABSENT ? productQuantities[product] : 0;
+    }
+
+    /**
+     * Gets the total revenue of a product.
+     *
+     * @param productId The product ID.
+     * @return The revenue in centavos, or 0 if the product was not sold or is not in the catalog.
+     */
+    public long getProductRevenue(String productId) {
+        int product = productIds.get(productId);
+        return product != IdDictionary.ABSENT ? Money.times(prices[product], productQuantities[product]) : 0;
+    }
+
+    /**
+     * Gets the quantity of a product sold by a seller.
+     *
+     * @param documentNumber The seller's document number.
+     * @param productId      The product ID.
+     * @return The quantity sold, or 0 if the seller did not sell the product.
+     */
+    public long getQuantity(String documentNumber, String productId) {
+        int seller = sellerIds.get(documentNumber);
+        int product = productIds.get(productId);
+        if (seller == IdDictionary.ABSENT || product == IdDictionary.ABSENT) {
+            return 0;
+        }
+        if (denseCells != null) {
+            return denseCells[seller * productIds.size() + product];
+        }
+        // Search the shorter of the seller's row and the product's column
+        if (sellerStart[seller + 1] - sellerStart[seller] <= productStart[product + 1] - productStart[product]) {
+            for (int i = sellerStart[seller]; i < sellerStart[seller + 1]; i++) {
+                if (sellerCellProducts[i] == product) {
+                    return sellerCellQuantities[i];
+                }
+            }
+        } else {
+            for (int i = productStart[product]; i < productStart[product + 1]; i++) {
+                if (productCellSellers[i] == seller) {
+                    return productCellQuantities[i];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the revenue of a product sold by a seller.
+     *
+     * @param documentNumber The seller's document number.
+     * @param productId      The product ID.
+     * @return The revenue in centavos, or 0 if the seller did not sell the product.
+     */
+    public long getRevenue(String documentNumber, String productId) {
+        int product = productIds.get(productId);
+        return product != IdDictionary.ABSENT ? Money.times(prices[product], getQuantity(documentNumber, productId)) : 0;
+    }
+
+    /**
+     * Gets the products a seller sold the most of, by revenue.
+     *
+     * @param documentNumber The seller's document number.
+     * @param limit          The number of products to return, or 0 to return them all.
+     * @return The products, best first, with the quantity and revenue of the seller.
+     */
+    public List<Entry> topProducts(String documentNumber, int limit) {
+        TopN<Entry> ranking = new TopN<>(limit, Entry.RANKING);
+        int seller = sellerIds.get(documentNumber);
+        if (seller != IdDictionary.ABSENT) {
+            forEachProductOf(seller, (product, quantity) -> ranking.offer(productEntry(product, quantity)));
+        }
+        return ranking.toList();
+    }
+
+    /**
+     * Gets the sellers who sold the most of a product, by revenue.
+     *
+     * @param productId The product ID.
+     * @param limit     The number of sellers to return, or 0 to return them all.
+     * @return The sellers, best first, with the quantity and revenue of the product.
+     */
+    public List<Entry> topSellers(String productId, int limit) {
+        TopN<Entry> ranking = new TopN<>(limit, Entry.RANKING);
+        int product = productIds.get(productId);
+        if (product != IdDictionary.ABSENT) {
+            long price = prices[product];
+            forEachSellerOf(product, (seller, quantity) ->
+                    ranking.offer(new Entry(sellerIds.idOf(seller), quantity, Money.times(price, quantity))));
+        }
+        return ranking.toList();
+    }
+
+    /**
+     * Gets the document types of the sellers, in order of first appearance.
+     *
+     * @return A new list with the document types.
+     */
+    public List<String> getDocumentTypes() {
+        return new ArrayList<>(documentTypes);
+    }
+
+    /**
+     * Gets the total revenue of the sellers of each document type. Sellers missing from the sellers file
+     * have no document type and are left out.
+     *
+     * @return A map where the key is the document type and the value is the revenue in centavos.
+     */
+    public Map<String, Long> getRevenueByDocumentType() {
+        long[] revenue = new long[documentTypes.size()];
+        for (int seller = 0; seller < sellerTypes.length; seller++) {
+            if (sellerTypes[seller] != NO_TYPE) {
+                revenue[sellerTypes[seller]] += sellerRevenue[seller];
+            }
+        }
+        Map<String, Long> byType = new LinkedHashMap<>();
+        for (int type = 0; type < revenue.length; type++) {
+            byType.put(documentTypes.get(type), revenue[type]);
+        }
+        return byType;
+    }
+
+    /**
+     * Gets the sellers of a document type with the highest total revenue.
+     *
+     * @param documentType The document type, such as <code>CC</code>.
+     * @param limit        The number of sellers to return, or 0 to return them all.
+     * @return The sellers, best first, with their total revenue; the quantity is the number of units they sold.
+     */
+    public List<Entry> topSellersOfType(String documentType, int limit) {
+        TopN<Entry> ranking = new TopN<>(limit, Entry.RANKING);
+        int type = documentTypes.indexOf(documentType);
+        if (type != NO_TYPE) {
+            for (int seller = 0; seller < sellerTypes.length; seller++) {
+                if (sellerTypes[seller] == type) {
+                    long[] units = new long[1];
+                    forEachProductOf(seller, (product, quantity) -> units[0] += quantity);
+                    ranking.offer(new Entry(sellerIds.idOf(seller), units[0], sellerRevenue[seller]));
+                }
+            }
+        }
+        return ranking.toList();
+    }
+
+    /**
+     * Gets the products the sellers of a document type sold the most of, by revenue.
+     *
+     * @param documentType The document type, such as <code>CC</code>.
+     * @param limit        The number of products to return, or 0 to return them all.
+     * @return The products, best first, with the quantity and revenue of the sellers of the type.
+     */
+    public List<Entry> topProductsOfType(String documentType, int limit) {
+        TopN<Entry> ranking = new TopN<>(limit, Entry.RANKING);
+        int type = documentTypes.indexOf(documentType);
+        if (type != NO_TYPE) {
+            long[] quantities = new long[productIds.size()];
+            boolean[] sold = new boolean[productIds.size()];
+            for (int seller = 0; seller < sellerTypes.length; seller++) {
+                if (sellerTypes[seller] == type) {
+                    forEachProductOf(seller, (product, quantity) -> {
+                        quantities[product] += quantity;
+                        sold[product] = true;
+                    });
+                }
+            }
+            for (int product = 0; product < quantities.length; product++) {
+                if (sold[product]) {
+                    ranking.offer(productEntry(product, quantities[product]));
+                }
+            }
+        }
+        return ranking.toList();
+    }
+
+    private Entry productEntry(int product, long quantity) {
+        return new Entry(productIds.idOf(product), quantity, Money.times(prices[product], quantity));
+    }
+
+    private void forEachProductOf(int seller, CellConsumer consumer) {
+        if (denseCells != null) {
+            int productCount = productIds.size();
+            int row = seller * productCount;
+            for (int product = 0; product < productCount; product++) {
+                if (denseCells[row + product] != 0) {
+                    consumer.accept(product, denseCells[row + product]);
+                }
+            }
+            return;
+        }
+        for (int i = sellerStart[seller]; i < sellerStart[seller + 1]; i++) {
+            consumer.accept(sellerCellProducts[i], sellerCellQuantities[i]);
+        }
+    }
+
+    private void forEachSellerOf(int product, CellConsumer consumer) {
+        if (denseCells != null) {
+            int productCount = productIds.size();
+            for (int seller = 0, cell = product; seller < sellerIds.size(); seller++, cell += productCount) {
+                if (denseCells[cell] != 0) {
+                    consumer.accept(seller, denseCells[cell]);
+                }
+            }
+            return;
+        }
+        for (int i = productStart[product]; i < productStart[product + 1]; i++) {
+            consumer.accept(productCellSellers[i], productCellQuantities[i]);
+        }
+    }
+
+    public int getSellerCount() {
+        return sellerIds.size();
+    }
+
+    public int getProductCount() {
+        return productIds.size();
+    }
+
+    /**
+     * Gets the number of seller and product pairs with sales.
+     *
+     * @return The number of cells with a quantity other than 0.
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Tells whether the quantities are held in a dense array.
+     *
+     * @return True for the dense layout, false for the sparse one.
+     */
+    public boolean isDense() {
+        return denseCells != null;
+    }
+
+    /**
+     * A seller or a product in the answer to a query, with a quantity and a revenue.
+     */
+    public static class Entry {
+
+        /**
+         * Ranking of the answers: highest revenue first, then highest quantity, then by ID.
+         */
+        public static final Comparator<Entry> RANKING = Comparator
+                .comparingLong(Entry::getRevenue).reversed()
+                .thenComparing(Comparator.comparingLong(Entry::getQuantity).reversed())
+                .thenComparing(Entry::getId);
+
+        private final String id;
+        private final long quantity;
+        private final long revenue;
+
+        /**
+         * Creates an entry.
+         *
+         * @param id       the seller's document number or the product ID
+         * @param quantity the quantity sold
+         * @param revenue  the revenue, in centavos
+         */
+        public Entry(String id, long quantity, long revenue) {
+            this.id = id;
+            this.quantity = quantity;
+            this.revenue = revenue;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Gets the revenue of the entry.
+         *
+         * @return the revenue, in centavos
+         */
+        public long getRevenue() {
+            return revenue;
+        }
+
+        @Override
+        public String toString() {
+            return id + ";" + quantity + ";" + Money.format(revenue);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads every sales file in a single pass and builds the combined {@link SalesAggregate}.
+ * <p>
+ * Each sales file starts with a header line <code>&lt;documentType&gt;;&lt;documentNumber&gt;</code>
+ * followed by lines in the format <code>productId;quantity;</code>. Negative quantities and malformed
+ * lines are sent to the {@link ErrorReporter} and left out of the aggregate. Sales files may be
+ * gzip-compressed, packed in zip archives or consolidated in files of many sellers (see {@link SalesInput}).
+ * </p>
+ * <p>
+ * Files can be read by several workers at once. Every file is read into its own partial aggregate and
+ * the partial results are merged in file name order, so the aggregate is the same whatever the number
+ * of workers. Workers report errors as they find them.
+ * </p>
+ */
+public class SalesIngestion {
+
+    private static final String SALES_FILE_PREFIX = "sales_";
+    private static final String SALES_FILE_SUFFIX = ".txt";
+    // Files read ahead of the one being consumed, per worker
+    private static final int IN_FLIGHT_PER_WORKER = 2;
+
+    /**
+     * Reads all the sales files in a folder on the calling thread.
+     *
+     * @param salesFolder The folder containing the sales files.
+     * @param catalog     The product catalog used to price the sales.
+     * @param errors      The reporter of the rejected lines.
+     * @return The aggregate of all the valid sales lines.
+     */
+    public static SalesAggregate ingest(String salesFolder, ProductCatalog catalog, ErrorReporter errors) {
+        return ingest(salesFolder, catalog, 1, errors);
+    }
+
+    /**
+     * Reads all the sales files in a folder using the given number of workers.
+     *
+     * @param salesFolder The folder containing the sales files.
+     * @param catalog     The product catalog used to price the sales.
+     * @param workers     The number of files read at the same time; 1 reads them on the calling thread.
+     * @param errors      The reporter of the rejected lines.
+     * @return The aggregate of all the valid sales lines.
+     */
+    public static SalesAggregate ingest(String salesFolder, ProductCatalog catalog, int workers, ErrorReporter errors) {
+        return ingest(salesFolder, catalog, workers, errors, new RunMetrics());
+    }
+
+    /**
+     * Reads all the sales files in a folder using the given number of workers, recording the time, the
+     * files, the lines and the bytes read in the {@link RunMetrics#INGEST_SALES} phase.
+     *
+     * @param salesFolder The folder containing the sales files.
+     * @param catalog     The product catalog used to price the sales.
+     * @param workers     The number of files read at the same time; 1 reads them on the calling thread.
+     * @param errors      The reporter of the rejected lines.
+     * @param metrics     The metrics of the run.
+     * @return The aggregate of all the valid sales lines.
+     */
+    public static SalesAggregate ingest(String salesFolder, ProductCatalog catalog, int workers, ErrorReporter errors,
+                                        RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.INGEST_SALES);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            SalesAggregate aggregate = new SalesAggregate();
+            File[] salesFiles = SalesInput.listInputFiles(salesFolder);
+
+            if (salesFiles == null) {
+                errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+                return aggregate;
+            }
+            readSalesFiles(salesFiles, catalog, workers, errors, phase, (salesFile, partial) -> aggregate.merge(partial));
+            return aggregate;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Receives the partial aggregate of each sales file.
+     */
+    interface PartialConsumer {
+        void accept(File salesFile, SalesAggregate partial);
+    }
+
+    /**
+     * Reads sales files into one partial aggregate each and passes them to a consumer on the calling
+     * thread, in the order of the files.
+     *
+     * @param salesFiles The sales files to read.
+     * @param catalog    The product catalog used to price the sales.
+     * @param workers    The number of files read at the same time; 1 reads them on the calling thread.
+     * @param errors     The reporter of the rejected lines.
+     * @param phase      The phase counting the files, lines and bytes read.
+     * @param consumer   The consumer of the partial aggregates.
+     */
+    static void readSalesFiles(File[] salesFiles, ProductCatalog catalog, int workers, ErrorReporter errors,
+                               RunMetrics.Phase phase, PartialConsumer consumer) {
+        readInOrder(salesFiles, workers, salesFile -> readSalesFile(salesFile, catalog, errors, phase), consumer::accept);
+    }
+
+    /**
+     * Reads one file into a result.
+     *
+     * @param <T> The type of the result.
+     */
+    interface FileReader<T> {
+        T read(File file);
+    }
+
+    /**
+     * Receives the result of each file.
+     *
+     * @param <T> The type of the result.
+     */
+    interface ResultConsumer<T> {
+        void accept(File file, T result);
+    }
+
+    /**
+     * Reads files into one result each and passes them to a consumer on the calling thread, in the order
+     * of the files. With several workers the files are read on a fork-join pool, one task per file, and
+     * each result is consumed while the next files are still being read. At most twice as many files as
+     * workers are submitted ahead of the one consumed, and the next file is submitted as each result is
+     * consumed, so the results waiting in memory do not grow with the number of files.
+     *
+     * @param files    The files to read.
+     * @param workers  The number of files read at the same time; 1 reads them on the calling thread.
+     * @param reader   The reader of one file.
+     * @param consumer The consumer of the results.
+     * @param <T>      The type of the results.
+     */
+    static <T> void readInOrder(File[] files, int workers, FileReader<T> reader, ResultConsumer<T> consumer) {
+        if (workers <= 1) {
+            for (File file : files) {
+                consumer.accept(file, reader.read(file));
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            int window = IN_FLIGHT_PER_WORKER * workers;
+            Deque<Future<T>> results = new ArrayDeque<>(window);
+            int submitted = 0;
+            for (int i = 0; i < files.length; i++) {
+                while (submitted < files.length && submitted < i + window) {
+                    File file = files[submitted++];
+                    results.add(pool.submit(() -> reader.read(file)));
+                }
+                consumer.accept(files[i], results.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sales ingestion was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error reading the sales files", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads one sales file into its own partial aggregate.
+     *
+     * @param salesFile The sales file to read.
+     * @param catalog   The product catalog used to price the sales.
+     * @param errors    The reporter of the rejected lines.
+     * @param phase     The phase counting the files, lines and bytes read.
+     * @return The partial aggregate of the file.
+     */
+    private static SalesAggregate readSalesFile(File salesFile, ProductCatalog catalog, ErrorReporter errors,
+                                                RunMetrics.Phase phase) {
+        InputResult result = new InputResult(catalog, errors);
+        try {
+            SalesInput.forEachSalesFile(salesFile, new ByteLineParser(), result);
+        } catch (IOException e) {
+            errors.report(RejectReason.UNREADABLE_FILE, "Error reading sales file " + salesFile.getName());
+            e.printStackTrace();
+        }
+        result.finishFile();
+        phase.addFiles(1);
+        phase.addLines(result.lines);
+        phase.addBytesRead(salesFile.length());
+        return result.aggregate;
+    }
+
+    /**
+     * Reports a sales line left out of the aggregate.
+     *
+     * @param errors   The reporter of the rejected lines.
+     * @param fileName The name of the sales file.
+     * @param line     The rejected line.
+     * @param reason   The reason why the line was rejected.
+     */
+    static void reportRejectedLine(ErrorReporter errors, String fileName, String line, RejectReason reason) {
+        switch (reason) {
+            case NEGATIVE_QUANTITY:
+                errors.report(reason, "Negative quantity in sales file " + fileName + ": " + line);
+                break;
+            case INVALID_QUANTITY:
+                errors.report(reason, "Invalid sales quantity format in file " + fileName + ": " + line);
+                break;
+            case INVALID_DATE:
+                errors.report(reason, "Invalid sales date in file " + fileName + ": " + line);
+                break;
+            default:
+                errors.report(reason, "Sales format error in file " + fileName + ": " + line);
+                break;
+        }
+    }
+
+    /**
+     * Checks whether a file name follows the <code>sales_&lt;documentNumber&gt;.txt</code> scheme.
+     *
+     * @param fileName The name of the file.
+     * @return True for the name of a sales file.
+     */
+    static boolean isSalesFileName(String fileName) {
+        return fileName.startsWith(SALES_FILE_PREFIX) && fileName.endsWith(SALES_FILE_SUFFIX);
+    }
+
+    /**
+     * Extracts the seller's document number from a file named <code>sales_&lt;documentNumber&gt;.txt</code>.
+     *
+     * @param fileName The name of the sales file.
+     * @return The document number, or the file name if it does not follow the naming scheme.
+     */
+    static String documentNumberFromFileName(String fileName) {
+        if (isSalesFileName(fileName)) {
+            return fileName.substring(SALES_FILE_PREFIX.length(), fileName.length() - SALES_FILE_SUFFIX.length());
+        }
+        return fileName;
+    }
+
+    /**
+     * Partial result of reading the sales files held in one input file into a single aggregate.
+     */
+    private static class InputResult implements SalesInput.HandlerFactory {
+        private final SalesAggregate aggregate = new SalesAggregate();
+        private final ProductCatalog catalog;
+        private final ErrorReporter errors;
+        private FileResult current;
+        private long lines;
+
+        private InputResult(ProductCatalog catalog, ErrorReporter errors) {
+            this.catalog = catalog;
+            this.errors = errors;
+        }
+
+        @Override
+        public ByteLineParser.SalesHandler open(String fileName) {
+            finishFile();
+            current = new FileResult(fileName, aggregate, catalog, errors);
+            return current;
+        }
+
+        /**
+         * Registers the seller of the sales file or section parsed last, even if it has no lines.
+         */
+        private void finishFile() {
+            if (current != null) {
+                current.registerSeller();
+                lines += current.lines;
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Sales lines of one sales file, or seller section, added to an aggregate by the parser.
+     */
+    private static class FileResult implements ByteLineParser.SalesHandler {
+        private final SalesAggregate aggregate;
+        private final ErrorReporter errors;
+        private final String fileName;
+        private final ProductCatalog catalog;
+        private String documentNumber;
+        private int seller;
+        private boolean sellerRegistered;
+        private long lines;
+
+        private FileResult(String fileName, SalesAggregate aggregate, ProductCatalog catalog, ErrorReporter errors) {
+            this.fileName = fileName;
+            this.aggregate = aggregate;
+            this.catalog = catalog;
+            this.errors = errors;
+            this.documentNumber = documentNumberFromFileName(fileName);
+        }
+
+        @Override
+        public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+            // The header carries the seller's document number
+            if (documentEnd > documentStart && !sellerRegistered) {
+                documentNumber = ByteLineParser.text(buffer, documentStart, documentEnd);
+            }
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+            registerSeller();
+            lines++;
+            int productKey = aggregate.productKey(buffer, productIdStart, productIdEnd);
+            aggregate.addSale(seller, productKey, quantity, catalog.getPrice(buffer, productIdStart, productIdEnd));
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+            registerSeller();
+            lines++;
+            reportRejectedLine(errors, fileName, ByteLineParser.text(buffer, lineStart, lineEnd), reason);
+        }
+
+        private void registerSeller() {
+            if (!sellerRegistered) {
+                seller = aggregate.sellerOrdinal(documentNumber);
+                sellerRegistered = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens the sales files held in the files of the sales folder: plain sales files, gzip-compressed sales
+ * files (<code>sales_&lt;documentNumber&gt;.txt.gz</code>), zip archives of sales files and consolidated files.
+ * <p>
+ * Compressed files are decompressed as a stream straight into the parser, without temporary files. The
+ * entries of a zip archive are read in archive order; entries in folders are named by their file name, and
+ * entries that are not named like a sales file are skipped. Each input file is read by a single thread, so
+ * workers reading different files decompress them in parallel.
+ * </p>
+ * <p>
+ * A consolidated file, named <code>batch_&lt;name&gt;.txt</code>, holds the sales of many sellers: every header
+ * line <code>&lt;documentType&gt;;&lt;documentNumber&gt;</code> starts the section of a seller, read as if it
+ * were a sales file of its own. Consolidated files can be compressed or archived like sales files, and their
+ * {@link SalesBatchIndex} files are not read as sales.
+ * </p>
+ */
+public class SalesInput {
+
+    /** Extension of the gzip-compressed sales files. */
+    public static final String GZIP_SUFFIX = ".gz";
+    /** Extension of the zip archives of sales files. */
+    public static final String ZIP_SUFFIX = ".zip";
+    /** Prefix of the consolidated files. */
+    public static final String BATCH_PREFIX = "batch_";
+    private static final String TEXT_SUFFIX = ".txt";
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Creates the handler of each sales file, or seller section of a consolidated file, held in an input file.
+     */
+    public interface HandlerFactory {
+        /**
+         * Called before the lines of each sales file or seller section are parsed. Sections are parsed one
+         * after the other, in file order.
+         *
+         * @param fileName The name of the sales file or consolidated file, without the compression extension.
+         * @return The handler of the lines.
+         */
+        ByteLineParser.SalesHandler open(String fileName);
+    }
+
+    /**
+     * Lists the input files of the sales folder in name order, so the results do not depend on the file
+     * system listing.
+     *
+     * @param salesFolder The folder containing the sales files.
+     * @return The input files, or null if the folder cannot be listed.
+     */
+    public static File[] listInputFiles(String salesFolder) {
+        File[] files = new File(salesFolder).listFiles(file -> file.isFile() && isListedFileName(file.getName()));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparing(File::getName));
+        }
+        return files;
+    }
+
+    /**
+     * Parses every sales file held in an input file: the file itself, the file it compresses, or each
+     * sales file of a zip archive, split into seller sections for consolidated files.
+     *
+     * @param file     The input file.
+     * @param parser   The parser of the sales files.
+     * @param handlers The factory of the handler of each sales file or section.
+     * @throws IOException If the input file cannot be read or decompressed.
+     */
+    public static void forEachSalesFile(File file, ByteLineParser parser, HandlerFactory handlers)
+            throws IOException {
+        String name = file.getName();
+        if (name.endsWith(ZIP_SUFFIX)) {
+            try (ZipInputStream zip = new ZipInputStream(open(file))) {
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    String entryName = baseName(entry.getName());
+                    if (!entry.isDirectory() && (SalesIngestion.isSalesFileName(entryName) || isBatchFileName(entryName))) {
+                        // The parser reads until the end of the entry and leaves the archive open
+                        parser.parseSales(zip, handler(entryName, handlers));
+                    }
+                }
+            }
+        } else if (name.endsWith(GZIP_SUFFIX)) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE)) {
+                String fileName = name.substring(0, name.length() - GZIP_SUFFIX.length());
+                parser.parseSales(in, handler(fileName, handlers));
+            }
+        } else {
+            parser.parseSales(file.toPath(), handler(name, handlers));
+        }
+    }
+
+    /**
+     * Checks whether a file of the sales folder with this name is one of the input files listed by
+     * {@link #listInputFiles(String)}: a sales file <code>sales_&lt;documentNumber&gt;.txt</code> or a consolidated
+     * file <code>batch_&lt;name&gt;.txt</code>, gzip-compressed or not, or a zip archive. Other files, such as
+     * notes, indexes of consolidated files and uploads still in progress under a temporary name, are left out.
+     *
+     * @param fileName The name of the file.
+     * @return True for an input file.
+     */
+    public static boolean isListedFileName(String fileName) {
+        String name = fileName.endsWith(GZIP_SUFFIX)
+                ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length())
+                : fileName;
+        return SalesIngestion.isSalesFileName(name) || isBatchFileName(name) || fileName.endsWith(ZIP_SUFFIX);
+    }
+
+    /**
+     * Checks whether a file name follows the <code>batch_&lt;name&gt;.txt</code> scheme of consolidated files.
+     *
+     * @param fileName The name of the file.
+     * @return True for the name of a consolidated file.
+     */
+    public static boolean isBatchFileName(String fileName) {
+        return fileName.startsWith(BATCH_PREFIX) && fileName.endsWith(TEXT_SUFFIX);
+    }
+
+    private static ByteLineParser.SalesHandler handler(String fileName, HandlerFactory handlers) {
+        return isBatchFileName(fileName) ? new Sections(fileName, handlers) : handlers.open(fileName);
+    }
+
+    private static InputStream open(File file) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE);
+    }
+
+    private static String baseName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Splits the lines of a consolidated file into seller sections, opening a handler at every header line.
+     * Lines before the first header form a section of their own.
+     */
+    private static class Sections implements ByteLineParser.SalesHandler {
+        private final String fileName;
+        private final HandlerFactory handlers;
+        private ByteLineParser.SalesHandler section;
+
+        private Sections(String fileName, HandlerFactory handlers) {
+            this.fileName = fileName;
+            this.handlers = handlers;
+        }
+
+        @Override
+        public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+            section = handlers.open(fileName);
+            section.header(buffer, documentStart, documentEnd);
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+            section().sale(buffer, productIdStart, productIdEnd, quantity);
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity, int day) {
+            section().sale(buffer, productIdStart, productIdEnd, quantity, day);
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+            section().reject(buffer, lineStart, lineEnd, reason);
+        }
+
+        private ByteLineParser.SalesHandler section() {
+            if (section == null) {
+                section = handlers.open(fileName);
+            }
+            return section;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Record of the sales files already aggregated by an incremental run.
+ * <p>
+ * The manifest is a text file with one entry per line:
+ * <ul>
+ *     <li><code>catalog;&lt;hash&gt;</code>: content hash of the products file used to price the sales.</li>
+ *     <li><code>aggregate;&lt;generation&gt;</code>: generation of the saved total aggregate.</li>
+ *     <li><code>file;&lt;size&gt;;&lt;lastModified&gt;;&lt;hash&gt;;&lt;name&gt;</code>: a sales file and the
+ *     content hash its partial aggregate was built from.</li>
+ * </ul>
+ * </p>
+ */
+public class SalesManifest {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private String catalogHash = "";
+    private long generation;
+    private final Map<String, Entry> files = new TreeMap<>();
+
+    /**
+     * A sales file recorded in the manifest.
+     */
+    public static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        /**
+         * Creates an entry.
+         *
+         * @param size         The size of the file in bytes.
+         * @param lastModified The last modification time of the file, in milliseconds.
+         * @param hash         The content hash of the file.
+         */
+        public Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Checks whether a file still has the size and modification time recorded, so it can be assumed
+         * unchanged without reading it.
+         *
+         * @param file The file.
+         * @return True if the size and the modification time are the same.
+         */
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param manifestFile The manifest file.
+     * @return The manifest, or an empty manifest if the file does not exist.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public static SalesManifest load(Path manifestFile) throws IOException {
+        SalesManifest manifest = new SalesManifest();
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";", 5);
+                try {
+                    switch (parts[0]) {
+                        case "catalog":
+                            manifest.catalogHash = parts[1];
+                            break;
+                        case "aggregate":
+                            manifest.generation = Long.parseLong(parts[1]);
+                            break;
+                        case "file":
+                            manifest.files.put(parts[4],
+                                    new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                            break;
+                        default:
+                            throw new IOException("Unknown manifest entry: " + line);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Malformed manifest entry: " + line, e);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return new SalesManifest();
+        }
+        return manifest;
+    }
+
+    /**
+     * Saves the manifest, replacing the previous one atomically.
+     *
+     * @param manifestFile The manifest file.
+     * @throws IOException If the manifest cannot be written.
+     */
+    public void save(Path manifestFile) throws IOException {
+        AtomicFiles.write(manifestFile, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write("catalog;" + catalogHash + "\n");
+            writer.write("aggregate;" + generation + "\n");
+            for (Map.Entry<String, Entry> file : files.entrySet()) {
+                Entry entry = file.getValue();
+                writer.write("file;" + entry.size + ";" + entry.lastModified + ";" + entry.hash + ";" + file.getKey() + "\n");
+            }
+            writer.flush();
+        });
+    }
+
+    /**
+     * Computes the content hash of a file, a CRC-32C of its bytes.
+     *
+     * @param file The file.
+     * @return The hash as 8 hexadecimal digits.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String hash(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    public String getCatalogHash() {
+        return catalogHash;
+    }
+
+    public void setCatalogHash(String catalogHash) {
+        this.catalogHash = catalogHash;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Gets the sales files recorded, by file name.
+     *
+     * @return The modifiable map of entries.
+     */
+    public Map<String, Entry> getFiles() {
+        return files;
+    }
+}
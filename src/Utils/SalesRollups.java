@@ -0,0 +1,155 @@
+package Utils;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Sales pre-aggregated by day, by week and by month.
+ * <p>
+ * Every dated partial aggregate is merged into the bucket of its day, of its week, starting on Monday,
+ * and of its month. The sales of a range of days are then built from the fewest buckets that cover it
+ * exactly: whole months first, then whole weeks, then the remaining days. A month-to-date report on the
+ * 20th merges at most three weeks and six days instead of reading the sales files again.
+ * </p>
+ */
+public class SalesRollups {
+
+    /**
+     * The length of a bucket.
+     */
+    public enum Period {
+        DAY, WEEK, MONTH;
+
+        /**
+         * Gets the first day of the bucket holding a day.
+         *
+         * @param day The day, as days since 1970-01-01.
+         * @return The first day of its bucket.
+         */
+        public long start(long day) {
+            switch (this) {
+                case WEEK:
+                    // 1970-01-01 was a Thursday, three days after the Monday its week starts on
+                    return day - Math.floorMod(day + 3, 7);
+                case MONTH:
+                    return LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay();
+                default:
+                    return day;
+            }
+        }
+    }
+
+    private final Map<Period, TreeMap<Long, SalesAggregate>> buckets = new EnumMap<>(Period.class);
+    // Sellers of every sales file, reported even when they sold nothing in a range
+    private final Set<String> sellers = new LinkedHashSet<>();
+
+    /**
+     * Receives the buckets that cover a range of days.
+     */
+    public interface BucketConsumer {
+        void accept(Period period, long start);
+    }
+
+    /**
+     * Creates empty rollups.
+     */
+    public SalesRollups() {
+        for (Period period : Period.values()) {
+            buckets.put(period, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Registers a seller so it appears in the sales of every range.
+     *
+     * @param documentNumber The seller's document number.
+     */
+    public void addSeller(String documentNumber) {
+        sellers.add(documentNumber);
+    }
+
+    /**
+     * Adds the sales of one day to the buckets of that day, week and month.
+     *
+     * @param day   The day of the sales, as days since 1970-01-01.
+     * @param sales The sales of the day.
+     */
+    public void add(long day, SalesAggregate sales) {
+        for (Period period : Period.values()) {
+            buckets.get(period).computeIfAbsent(period.start(day), start -> new SalesAggregate()).merge(sales);
+        }
+    }
+
+    /**
+     * Builds the sales of a range of days from the buckets that cover it.
+     *
+     * @param from The first day of the range.
+     * @param to   The last day of the range, inclusive.
+     * @return A new aggregate with the sales of the range and every registered seller.
+     */
+    public SalesAggregate between(LocalDate from, LocalDate to) {
+        SalesAggregate result = new SalesAggregate();
+        for (String documentNumber : sellers) {
+            result.addSeller(documentNumber);
+        }
+        forEachBucket(from, to, (period, start) -> {
+            SalesAggregate bucket = buckets.get(period).get(start);
+            if (bucket != null) {
+                result.merge(bucket);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Passes the buckets that cover a range of days exactly to a consumer, in order of days. Each bucket
+     * is the longest one that starts on its first day and ends inside the range: a whole month, else a
+     * whole week, else the day. Days before the first sale and after the last one are left out.
+     *
+     * @param from     The first day of the range.
+     * @param to       The last day of the range, inclusive.
+     * @param consumer The consumer of the buckets, which may have no sales.
+     */
+    public void forEachBucket(LocalDate from, LocalDate to, BucketConsumer consumer) {
+        long day = Math.max(from.toEpochDay(), firstDay());
+        long last = Math.min(to.toEpochDay(), lastDay());
+        while (day <= last) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long monthEnd = day + date.lengthOfMonth() - date.getDayOfMonth();
+            Period period;
+            if (date.getDayOfMonth() == 1 && monthEnd <= last) {
+                period = Period.MONTH;
+            } else if (Period.WEEK.start(day) == day && day + 6 <= last) {
+                period = Period.WEEK;
+            } else {
+                period = Period.DAY;
+            }
+            consumer.accept(period, day);
+            day = period == Period.MONTH ? monthEnd + 1 : period == Period.WEEK ? day + 7 : day + 1;
+        }
+    }
+
+    /**
+     * Gets the number of buckets of a period.
+     *
+     * @param period The period.
+     * @return The number of buckets with sales.
+     */
+    public int getBucketCount(Period period) {
+        return buckets.get(period).size();
+    }
+
+    private long firstDay() {
+        TreeMap<Long, SalesAggregate> days = buckets.get(Period.DAY);
+        return days.isEmpty() ? Long.MAX_VALUE : days.firstKey();
+    }
+
+    private long lastDay() {
+        TreeMap<Long, SalesAggregate> days = buckets.get(Period.DAY);
+        return days.isEmpty() ? Long.MIN_VALUE : days.lastKey();
+    }
+}
@@ -0,0 +1,266 @@
+package Utils;
+
+import Entities.Seller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Memory-mapped reader of a binary snapshot of the catalog, the sellers and the sales files, written by
+ * {@link SnapshotWriter}.
+ * <p>
+ * The snapshot starts with a fixed header of section offsets, followed by a heap of UTF-8 strings and
+ * fixed-width columns, every section aligned to 8 bytes. Strings are referenced from the columns as
+ * <code>offset &lt;&lt; 32 | length</code> in the heap. The sections are:
+ * <ul>
+ *     <li>products: ID, name and price columns;</li>
+ *     <li>sellers: document type, document number, first name and last name columns;</li>
+ *     <li>the dictionaries of the document numbers and of the product IDs found in the sales files;</li>
+ *     <li>sales files: the seller of each file and the index of its first sale;</li>
+ *     <li>sales: the product and the quantity of each valid sale line, as <code>int</code> columns.</li>
+ * </ul>
+ * Reading the snapshot involves no text parsing: a sale costs two column reads and the product IDs are
+ * priced and encoded once per distinct ID. Lines rejected while compiling the snapshot are not in it.
+ * </p>
+ */
+public class SalesSnapshot {
+
+    static final int MAGIC = 0x564E5453;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+
+    // Sales columns are mapped in segments, since one mapping cannot exceed 2 GB
+    private static final int SEGMENT_SHIFT = 28;
+    private static final long SEGMENT_INTS = 1L << SEGMENT_SHIFT;
+    private static final int TASKS_PER_WORKER = 4;
+
+    private final ByteBuffer sections;
+    private final ByteBuffer heap;
+    private final int productCount;
+    private final int productsOffset;
+    private final int sellerCount;
+    private final int sellersOffset;
+    private final int saleSellerCount;
+    private final int saleSellersOffset;
+    private final int saleProductCount;
+    private final int saleProductsOffset;
+    private final int fileCount;
+    private final int filesOffset;
+    private final long saleCount;
+    private final IntColumn saleProducts;
+    private final IntColumn saleQuantities;
+
+    private SalesSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a sales snapshot");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported sales snapshot version: " + version);
+        }
+        long heapOffset = header.getLong();
+        long heapLength = header.getLong();
+        productCount = (int) header.getLong();
+        long products = header.getLong();
+        sellerCount = (int) header.getLong();
+        long sellers = header.getLong();
+        saleSellerCount = (int) header.getLong();
+        long saleSellers = header.getLong();
+        saleProductCount = (int) header.getLong();
+        long saleProductIds = header.getLong();
+        fileCount = (int) header.getLong();
+        long files = header.getLong();
+        saleCount = header.getLong();
+        long sales = header.getLong();
+        if (sales > Integer.MAX_VALUE || sales + 2 * columnLength(saleCount) > channel.size()) {
+            throw new IOException("Malformed sales snapshot");
+        }
+
+        sections = channel.map(FileChannel.MapMode.READ_ONLY, 0, sales);
+        heap = sections.slice((int) heapOffset, (int) heapLength);
+        productsOffset = (int) products;
+        sellersOffset = (int) sellers;
+        saleSellersOffset = (int) saleSellers;
+        saleProductsOffset = (int) saleProductIds;
+        filesOffset = (int) files;
+        saleProducts = new IntColumn(channel, sales, saleCount);
+        saleQuantities = new IntColumn(channel, sales + columnLength(saleCount), saleCount);
+    }
+
+    /**
+     * Opens a snapshot and maps it into memory.
+     *
+     * @param snapshotFile The path of the snapshot.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static SalesSnapshot open(String snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile), StandardOpenOption.READ)) {
+            return new SalesSnapshot(channel);
+        }
+    }
+
+    /**
+     * Builds the product catalog held in the snapshot.
+     *
+     * @return The catalog.
+     */
+    public ProductCatalog getCatalog() {
+        ProductCatalog.Builder products = new ProductCatalog.Builder(productCount, heap.capacity());
+        for (int i = 0; i < productCount; i++) {
+            // The IDs and names are copied from the string heap without decoding them
+            long id = longAt(productsOffset, i);
+            long name = longAt(productsOffset, productCount + i);
+            int idStart = (int) (id >>> 32);
+            int nameStart = (int) (name >>> 32);
+            products.add(heap, idStart, idStart + (int) id, heap, nameStart, nameStart + (int) name,
+                    longAt(productsOffset, 2 * productCount + i));
+        }
+        return products.build();
+    }
+
+    /**
+     * Builds the sellers held in the snapshot.
+     *
+     * @return A map where the key is the seller's document number and the value is the Seller object.
+     */
+    public Map<String, Seller> getSellers() {
+        Map<String, Seller> sellers = new HashMap<>(Math.max(16, sellerCount * 2));
+        for (int i = 0; i < sellerCount; i++) {
+            String documentType = string(longAt(sellersOffset, i));
+            String documentNumber = string(longAt(sellersOffset, sellerCount + i));
+            String firstName = string(longAt(sellersOffset, 2 * sellerCount + i));
+            String lastName = string(longAt(sellersOffset, 3 * sellerCount + i));
+            sellers.put(documentNumber, new Seller(documentType, documentNumber, firstName, lastName));
+        }
+        return sellers;
+    }
+
+    /**
+     * Gets the number of valid sale lines in the snapshot.
+     *
+     * @return The number of sales.
+     */
+    public long getSaleCount() {
+        return saleCount;
+    }
+
+    /**
+     * Aggregates the sales of the snapshot. The sales files are split in ranges aggregated by several
+     * workers and merged in file order, as {@link SalesIngestion} does.
+     *
+     * @param catalog The product catalog used to price the sales.
+     * @param workers The number of ranges aggregated at the same time; 1 aggregates on the calling thread.
+     * @return The aggregate of all the sales.
+     */
+    public SalesAggregate aggregate(ProductCatalog catalog, int workers) {
+        // Price every product ID once instead of once per sale
+        long[] prices = new long[saleProductCount];
+        for (int i = 0; i < saleProductCount; i++) {
+            prices[i] = catalog.getPrice(string(longAt(saleProductsOffset, i)));
+        }
+        if (workers <= 1 || fileCount <= 1) {
+            return aggregateFiles(0, fileCount, prices);
+        }
+
+        int tasks = Math.min(fileCount, workers * TASKS_PER_WORKER);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            List<Future<SalesAggregate>> results = new ArrayList<>(tasks);
+            for (int task = 0; task < tasks; task++) {
+                int first = (int) ((long) fileCount * task / tasks);
+                int end = (int) ((long) fileCount * (task + 1) / tasks);
+                results.add(pool.submit(() -> aggregateFiles(first, end, prices)));
+            }
+            SalesAggregate aggregate = new SalesAggregate();
+            for (Future<SalesAggregate> result : results) {
+                aggregate.merge(result.get());
+            }
+            return aggregate;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Snapshot aggregation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error aggregating the snapshot", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private SalesAggregate aggregateFiles(int firstFile, int endFile, long[] prices) {
+        SalesAggregate aggregate = new SalesAggregate();
+        int[] productKeys = new int[saleProductCount];
+        Arrays.fill(productKeys, ProductKeys.NO_KEY);
+        int firstSalesOffset = filesOffset + (int) columnLength(fileCount);
+        for (int file = firstFile; file < endFile; file++) {
+            int seller = aggregate.sellerOrdinal(string(longAt(saleSellersOffset, intAt(filesOffset, file))));
+            long end = longAt(firstSalesOffset, file + 1);
+            for (long sale = longAt(firstSalesOffset, file); sale < end; sale++) {
+                int product = saleProducts.get(sale);
+                int productKey = productKeys[product];
+                if (productKey == ProductKeys.NO_KEY) {
+                    productKey = aggregate.productKey(string(longAt(saleProductsOffset, product)));
+                    productKeys[product] = productKey;
+                }
+                aggregate.addSale(seller, productKey, saleQuantities.get(sale), prices[product]);
+            }
+        }
+        return aggregate;
+    }
+
+    private long longAt(int sectionOffset, int index) {
+        return sections.getLong(sectionOffset + index * 8);
+    }
+
+    private int intAt(int sectionOffset, int index) {
+        return sections.getInt(sectionOffset + index * 4);
+    }
+
+    private String string(long reference) {
+        int offset = (int) (reference >>> 32);
+        return ByteLineParser.text(heap, offset, offset + (int) reference);
+    }
+
+    /**
+     * Gets the length of an <code>int</code> column, padded to 8 bytes.
+     *
+     * @param count The number of values.
+     * @return The length in bytes.
+     */
+    static long columnLength(long count) {
+        return (count * 4 + 7) & ~7L;
+    }
+
+    /**
+     * An <code>int</code> column mapped in segments of {@link #SEGMENT_INTS} values.
+     */
+    private static class IntColumn {
+        private final MappedByteBuffer[] segments;
+
+        private IntColumn(FileChannel channel, long offset, long count) throws IOException {
+            segments = new MappedByteBuffer[(int) ((count + SEGMENT_INTS - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = i * SEGMENT_INTS;
+                long length = Math.min(SEGMENT_INTS, count - first) * 4;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * 4, length);
+            }
+        }
+
+        private int get(long index) {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].getInt((int) (index & (SEGMENT_INTS - 1)) << 2);
+        }
+    }
+}
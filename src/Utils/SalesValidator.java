@@ -0,0 +1,314 @@
+package Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validation stage run over the sales files before they are read into the aggregate.
+ * <p>
+ * Every input file of the sales folder is parsed on its own, several at a time, and each rejected line
+ * becomes a structured {@link Reject} of its file, line number and {@link RejectReason}. The product IDs
+ * of a file are checked against the catalog in bulk once the file is parsed: each distinct ID is looked
+ * up a single time, and the lines selling an unknown product are then rejected as
+ * {@link RejectReason#UNKNOWN_PRODUCT}.
+ * </p>
+ * <p>
+ * An input file whose share of rejected lines is above the maximum error rate, or that cannot be read,
+ * is moved with its offset index into the quarantine folder, so the later stages do not read it at all.
+ * The rejects are written in file name and line order to a CSV file with the columns
+ * <code>File;Line;Reason</code>; lines are numbered from 1 within each sales file, and a file that cannot
+ * be read is rejected at line 0. Lines of the sales files held in a zip archive are reported as
+ * <code>&lt;archive&gt;/&lt;sales file&gt;</code>.
+ * </p>
+ */
+public class SalesValidator {
+
+    static final String CSV_HEADER = "File;Line;Reason";
+
+    /**
+     * A line rejected by the validation stage.
+     */
+    public static class Reject {
+        private final String file;
+        private final long line;
+        private final RejectReason reason;
+
+        /**
+         * Creates a reject.
+         *
+         * @param file   The name of the sales file.
+         * @param line   The number of the line in the file, from 1, or 0 for the whole file.
+         * @param reason The reason why the line was rejected.
+         */
+        public Reject(String file, long line, RejectReason reason) {
+            this.file = file;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public RejectReason getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Outcome of the validation of the sales folder.
+     */
+    public static class Summary {
+        private final List<String> quarantined = new ArrayList<>();
+        private long files;
+        private long lines;
+        private long rejectedLines;
+
+        /**
+         * Gets the number of input files validated.
+         *
+         * @return The number of files.
+         */
+        public long getFiles() {
+            return files;
+        }
+
+        /**
+         * Gets the number of sales lines validated, without the header lines.
+         *
+         * @return The number of lines.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Gets the number of sales lines rejected, in the quarantined files as well.
+         *
+         * @return The number of rejected lines.
+         */
+        public long getRejectedLines() {
+            return rejectedLines;
+        }
+
+        /**
+         * Gets the names of the input files moved into the quarantine folder.
+         *
+         * @return The file names, in name order.
+         */
+        public List<String> getQuarantined() {
+            return Collections.unmodifiableList(quarantined);
+        }
+    }
+
+    /**
+     * Validates the sales files of a folder, writes their rejects and quarantines the files with too many
+     * errors, recording the time, the files, the lines and the bytes read in the
+     * {@link RunMetrics#VALIDATE_SALES} phase.
+     *
+     * @param salesFolder      The folder containing the sales files.
+     * @param catalog          The product catalog the product IDs are checked against.
+     * @param workers          The number of files validated at the same time; 1 validates them on the calling
+     *                         thread.
+     * @param maxErrorRate     The share of rejected lines, from 0 to 1, above which a file is quarantined.
+     * @param quarantineFolder The folder the quarantined files are moved to.
+     * @param rejectsFile      The CSV file the rejects are written to.
+     * @param metrics          The metrics of the run.
+     * @return The summary of the validation.
+     * @throws IOException If the rejects cannot be written or a file cannot be quarantined.
+     */
+    public static Summary validate(String salesFolder, ProductCatalog catalog, int workers, double maxErrorRate,
+                                   String quarantineFolder, String rejectsFile, RunMetrics metrics)
+            throws IOException {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.VALIDATE_SALES);
+        Summary summary = new Summary();
+        RunMetrics.Timer timer = phase.start();
+        try (CsvWriter out = CsvWriter.open(new File(rejectsFile))) {
+            out.write(CSV_HEADER).newLine();
+            File[] inputFiles = SalesInput.listInputFiles(salesFolder);
+            if (inputFiles == null) {
+                return summary;
+            }
+            IOException[] failure = new IOException[1];
+            SalesIngestion.readInOrder(inputFiles, workers, file -> validateFile(file, catalog), (file, result) -> {
+                phase.addFiles(1);
+                phase.addLines(result.lines);
+                phase.addBytesRead(file.length());
+                summary.files++;
+                summary.lines += result.lines;
+                summary.rejectedLines += result.rejectedLines;
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    for (Reject reject : result.rejects) {
+                        out.write(reject.getFile()).write(';').write(reject.getLine()).write(';')
+                                .write(reject.getReason().name()).newLine();
+                    }
+                    if (result.unreadable || result.rejectedLines > maxErrorRate * result.lines) {
+                        quarantine(file.toPath(), Path.of(quarantineFolder));
+                        summary.quarantined.add(file.getName());
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            phase.addBytesWritten(out.getBytesWritten());
+        } finally {
+            timer.stop();
+        }
+        return summary;
+    }
+
+    /**
+     * Parses one input file and checks its product IDs against the catalog.
+     */
+    private static InputValidation validateFile(File file, ProductCatalog catalog) {
+        InputValidation validation = new InputValidation(file.getName(), catalog);
+        try {
+            SalesInput.forEachSalesFile(file, new ByteLineParser(), validation);
+        } catch (IOException e) {
+            validation.unreadable = true;
+        }
+        validation.finishSection();
+        if (validation.unreadable) {
+            validation.rejects.add(new Reject(file.getName(), 0, RejectReason.UNREADABLE_FILE));
+        }
+        return validation;
+    }
+
+    /**
+     * Moves an input file, and the offset index of a consolidated file, into the quarantine folder.
+     */
+    private static void quarantine(Path file, Path quarantineFolder) throws IOException {
+        Files.createDirectories(quarantineFolder);
+        Files.move(file, quarantineFolder.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        Path index = SalesBatchIndex.indexFile(file);
+        if (Files.exists(index)) {
+            Files.move(index, quarantineFolder.resolve(index.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Validation of the sales files held in one input file. The sale lines of the current sales file are
+     * kept as the ordinal of their product ID and their line number until the file is finished, when the
+     * product IDs not seen in the previous sales files are looked up in the catalog.
+     */
+    private static class InputValidation implements SalesInput.HandlerFactory, ByteLineParser.SalesHandler {
+        private static final byte KNOWN = 1;
+        private static final byte UNKNOWN = 2;
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final String inputName;
+        private final ProductCatalog catalog;
+        private final IdDictionary productIds = new IdDictionary();
+        private final List<Reject> rejects = new ArrayList<>();
+        private byte[] productStatus = new byte[INITIAL_CAPACITY];
+        private int[] saleProducts = new int[INITIAL_CAPACITY];
+        private long[] saleLines = new long[INITIAL_CAPACITY];
+        private int sales;
+        private int checkedProducts;
+        private String fileName;
+        private String rejectName;
+        private long lineNumber;
+        private int sectionRejects;
+        private long lines;
+        private long rejectedLines;
+        private boolean unreadable;
+
+        private InputValidation(String inputName, ProductCatalog catalog) {
+            this.inputName = inputName;
+            this.catalog = catalog;
+        }
+
+        @Override
+        public ByteLineParser.SalesHandler open(String fileName) {
+            finishSection();
+            // The sections of a consolidated file keep numbering the lines of the file
+            if (!fileName.equals(this.fileName)) {
+                this.fileName = fileName;
+                this.rejectName = isInputFile(fileName) ? inputName : inputName + "/" + fileName;
+                lineNumber = 0;
+            }
+            sectionRejects = rejects.size();
+            return this;
+        }
+
+        @Override
+        public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+            lineNumber++;
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+            lineNumber++;
+            lines++;
+            if (sales == saleProducts.length) {
+                saleProducts = Arrays.copyOf(saleProducts, sales * 2);
+                saleLines = Arrays.copyOf(saleLines, sales * 2);
+            }
+            saleProducts[sales] = productIds.add(buffer, productIdStart, productIdEnd);
+            saleLines[sales++] = lineNumber;
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+            lineNumber++;
+            lines++;
+            rejectedLines++;
+            rejects.add(new Reject(rejectName, lineNumber, reason));
+        }
+
+        /**
+         * Looks up the product IDs seen for the first time in the current section, then rejects its lines
+         * selling an unknown product, merged in line order with the lines rejected by the parser.
+         */
+        private void finishSection() {
+            if (sales == 0) {
+                return;
+            }
+            if (productStatus.length < productIds.size()) {
+                productStatus = Arrays.copyOf(productStatus, Math.max(productIds.size(), productStatus.length * 2));
+            }
+            for (; checkedProducts < productIds.size(); checkedProducts++) {
+                productStatus[checkedProducts] = catalog.contains(productIds.idOf(checkedProducts)) ? KNOWN : UNKNOWN;
+            }
+            List<Reject> parsed = new ArrayList<>(rejects.subList(sectionRejects, rejects.size()));
+            rejects.subList(sectionRejects, rejects.size()).clear();
+            int next = 0;
+            for (int sale = 0; sale < sales; sale++) {
+                if (productStatus[saleProducts[sale]] == UNKNOWN) {
+                    while (next < parsed.size() && parsed.get(next).getLine() < saleLines[sale]) {
+                        rejects.add(parsed.get(next++));
+                    }
+                    rejects.add(new Reject(rejectName, saleLines[sale], RejectReason.UNKNOWN_PRODUCT));
+                    rejectedLines++;
+                }
+            }
+            rejects.addAll(parsed.subList(next, parsed.size()));
+            sales = 0;
+        }
+
+        /**
+         * Checks whether a sales file name is the input file itself, plain or compressed.
+         */
+        private boolean isInputFile(String fileName) {
+            return inputName.equals(fileName) || inputName.equals(fileName + SalesInput.GZIP_SUFFIX);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package Utils;
+
+import Entities.Seller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the sales aggregate up to date while sales files land, and rewrites the reports after each burst
+ * of changes.
+ * <p>
+ * The sales folder and the folders of the products and sellers files are watched with a {@link WatchService}.
+ * A new, modified or deleted input file of the sales folder, as listed by {@link SalesInput#listInputFiles},
+ * only has its own partial aggregate replaced in the total, so the folder is not scanned again. A change of
+ * the products file reloads the catalog and reads every sales file again, since the partials embed its
+ * prices; so does an overflow of the watch events, which also reloads the sellers. A change of the sellers
+ * file reloads the sellers the reports are written with.
+ * </p>
+ * <p>
+ * Changes are debounced: they are applied once no event arrived for the debounce delay, or at the latest
+ * after {@link #MAX_DELAY_FACTOR} times that delay, so a steady stream of files still updates the
+ * reports. The first update writes its errors and their summary to the wrong files report like a single
+ * run; later updates only append a summary when they found errors.
+ * </p>
+ */
+public class SalesWatcher {
+
+    /** Longest wait for a quiet moment, in debounce delays, before changes are applied anyway. */
+    public static final int MAX_DELAY_FACTOR = 5;
+
+    private final Path salesFolder;
+    private final Path productsFile;
+    private final Path sellersFile;
+    private final String errorReport;
+    private final int workers;
+    private final long debounceMillis;
+    private final Map<String, SalesAggregate> partials = new HashMap<>();
+    private SalesAggregate total = new SalesAggregate();
+    private ProductCatalog catalog = ProductCatalog.empty();
+    private Map<String, Seller> sellers = new HashMap<>();
+    private boolean updated;
+
+    /**
+     * Receives the sellers, the catalog and the aggregate after every update, to write the reports, with
+     * the metrics of the update.
+     */
+    public interface ReportWriter {
+        void write(Map<String, Seller> sellers, ProductCatalog catalog, SalesAggregate aggregate, ErrorReporter errors,
+                   RunMetrics metrics);
+    }
+
+    /**
+     * Creates a watcher.
+     *
+     * @param salesFolder    The folder containing the sales files.
+     * @param productsFile   The products file.
+     * @param sellersFile    The sellers file.
+     * @param errorReport    The path of the wrong files report.
+     * @param workers        The number of sales files, or of ranges of the products and sellers files, read at
+     *                       the same time.
+     * @param debounceMillis The time without changes to wait before updating, in milliseconds.
+     */
+    public SalesWatcher(String salesFolder, String productsFile, String sellersFile, String errorReport, int workers,
+                        long debounceMillis) {
+        this.salesFolder = Paths.get(salesFolder);
+        this.productsFile = Paths.get(productsFile);
+        this.sellersFile = Paths.get(sellersFile);
+        this.errorReport = errorReport;
+        this.workers = workers;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Reads every sales file, writes the reports and then updates them as files change, until the thread
+     * is interrupted or one of the folders can no longer be watched.
+     *
+     * @param writer The writer of the reports.
+     * @throws IOException If the folders cannot be watched.
+     */
+    public void run(ReportWriter writer) throws IOException {
+        Path productsFolder = productsFile.toAbsolutePath().getParent();
+        Path sellersFolder = sellersFile.toAbsolutePath().getParent();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            // Folders registered twice share one key
+            WatchKey salesKey = register(salesFolder, watchService);
+            WatchKey productsKey = register(productsFolder, watchService);
+            WatchKey sellersKey = register(sellersFolder, watchService);
+
+            update(true, true, new TreeSet<>(), writer);
+            boolean reload = false;
+            boolean reloadSellers = false;
+            Set<String> changed = new TreeSet<>();
+            long firstPending = 0;
+            while (true) {
+                WatchKey key;
+                if (reload || reloadSellers || !changed.isEmpty()) {
+                    long now = System.currentTimeMillis();
+                    long wait = Math.min(debounceMillis, firstPending + MAX_DELAY_FACTOR * debounceMillis - now);
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (key == null) {
+                        update(reload, reload || reloadSellers, changed, writer);
+                        reload = false;
+                        reloadSellers = false;
+                        changed.clear();
+                        continue;
+                    }
+                } else {
+                    key = watchService.take();
+                    firstPending = System.currentTimeMillis();
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        reload = true;
+                        continue;
+                    }
+                    String fileName = event.context().toString();
+                    if (key == productsKey && productsFile.getFileName().toString().equals(fileName)) {
+                        reload = true;
+                    }
+                    if (key == sellersKey && sellersFile.getFileName().toString().equals(fileName)) {
+                        reloadSellers = true;
+                    }
+                    if (key == salesKey && SalesInput.isListedFileName(fileName)) {
+                        changed.add(fileName);
+                    }
+                }
+                if (!key.reset()) {
+                    System.err.println("The folder " + key.watchable() + " can no longer be watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting, nothing more to watch
+        }
+    }
+
+    /**
+     * Applies the pending changes to the aggregate and writes the reports.
+     *
+     * @param reload        True to reload the catalog and read every sales file again.
+     * @param reloadSellers True to read the sellers file again.
+     * @param changed       The names of the sales files created, modified or deleted since the last update.
+     * @param writer        The writer of the reports.
+     */
+    private void update(boolean reload, boolean reloadSellers, Set<String> changed, ReportWriter writer) {
+        RunMetrics metrics = new RunMetrics();
+        // Only the first update reports that no errors were found, so idle updates do not grow the report
+        try (ErrorReporter errors = ErrorReporter.open(errorReport, !updated)) {
+            updated = true;
+            if (reloadSellers) {
+                sellers = loadSellers(metrics);
+            }
+            List<File> toRead = new ArrayList<>();
+            if (reload) {
+                catalog = loadCatalog(errors, metrics);
+                partials.clear();
+                total = new SalesAggregate();
+                File[] salesFiles = SalesInput.listInputFiles(salesFolder.toString());
+                if (salesFiles == null) {
+                    errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+                } else {
+                    toRead.addAll(Arrays.asList(salesFiles));
+                }
+            } else {
+                for (String fileName : changed) {
+                    SalesAggregate previous = partials.remove(fileName);
+                    if (previous != null) {
+                        total.subtract(previous);
+                    }
+                    Path salesFile = salesFolder.resolve(fileName);
+                    if (Files.isRegularFile(salesFile)) {
+                        toRead.add(salesFile.toFile());
+                    }
+                }
+            }
+            toRead.sort(Comparator.comparing(File::getName));
+            RunMetrics.Phase ingest = metrics.phase(RunMetrics.INGEST_SALES);
+            RunMetrics.Timer timer = ingest.start();
+            try {
+                SalesIngestion.readSalesFiles(toRead.toArray(new File[0]), catalog, workers, errors, ingest,
+                        (salesFile, partial) -> {
+                            partials.put(salesFile.getName(), partial);
+                            total.merge(partial);
+                        });
+            } finally {
+                timer.stop();
+            }
+            writer.write(sellers, catalog, total, errors, metrics);
+        } catch (IOException e) {
+            System.err.println("Error writing the wrong files report: " + errorReport);
+            e.printStackTrace();
+        }
+    }
+
+    private Map<String, Seller> loadSellers(RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.READ_SELLERS);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            Map<String, Seller> loaded = SellersReader.read(sellersFile.toString(), workers);
+            phase.addFiles(1);
+            phase.addLines(loaded.size());
+            phase.addBytesRead(sellersFile.toFile().length());
+            return loaded;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private ProductCatalog loadCatalog(ErrorReporter errors, RunMetrics metrics) {
+        RunMetrics.Phase phase = metrics.phase(RunMetrics.LOAD_CATALOG);
+        RunMetrics.Timer timer = phase.start();
+        try {
+            ProductCatalog loaded = ProductCatalog.load(productsFile.toString(), workers, errors);
+            phase.addFiles(1);
+            phase.addLines(loaded.size());
+            phase.addBytesRead(productsFile.toFile().length());
+            return loaded;
+        } catch (IOException e) {
+            System.err.println("Error reading the products file: " + productsFile);
+            e.printStackTrace();
+            return ProductCatalog.empty();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static WatchKey register(Path folder, WatchService watchService) throws IOException {
+        return folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+}
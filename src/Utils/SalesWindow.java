@@ -0,0 +1,115 @@
+package Utils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * A range of days the reports are limited to, answered from {@link SalesRollups}.
+ */
+public class SalesWindow {
+
+    private static final String LAST_PREFIX = "last-";
+    private static final String DAYS_SUFFIX = "-days";
+    private static final String RANGE_SEPARATOR = "..";
+
+    private final LocalDate from;
+    private final LocalDate to;
+
+    /**
+     * Creates a window.
+     *
+     * @param from The first day.
+     * @param to   The last day, inclusive.
+     */
+    public SalesWindow(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The window ends before it starts: " + from + RANGE_SEPARATOR + to);
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parses a window relative to a reference day. Supported windows are <code>last-&lt;n&gt;-days</code>,
+     * <code>week-to-date</code>, <code>month-to-date</code>, <code>year-to-date</code>, a single day
+     * <code>yyyy-MM-dd</code> and a range <code>yyyy-MM-dd..yyyy-MM-dd</code>.
+     *
+     * @param text  The window.
+     * @param today The reference day of the relative windows.
+     * @return The window.
+     * @throws IllegalArgumentException If the window is not valid.
+     */
+    public static SalesWindow parse(String text, LocalDate today) {
+        switch (text) {
+            case "week-to-date":
+                return new SalesWindow(today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), today);
+            case "month-to-date":
+                return new SalesWindow(today.withDayOfMonth(1), today);
+            case "year-to-date":
+                return new SalesWindow(today.withDayOfYear(1), today);
+            default:
+                break;
+        }
+        // The prefix and the suffix must not overlap, as they do in "last-days"
+        if (text.startsWith(LAST_PREFIX) && text.endsWith(DAYS_SUFFIX)
+                && text.length() > LAST_PREFIX.length() + DAYS_SUFFIX.length()) {
+            String count = text.substring(LAST_PREFIX.length(), text.length() - DAYS_SUFFIX.length());
+            try {
+                int days = Integer.parseInt(count);
+                if (days < 1) {
+                    throw new IllegalArgumentException("The window must cover at least one day: " + text);
+                }
+                return new SalesWindow(today.minusDays(days - 1L), today);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid window: " + text);
+            }
+        }
+        int separator = text.indexOf(RANGE_SEPARATOR);
+        if (separator < 0) {
+            LocalDate day = parseDate(text);
+            return new SalesWindow(day, day);
+        }
+        return new SalesWindow(parseDate(text.substring(0, separator)),
+                parseDate(text.substring(separator + RANGE_SEPARATOR.length())));
+    }
+
+    /**
+     * Parses a <code>yyyy-MM-dd</code> date.
+     *
+     * @param text The date.
+     * @return The date.
+     * @throws IllegalArgumentException If the date is not valid.
+     */
+    public static LocalDate parseDate(String text) {
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + text);
+        }
+    }
+
+    /**
+     * Builds the sales of the window.
+     *
+     * @param rollups The rollups of the sales.
+     * @return The sales between the first and the last day of the window.
+     */
+    public SalesAggregate select(SalesRollups rollups) {
+        return rollups.between(from, to);
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return from + RANGE_SEPARATOR + to;
+    }
+}
@@ -1,55 +1,82 @@
 package Utils;
 
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * Provides utility methods for generating random salesman data.
+ * <p>
+ * Random values are drawn from the {@link SplittableRandom} passed in, so a seeded generator produces
+ * the same data on every run and each thread can use its own stream. Document numbers and names are
+ * derived from the index of the seller, so they are unique without remembering the ones already used.
+ * </p>
  */
 public class SalesmanCount {
 
-    public static final Random RANDOM = new Random();
-
     private static final String[] DOCUMENT_TYPES = { "CC", "CE", "TI" };
     private static final String[] FIRST_NAMES = { "John", "Jane", "Alex", "Emily", "Michael", "Sophia", "James", "Olivia", "Liam", "Isabella" };
     private static final String[] LAST_NAMES = { "Doe", "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Martinez" };
+    private static final int NAME_COMBINATIONS = FIRST_NAMES.length * LAST_NAMES.length;
 
-    private static Set<String> usedNames = new HashSet<>();
-
-    public static String getRandomDocumentType() {
-        return DOCUMENT_TYPES[RANDOM.nextInt(DOCUMENT_TYPES.length)];
+    public static String getRandomDocumentType(SplittableRandom random) {
+        return DOCUMENT_TYPES[random.nextInt(DOCUMENT_TYPES.length)];
     }
 
-    public static String generateRandomDocumentNumber() {
-        return String.format("%08d", RANDOM.nextInt(100000000));
+    public static String getRandomFirstName(SplittableRandom random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
     }
 
-    public static String getRandomFirstName() {
-        return FIRST_NAMES[RANDOM.nextInt(FIRST_NAMES.length)];
+    public static String getRandomLastName(SplittableRandom random) {
+        return LAST_NAMES[random.nextInt(LAST_NAMES.length)];
     }
 
-    public static String getRandomLastName() {
-        return LAST_NAMES[RANDOM.nextInt(LAST_NAMES.length)];
+    /**
+     * Gets the document number of a seller. The numbers of the indexes below <code>10^digits</code> are a
+     * shuffled, seed dependent permutation, so no two sellers share a number.
+     *
+     * @param index  The index of the seller.
+     * @param seed   The seed of the permutation.
+     * @param digits The number of digits of the document numbers, at most 9.
+     * @return The document number.
+     */
+    public static long generateDocumentNumber(long index, long seed, int digits) {
+        long modulus = 1;
+        for (int i = 0; i < digits; i++) {
+            modulus *= 10;
+        }
+        return permute(index, seed, modulus);
     }
 
     /**
-     * Generates a unique first and last name combination.
+     * Generates the name of a seller, different from the names of every other index.
+     * <p>
+     * The first names and last names are combined in a seed dependent order; once the combinations run
+     * out, the last name gets a number, so the generator never runs out of names.
+     * </p>
      *
+     * @param index The index of the seller.
+     * @param seed  The seed of the order of the combinations.
      * @return An array with the first and last name.
      */
-    public static String[] generateUniqueName() {
-        String firstName, lastName;
-        String nameCombination;
-        do {
-            firstName = getRandomFirstName();
-            lastName = getRandomLastName();
-            nameCombination = firstName + " " + lastName;
-        } while (usedNames.contains(nameCombination));
-        usedNames.add(nameCombination);
-        return new String[] { firstName, lastName };
+    public static String[] generateUniqueName(long index, long seed) {
+        int combination = (int) permute(index % NAME_COMBINATIONS, seed, NAME_COMBINATIONS);
+        long round = index / NAME_COMBINATIONS;
+        String firstName = FIRST_NAMES[combination / LAST_NAMES.length];
+        String lastName = LAST_NAMES[combination % LAST_NAMES.length];
+        return new String[] { firstName, round == 0 ? lastName : lastName + " " + (round + 1) };
     }
-}
-
-
 
+    /**
+     * Maps <code>[0, modulus)</code> onto itself with <code>a * index + b mod modulus</code>, which is a
+     * permutation because <code>a</code> is coprime with the powers of ten used as modulus.
+     */
+    private static long permute(long index, long seed, long modulus) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long a = random.nextLong(modulus) | 1;
+        if (a % 5 == 0) {
+            a += 2;
+        }
+        long b = random.nextLong(modulus);
+        // Both factors are below 10^9, so the product does not overflow
+        return (a * (index % modulus) + b) % modulus;
+    }
+}
@@ -0,0 +1,76 @@
+package Utils;
+
+import Entities.Seller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the sellers file, with lines in the format
+ * <code>documentType;documentNumber;firstName;lastName</code>.
+ * <p>
+ * A large sellers file can be read by several workers, each parsing a range of its lines (see
+ * {@link LineRanges}); the sellers of the ranges are added to the map in file order, so a document number
+ * repeated in the file keeps its last line whatever the number of workers.
+ * </p>
+ */
+public class SellersReader {
+
+    // Rough size of one "type;number;firstName;lastName" line, used to pre-size the list of a range
+    private static final int ESTIMATED_BYTES_PER_LINE = 32;
+
+    /**
+     * Reads seller information from a file on the calling thread and creates Seller objects. Lines without
+     * exactly four fields are skipped.
+     *
+     * @param sellersFile The path of the sellers file.
+     * @return A map where the key is the seller's document number and the value is the Seller object.
+     */
+    public static Map<String, Seller> read(String sellersFile) {
+        return read(sellersFile, 1);
+    }
+
+    /**
+     * Reads seller information from a file using the given number of workers and creates Seller objects.
+     * Lines without exactly four fields are skipped.
+     *
+     * @param sellersFile The path of the sellers file.
+     * @param workers     The number of ranges of the file parsed at the same time; 1 reads the file on the
+     *                    calling thread.
+     * @return A map where the key is the seller's document number and the value is the Seller object.
+     */
+    public static Map<String, Seller> read(String sellersFile, int workers) {
+        File file = new File(sellersFile);
+        Map<String, Seller> sellers = new HashMap<>();
+        try {
+            LineRanges.parseInOrder(file.toPath(), workers, (start, end) -> readRange(file, start, end),
+                    range -> {
+                        for (Seller seller : range) {
+                            sellers.put(seller.getDocumentNumber(), seller);
+                        }
+                    });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sellers;
+    }
+
+    /**
+     * Reads the sellers of a range of lines, in file order.
+     */
+    private static List<Seller> readRange(File file, long start, long end) throws IOException {
+        List<Seller> sellers = new ArrayList<>((int) Math.min(1 << 24, (end - start) / ESTIMATED_BYTES_PER_LINE));
+        new ByteLineParser().parseSellers(file.toPath(), start, end,
+                (buffer, typeStart, typeEnd, numberStart, numberEnd, firstNameStart, firstNameEnd,
+                 lastNameStart, lastNameEnd) -> sellers.add(new Seller(
+                        ByteLineParser.text(buffer, typeStart, typeEnd),
+                        ByteLineParser.text(buffer, numberStart, numberEnd),
+                        ByteLineParser.text(buffer, firstNameStart, firstNameEnd),
+                        ByteLineParser.text(buffer, lastNameStart, lastNameEnd))));
+        return sellers;
+    }
+}
@@ -0,0 +1,297 @@
+package Utils;
+
+import Entities.Seller;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles the products file, the sellers file and the sales files into a {@link SalesSnapshot}.
+ * <p>
+ * The sales files are parsed once, in file name order, with the same rules as {@link SalesIngestion}:
+ * rejected lines are sent to the {@link ErrorReporter} and left out of the snapshot. The product and
+ * quantity columns are streamed to temporary files while parsing, so only the dictionaries and the
+ * strings are held in memory, and the snapshot is then assembled and replaced atomically.
+ * </p>
+ */
+public class SnapshotWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final IdDictionary saleSellers = new IdDictionary();
+    private final IdDictionary saleProducts = new IdDictionary();
+    private final ByteHeap heap = new ByteHeap();
+    private int[] fileSellers = new int[16];
+    private long[] firstSales = new long[17];
+    private int fileCount;
+    private long saleCount;
+
+    /**
+     * Compiles the text files into a snapshot.
+     *
+     * @param sellersFile  The sellers file.
+     * @param productsFile The products file.
+     * @param salesFolder  The folder containing the sales files.
+     * @param snapshotFile The snapshot to write.
+     * @param errors       The reporter of the rejected lines.
+     * @throws IOException If a file cannot be read or the snapshot cannot be written.
+     */
+    public static void compile(String sellersFile, String productsFile, String salesFolder, String snapshotFile,
+                               ErrorReporter errors) throws IOException {
+        ProductCatalog catalog = ProductCatalog.load(productsFile, errors);
+        Collection<Seller> sellers = SellersReader.read(sellersFile).values();
+        File[] salesFiles = SalesInput.listInputFiles(salesFolder);
+        if (salesFiles == null) {
+            errors.report(RejectReason.UNREADABLE_FILE, "No sales files found in the folder: " + salesFolder);
+            salesFiles = new File[0];
+        }
+
+        Path snapshot = Paths.get(snapshotFile).toAbsolutePath();
+        Files.createDirectories(snapshot.getParent());
+        Path productColumn = Files.createTempFile(snapshot.getParent(), "snapshot-products", ".tmp");
+        Path quantityColumn = Files.createTempFile(snapshot.getParent(), "snapshot-quantities", ".tmp");
+        try {
+            SnapshotWriter writer = new SnapshotWriter();
+            try (DataOutputStream products = openColumn(productColumn);
+                 DataOutputStream quantities = openColumn(quantityColumn)) {
+                for (File salesFile : salesFiles) {
+                    writer.addSalesFile(salesFile, products, quantities, errors);
+                }
+            }
+            writer.write(snapshot, catalog, sellers, productColumn, quantityColumn);
+        } finally {
+            Files.deleteIfExists(productColumn);
+            Files.deleteIfExists(quantityColumn);
+        }
+    }
+
+    /**
+     * Adds the sales files, or seller sections, held in an input file, each as a file of the snapshot.
+     */
+    private void addSalesFile(File salesFile, DataOutputStream products, DataOutputStream quantities,
+                              ErrorReporter errors) throws IOException {
+        FileRows[] current = new FileRows[1];
+        try {
+            SalesInput.forEachSalesFile(salesFile, new ByteLineParser(), fileName -> {
+                addFile(current[0]);
+                current[0] = new FileRows(fileName, products, quantities, errors);
+                return current[0];
+            });
+        } catch (UncheckedIOException e) {
+            // Failed to write a column, not to read the sales file
+            throw e.getCause();
+        } catch (IOException e) {
+            errors.report(RejectReason.UNREADABLE_FILE, "Error reading sales file " + salesFile.getName());
+            e.printStackTrace();
+        }
+        addFile(current[0]);
+    }
+
+    /**
+     * Records the seller and the end of the sales of a parsed file, if any.
+     */
+    private void addFile(FileRows rows) {
+        if (rows == null) {
+            return;
+        }
+        rows.registerSeller();
+        if (fileCount == fileSellers.length) {
+            fileSellers = Arrays.copyOf(fileSellers, fileCount * 2);
+            firstSales = Arrays.copyOf(firstSales, fileCount * 2 + 1);
+        }
+        fileSellers[fileCount++] = rows.seller;
+        firstSales[fileCount] = saleCount;
+    }
+
+    /**
+     * Assembles the snapshot: header, string heap, small sections and then the sales columns.
+     */
+    private void write(Path snapshot, ProductCatalog products, Collection<Seller> sellers,
+                       Path productColumn, Path quantityColumn) throws IOException {
+        long[][] productColumns = new long[3][products.size()];
+        int[] product = {0};
+        products.forEach((productId, productName, price) -> {
+            productColumns[0][product[0]] = heap.add(productId);
+            productColumns[1][product[0]] = heap.add(productName);
+            productColumns[2][product[0]++] = price;
+        });
+        long[][] sellerColumns = new long[4][sellers.size()];
+        int i = 0;
+        for (Seller seller : sellers) {
+            sellerColumns[0][i] = heap.add(seller.getDocumentType());
+            sellerColumns[1][i] = heap.add(seller.getDocumentNumber());
+            sellerColumns[2][i] = heap.add(seller.getFirstName());
+            sellerColumns[3][i] = heap.add(seller.getLastName());
+            i++;
+        }
+        long[] saleSellerIds = new long[saleSellers.size()];
+        for (i = 0; i < saleSellerIds.length; i++) {
+            saleSellerIds[i] = heap.add(saleSellers.idOf(i));
+        }
+        long[] saleProductIds = new long[saleProducts.size()];
+        for (i = 0; i < saleProductIds.length; i++) {
+            saleProductIds[i] = heap.add(saleProducts.idOf(i));
+        }
+
+        long heapOffset = SalesSnapshot.HEADER_SIZE;
+        long productsOffset = align(heapOffset + heap.size());
+        long sellersOffset = productsOffset + 3L * 8 * products.size();
+        long saleSellersOffset = sellersOffset + 4L * 8 * sellers.size();
+        long saleProductsOffset = saleSellersOffset + 8L * saleSellerIds.length;
+        long filesOffset = saleProductsOffset + 8L * saleProductIds.length;
+        long salesOffset = filesOffset + SalesSnapshot.columnLength(fileCount) + 8L * (fileCount + 1);
+
+        AtomicFiles.write(snapshot, out -> {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(SalesSnapshot.MAGIC);
+            data.writeInt(SalesSnapshot.VERSION);
+            for (long value : new long[] {heapOffset, heap.size(), products.size(), productsOffset,
+                    sellers.size(), sellersOffset, saleSellerIds.length, saleSellersOffset,
+                    saleProductIds.length, saleProductsOffset, fileCount, filesOffset, saleCount, salesOffset}) {
+                data.writeLong(value);
+            }
+            pad(data, SalesSnapshot.HEADER_SIZE - data.size());
+            heap.writeTo(data);
+            pad(data, productsOffset - heapOffset - heap.size());
+            for (long[] column : productColumns) {
+                writeColumn(data, column);
+            }
+            for (long[] column : sellerColumns) {
+                writeColumn(data, column);
+            }
+            writeColumn(data, saleSellerIds);
+            writeColumn(data, saleProductIds);
+            for (int file = 0; file < fileCount; file++) {
+                data.writeInt(fileSellers[file]);
+            }
+            pad(data, SalesSnapshot.columnLength(fileCount) - 4L * fileCount);
+            writeColumn(data, Arrays.copyOf(firstSales, fileCount + 1));
+            Files.copy(productColumn, data);
+            pad(data, SalesSnapshot.columnLength(saleCount) - 4 * saleCount);
+            Files.copy(quantityColumn, data);
+            pad(data, SalesSnapshot.columnLength(saleCount) - 4 * saleCount);
+            data.flush();
+        });
+    }
+
+    private static DataOutputStream openColumn(Path column) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(column), BUFFER_SIZE));
+    }
+
+    private static void writeColumn(DataOutputStream data, long[] column) throws IOException {
+        for (long value : column) {
+            data.writeLong(value);
+        }
+    }
+
+    private static void pad(OutputStream out, long count) throws IOException {
+        for (long i = 0; i < count; i++) {
+            out.write(0);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Rows of one sales file, filled by the parser and streamed to the columns.
+     */
+    private class FileRows implements ByteLineParser.SalesHandler {
+        private final String fileName;
+        private final DataOutputStream products;
+        private final DataOutputStream quantities;
+        private final ErrorReporter errors;
+        private String documentNumber;
+        private int seller;
+        private boolean sellerRegistered;
+
+        private FileRows(String fileName, DataOutputStream products, DataOutputStream quantities, ErrorReporter errors) {
+            this.fileName = fileName;
+            this.products = products;
+            this.quantities = quantities;
+            this.errors = errors;
+            this.documentNumber = SalesIngestion.documentNumberFromFileName(fileName);
+        }
+
+        @Override
+        public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+            // The header carries the seller's document number
+            if (documentEnd > documentStart && !sellerRegistered) {
+                documentNumber = ByteLineParser.text(buffer, documentStart, documentEnd);
+            }
+        }
+
+        @Override
+        public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+            registerSeller();
+            try {
+                products.writeInt(saleProducts.add(buffer, productIdStart, productIdEnd));
+                quantities.writeInt(quantity);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            saleCount++;
+        }
+
+        @Override
+        public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+            registerSeller();
+            SalesIngestion.reportRejectedLine(errors, fileName, ByteLineParser.text(buffer, lineStart, lineEnd), reason);
+        }
+
+        private void registerSeller() {
+            if (!sellerRegistered) {
+                seller = saleSellers.add(documentNumber);
+                sellerRegistered = true;
+            }
+        }
+    }
+
+    /**
+     * Growable heap of UTF-8 strings. Each string is stored once and referenced as
+     * <code>offset &lt;&lt; 32 | length</code>.
+     */
+    private static class ByteHeap {
+        private final Map<String, Long> references = new HashMap<>();
+        private byte[] bytes = new byte[BUFFER_SIZE];
+        private int size;
+
+        private long add(String text) {
+            Long reference = references.get(text);
+            if (reference != null) {
+                return reference;
+            }
+            byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+            if (size + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            long added = ((long) size << 32) | encoded.length;
+            size += encoded.length;
+            references.put(text, added);
+            return added;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
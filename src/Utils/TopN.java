@@ -0,0 +1,70 @@
+package Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the best items of a ranking as they are produced.
+ * <p>
+ * With a limit, only the best <code>limit</code> items are kept in a bounded heap whose head is the worst
+ * item kept, so ranking millions of items costs <code>O(n log limit)</code> and never holds them all.
+ * Without a limit every item is kept and sorted at the end.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public class TopN<T> {
+
+    private final int limit;
+    private final Comparator<? super T> ranking;
+    private final PriorityQueue<T> heap;
+    private final List<T> all;
+
+    /**
+     * Creates a collector.
+     *
+     * @param limit   The number of items to keep, or 0 to keep them all.
+     * @param ranking The order of the items, best first.
+     */
+    public TopN(int limit, Comparator<? super T> ranking) {
+        this.limit = limit;
+        this.ranking = ranking;
+        if (limit > 0) {
+            this.heap = new PriorityQueue<>(Math.min(limit, 1 << 16) + 1, Collections.reverseOrder(ranking));
+            this.all = null;
+        } else {
+            this.heap = null;
+            this.all = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Offers an item, which is kept only if it is among the best seen so far.
+     *
+     * @param item The item.
+     */
+    public void offer(T item) {
+        if (heap == null) {
+            all.add(item);
+        } else if (heap.size() < limit) {
+            heap.add(item);
+        } else if (ranking.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    /**
+     * Gets the items kept, best first.
+     *
+     * @return A new list with the items in ranking order.
+     */
+    public List<T> toList() {
+        List<T> items = new ArrayList<>(heap != null ? heap : all);
+        items.sort(ranking);
+        return items;
+    }
+}
@@ -5,4 +5,5 @@
  * 
  */
 module ProyectoVENTAS {
+    requires jdk.httpserver;
 }
\ No newline at end of file
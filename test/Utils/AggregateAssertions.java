@@ -0,0 +1,35 @@
+package Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares sales aggregates by what the reports read from them.
+ */
+class AggregateAssertions {
+
+    private AggregateAssertions() {
+    }
+
+    /**
+     * Checks that two aggregates hold the same sellers, products and sales.
+     *
+     * @param expected The expected aggregate.
+     * @param actual   The aggregate checked.
+     */
+    static void assertSameSales(SalesAggregate expected, SalesAggregate actual) {
+        assertEquals(expected.getSellerRevenue(), actual.getSellerRevenue());
+        assertEquals(expected.getProductQuantities(), actual.getProductQuantities());
+        assertEquals(sales(expected), sales(actual));
+    }
+
+    private static List<String> sales(SalesAggregate aggregate) {
+        List<String> sales = new ArrayList<>();
+        aggregate.forEachSale((documentNumber, productId, quantity) ->
+                sales.add(documentNumber + ";" + productId + ";" + quantity));
+        sales.sort(null);
+        return sales;
+    }
+}
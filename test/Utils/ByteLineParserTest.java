@@ -0,0 +1,139 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks how the sales lines are split and validated, whatever the line breaks and however the bytes are read.
+ */
+class ByteLineParserTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void splitsLinesOnEveryKindOfLineBreak() {
+        List<String> lines = parse("DNI;123\nP001;1;\r\nP002;2\rP003;3");
+        assertEquals(List.of("header 123", "sale P001 1", "sale P002 2", "sale P003 3"), lines);
+    }
+
+    @Test
+    void rejectsEmptyLinesAsFormatErrors() {
+        List<String> lines = parse("DNI;123\n\nP001;1\r\n\r\n;;\n");
+        assertEquals(List.of("header 123", "reject SALES_FORMAT ", "sale P001 1", "reject SALES_FORMAT ",
+                "reject SALES_FORMAT ;;"), lines);
+    }
+
+    @Test
+    void readsHeadersWithAnyDocumentType() {
+        assertEquals(List.of("header 1", "header 2", "header 3", "header "), parse("CC;1\nTI;2\nCE;3\nDNI;\n"));
+    }
+
+    @Test
+    void rejectsQuantitiesThatAreNotInts() {
+        List<String> lines = parse("P001;2147483647\nP001;2147483648\nP001;-1\nP001;-2147483649\nP001;1x\nP001;+\n");
+        assertEquals(List.of("sale P001 2147483647", "reject INVALID_QUANTITY P001;2147483648",
+                "reject NEGATIVE_QUANTITY P001;-1", "reject INVALID_QUANTITY P001;-2147483649",
+                "reject INVALID_QUANTITY P001;1x", "reject INVALID_QUANTITY P001;+"), lines);
+    }
+
+    @Test
+    void readsTheDateOfASale() {
+        long day = LocalDate.of(2024, 2, 29).toEpochDay();
+        List<String> lines = parse("P001;1;2024-02-29\nP001;1;2024-02-29T10:15\nP001;1;2024-02-29 10:15:30\n"
+                + "P001;1;2023-02-29\nP001;1;2024-02-29T25:00\nP001;1;\n");
+        assertEquals(List.of("sale P001 1 " + day, "sale P001 1 " + day, "sale P001 1 " + day,
+                "reject INVALID_DATE P001;1;2023-02-29", "reject INVALID_DATE P001;1;2024-02-29T25:00",
+                "sale P001 1"), lines);
+    }
+
+    @Test
+    void readsALineSpanningTwoChunksOfAStream() throws IOException {
+        // Lines of varied lengths, so the chunks of the stream end in the middle of a line
+        StringBuilder text = new StringBuilder("DNI;123\r\n");
+        long expected = 0;
+        for (int i = 0; i < 40_000; i++) {
+            text.append("P").append(i % 997).append(';').append(i % 13).append(i % 2 == 0 ? "\r\n" : "\n");
+            expected += i % 13;
+        }
+        // A line longer than a chunk, which grows the chunk
+        String longId = "P" + "9".repeat(600_000);
+        text.append(longId).append(";5");
+        expected += 5;
+
+        List<String> fromStream = new ArrayList<>();
+        long[] total = new long[1];
+        InputStream in = new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.US_ASCII));
+        new ByteLineParser().parseSales(in, recorder(fromStream, total));
+
+        assertEquals(expected, total[0]);
+        assertEquals(parse(text.toString()), fromStream);
+        assertEquals("sale " + longId + " 5", fromStream.get(fromStream.size() - 1));
+    }
+
+    @Test
+    void readsAMappedFileLikeAHeapBuffer() throws IOException {
+        // Bigger than the files read into a heap buffer, so the file is memory-mapped
+        StringBuilder text = new StringBuilder("CC;42\r\n");
+        while (text.length() < 3 << 20) {
+            text.append("P").append(text.length() % 1000).append(";").append(text.length() % 7).append(";\r\n");
+            text.append("\r\n");
+        }
+        Path file = folder.resolve("sales_42.txt");
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+
+        List<String> fromFile = new ArrayList<>();
+        new ByteLineParser().parseSales(file, recorder(fromFile, new long[1]));
+
+        assertEquals(parse(text.toString()), fromFile);
+    }
+
+    private static List<String> parse(String text) {
+        List<String> lines = new ArrayList<>();
+        new ByteLineParser().parseSales(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)),
+                recorder(lines, new long[1]));
+        return lines;
+    }
+
+    /**
+     * Records the lines passed to the handler as text, and the sum of the quantities sold.
+     */
+    private static ByteLineParser.SalesHandler recorder(List<String> lines, long[] total) {
+        return new ByteLineParser.SalesHandler() {
+            @Override
+            public void header(ByteBuffer buffer, int documentStart, int documentEnd) {
+                lines.add("header " + ByteLineParser.text(buffer, documentStart, documentEnd));
+            }
+
+            @Override
+            public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity) {
+                sale(buffer, productIdStart, productIdEnd, quantity, ByteLineParser.NO_DATE);
+            }
+
+            @Override
+            public void sale(ByteBuffer buffer, int productIdStart, int productIdEnd, int quantity, int day) {
+                total[0] += quantity;
+                lines.add("sale " + ByteLineParser.text(buffer, productIdStart, productIdEnd) + " " + quantity
+                        + (day != ByteLineParser.NO_DATE ? " " + day : ""));
+            }
+
+            @Override
+            public void reject(ByteBuffer buffer, int lineStart, int lineEnd, RejectReason reason) {
+                lines.add("reject " + reason + " " + ByteLineParser.text(buffer, lineStart, lineEnd));
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package Utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static Utils.AggregateAssertions.assertSameSales;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a run stopped halfway is resumed from its last checkpoint. The first run is stopped by a
+ * closed error reporter, which fails on the first rejected line, of the last sales file.
+ */
+class CheckpointedIngestionTest {
+
+    @TempDir
+    Path folder;
+
+    private Path sales;
+    private Path products;
+    private Path checkpoint;
+    private ProductCatalog catalog;
+
+    @BeforeEach
+    void writeSalesFolder() throws IOException {
+        sales = Files.createDirectory(folder.resolve("Sales"));
+        products = folder.resolve("products_info.txt");
+        checkpoint = folder.resolve("Checkpoint");
+        Files.writeString(products, "P001;sal_kg;17.000\nP002;bolsa_leche;20.000\n", StandardCharsets.UTF_8);
+        write("sales_1.txt", "DNI;1\nP001;2;\n");
+        write("sales_2.txt", "DNI;2\nP002;3;\n");
+        write("sales_3.txt", "DNI;3\nP001;1;\nP002;x;\n");
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("catalog.txt").toString());
+        catalog = ProductCatalog.load(products.toString(), errors);
+        errors.close();
+    }
+
+    @Test
+    void resumesFromTheLastCheckpoint() throws IOException {
+        SalesAggregate expected = fullRun();
+        stopOnFirstError();
+        assertTrue(Files.isDirectory(checkpoint));
+
+        // Edited without changing its size or modification time, the first file is not read again
+        Path first = sales.resolve("sales_1.txt");
+        FileTime modified = Files.getLastModifiedTime(first);
+        write("sales_1.txt", "DNI;1\nP002;9;\n");
+        Files.setLastModifiedTime(first, modified);
+
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("resumed.txt").toString());
+        SalesAggregate resumed = CheckpointedIngestion.ingest(sales.toString(), products.toString(),
+                checkpoint.toString(), catalog, 2, 0, errors, new RunMetrics());
+        errors.close();
+
+        assertSameSales(expected, resumed);
+        assertEquals(1, errors.getTotal());
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void readsEverythingAgainWhenACheckpointedFileChanged() throws IOException {
+        stopOnFirstError();
+
+        Path first = sales.resolve("sales_1.txt");
+        FileTime modified = Files.getLastModifiedTime(first);
+        write("sales_1.txt", "DNI;1\nP002;9;\n");
+        Files.setLastModifiedTime(first, FileTime.fromMillis(modified.toMillis() + 5000));
+
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("restarted.txt").toString());
+        SalesAggregate restarted = CheckpointedIngestion.ingest(sales.toString(), products.toString(),
+                checkpoint.toString(), catalog, 1, 0, errors, new RunMetrics());
+        errors.close();
+
+        assertSameSales(fullRun(), restarted);
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void readsEverythingAgainWhenTheCatalogChanged() throws IOException {
+        stopOnFirstError();
+        Files.writeString(products, "P001;sal_kg;18.000\nP002;bolsa_leche;20.000\n", StandardCharsets.UTF_8);
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("catalog.txt").toString());
+        catalog = ProductCatalog.load(products.toString(), errors);
+
+        SalesAggregate restarted = CheckpointedIngestion.ingest(sales.toString(), products.toString(),
+                checkpoint.toString(), catalog, 1, 0, errors, new RunMetrics());
+        errors.close();
+
+        assertSameSales(fullRun(), restarted);
+    }
+
+    /**
+     * Runs a checkpointed ingestion that saves a checkpoint after the first file and stops on the last file.
+     */
+    private void stopOnFirstError() throws IOException {
+        ErrorReporter closed = ErrorReporter.open(folder.resolve("stopped.txt").toString());
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> CheckpointedIngestion.ingest(sales.toString(),
+                products.toString(), checkpoint.toString(), catalog, 1, 0, closed, new RunMetrics()));
+    }
+
+    private SalesAggregate fullRun() throws IOException {
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("full.txt").toString());
+        SalesAggregate aggregate = SalesIngestion.ingest(sales.toString(), catalog, errors);
+        errors.close();
+        return aggregate;
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.writeString(sales.resolve(fileName), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that merging the spilled runs gives the order of an in-memory sort, and how the merge fails.
+ */
+class ExternalSorterTest {
+
+    // Items are ranked by key, highest first; the sequence number tells equal keys apart
+    private static final Comparator<long[]> RANKING = Comparator.comparingLong((long[] item) -> item[0]).reversed();
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void mergesTheRunsInTheOrderOfAnInMemorySort() throws IOException {
+        List<long[]> items = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(23);
+        for (int i = 0; i < 10_000; i++) {
+            // Few distinct keys, so many items compare equal across runs
+            items.add(new long[] {random.nextInt(50), i});
+        }
+        Path spill = folder.resolve("Sort");
+        List<long[]> merged = new ArrayList<>();
+        try (ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(0), 16 * 1000, spill)) {
+            items.forEach(sorter::offer);
+            assertEquals(10, sorter.getRunCount());
+            assertEquals(items.size(), sorter.size());
+            sorter.sorted().forEach(merged::add);
+        }
+
+        List<long[]> expected = new ArrayList<>(items);
+        expected.sort(RANKING);
+        assertEquals(text(expected), text(merged));
+        assertFalse(Files.exists(spill));
+    }
+
+    @Test
+    void mergesManyRunsInPassesOfBoundedFanIn() throws IOException {
+        List<long[]> items = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(29);
+        for (int i = 0; i < 20_000; i++) {
+            items.add(new long[] {random.nextInt(50), i});
+        }
+        Path spill = folder.resolve("Sort");
+        List<long[]> merged = new ArrayList<>();
+        // 5 items a run: 4000 runs, merged into 63 runs of up to 64 runs each before the final merge
+        try (ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(0), 16 * 5, spill)) {
+            items.forEach(sorter::offer);
+            assertEquals(4000, sorter.getRunCount());
+            Iterable<long[]> sorted = sorter.sorted();
+            assertTrue(sorter.getRunCount() <= ExternalSorter.MAX_FAN_IN);
+            try (Stream<Path> runs = Files.list(spill)) {
+                assertEquals(sorter.getRunCount(), runs.count());
+            }
+            sorted.forEach(merged::add);
+        }
+
+        List<long[]> expected = new ArrayList<>(items);
+        expected.sort(RANKING);
+        assertEquals(text(expected), text(merged));
+        assertFalse(Files.exists(spill));
+    }
+
+    @Test
+    void deletesTheRunsOfAFailedPass() throws IOException {
+        Path spill = folder.resolve("Sort");
+        ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(300), 16 * 2, spill);
+        for (int i = 0; i < 1000; i++) {
+            sorter.offer(new long[] {i % 7, i});
+        }
+        UncheckedIOException failure = assertThrows(UncheckedIOException.class, sorter::sorted);
+        assertEquals("Item 300 cannot be read", failure.getCause().getMessage());
+        sorter.close();
+        assertFalse(Files.exists(spill));
+    }
+
+    @Test
+    void sortsInMemoryWithoutRuns() throws IOException {
+        try (ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(0), 1 << 20, folder)) {
+            sorter.offer(new long[] {1, 0});
+            sorter.offer(new long[] {3, 1});
+            sorter.offer(new long[] {1, 2});
+            assertEquals(0, sorter.getRunCount());
+            // Without runs the items can be iterated again
+            assertEquals(List.of("3:1", "1:0", "1:2"), text(sorter.sorted()));
+            assertEquals(List.of("3:1", "1:0", "1:2"), text(sorter.sorted()));
+            assertThrows(IllegalStateException.class, () -> sorter.offer(new long[] {2, 3}));
+        }
+    }
+
+    @Test
+    void mergesTheRunsOnlyOnce() throws IOException {
+        try (ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(0), 16, folder)) {
+            for (int i = 0; i < 5; i++) {
+                sorter.offer(new long[] {i, i});
+            }
+            Iterable<long[]> sorted = sorter.sorted();
+            assertEquals(List.of("4:4", "3:3", "2:2", "1:1", "0:0"), text(sorted));
+            assertThrows(IllegalStateException.class, sorted::iterator);
+        }
+    }
+
+    @Test
+    void rethrowsAFailureToReadARun() throws IOException {
+        try (ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(3000), 16 * 1000, folder)) {
+            for (int i = 0; i < 5000; i++) {
+                sorter.offer(new long[] {i % 7, i});
+            }
+            Iterator<long[]> merged = sorter.sorted().iterator();
+            UncheckedIOException failure = assertThrows(UncheckedIOException.class, () -> {
+                while (merged.hasNext()) {
+                    merged.next();
+                }
+            });
+            assertEquals("Item 3000 cannot be read", failure.getCause().getMessage());
+            assertFalse(merged.hasNext());
+        }
+    }
+
+    @Test
+    void closingStopsAMergeLeftHalfway() throws IOException {
+        Path spill = folder.resolve("Sort");
+        ExternalSorter<long[]> sorter = new ExternalSorter<>(RANKING, new ItemCodec(0), 16 * 100, spill);
+        for (int i = 0; i < 20_000; i++) {
+            sorter.offer(new long[] {i, i});
+        }
+        Iterator<long[]> merged = sorter.sorted().iterator();
+        assertTrue(merged.hasNext());
+        sorter.close();
+        assertFalse(Files.exists(spill));
+    }
+
+    private static List<String> text(Iterable<long[]> items) {
+        List<String> text = new ArrayList<>();
+        for (long[] item : items) {
+            text.add(item[0] + ":" + item[1]);
+        }
+        return text;
+    }
+
+    /**
+     * Writes the key and sequence number of an item, failing to read the item with a given sequence number.
+     */
+    private static class ItemCodec implements ExternalSorter.Codec<long[]> {
+        private final long failingItem;
+
+        private ItemCodec(long failingItem) {
+            this.failingItem = failingItem;
+        }
+
+        @Override
+        public void write(DataOutputStream out, long[] item) throws IOException {
+            out.writeLong(item[0]);
+            out.writeLong(item[1]);
+        }
+
+        @Override
+        public long[] read(DataInputStream in) throws IOException {
+            long[] item = {in.readLong(), in.readLong()};
+            if (failingItem > 0 && item[1] == failingItem) {
+                throw new IOException("Item " + failingItem + " cannot be read");
+            }
+            return item;
+        }
+
+        @Override
+        public long estimateSize(long[] item) {
+            return 16;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package Utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32C;
+
+import static Utils.AggregateAssertions.assertSameSales;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that an incremental run reads only the sales files that changed since the previous run and
+ * still builds the aggregate of a full run. The errors of a sales file are reported when it is read, so
+ * the errors reported by a run tell which files it read.
+ */
+class IncrementalIngestionTest {
+
+    @TempDir
+    Path folder;
+
+    private Path sales;
+    private Path products;
+    private Path state;
+
+    @BeforeEach
+    void writeSalesFolder() throws IOException {
+        sales = Files.createDirectory(folder.resolve("Sales"));
+        products = folder.resolve("products_info.txt");
+        state = folder.resolve("State");
+        Files.writeString(products, "P001;sal_kg;17.000\nP002;bolsa_leche;20.000\n", StandardCharsets.UTF_8);
+        write("sales_1.txt", "DNI;1\nP001;2;\nP002;x;\n");
+        write("sales_2.txt", "DNI;2\nP002;3;\n");
+    }
+
+    @Test
+    void readsOnlyTheFilesThatChanged() throws IOException {
+        assertRun(1);
+        assertRun(0);
+
+        write("sales_2.txt", "DNI;2\nP002;3;\nP001;1;\n-;-;\n");
+        write("sales_3.txt", "DNI;3\nP001;4;\n");
+        assertRun(1);
+
+        Files.delete(sales.resolve("sales_1.txt"));
+        assertRun(0);
+    }
+
+    @Test
+    void doesNotReadATouchedFileAgain() throws IOException {
+        assertRun(1);
+        Path touched = sales.resolve("sales_1.txt");
+        touch(touched);
+
+        assertRun(0);
+    }
+
+    @Test
+    void readsAFileEditedToTheSameSize() throws IOException {
+        assertRun(1);
+        Path edited = sales.resolve("sales_1.txt");
+        write("sales_1.txt", "DNI;1\nP001;7;\nP002;y;\n");
+        touch(edited);
+
+        assertRun(1);
+    }
+
+    @Test
+    void readsEveryFileAgainWhenTheCatalogChanges() throws IOException {
+        assertRun(1);
+        Files.writeString(products, "P001;sal_kg;18.000\nP002;bolsa_leche;20.000\n", StandardCharsets.UTF_8);
+
+        assertRun(1);
+    }
+
+    @Test
+    void savesAndLoadsTheManifest() throws IOException {
+        Path manifestFile = folder.resolve("manifest.txt");
+        assertTrue(SalesManifest.load(manifestFile).getFiles().isEmpty());
+
+        SalesManifest manifest = new SalesManifest();
+        manifest.setCatalogHash("0badcafe");
+        manifest.setGeneration(7);
+        manifest.getFiles().put("sales_1.txt", new SalesManifest.Entry(12, 34, "89abcdef"));
+        manifest.getFiles().put("sales; 2.txt", new SalesManifest.Entry(56, 78, "-"));
+        manifest.save(manifestFile);
+
+        SalesManifest loaded = SalesManifest.load(manifestFile);
+        assertEquals("0badcafe", loaded.getCatalogHash());
+        assertEquals(7, loaded.getGeneration());
+        assertEquals(2, loaded.getFiles().size());
+        SalesManifest.Entry entry = loaded.getFiles().get("sales; 2.txt");
+        assertEquals(56, entry.getSize());
+        assertEquals(78, entry.getLastModified());
+        assertEquals("-", entry.getHash());
+
+        Files.writeString(manifestFile, "file;12;x;89abcdef;sales_1.txt\n", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> SalesManifest.load(manifestFile));
+    }
+
+    @Test
+    void hashesTheContentWithCrc32c() throws IOException {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Path file = folder.resolve("content.bin");
+        Files.write(file, content);
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+
+        assertEquals(String.format("%08x", crc.getValue()), SalesManifest.hash(file));
+    }
+
+    /**
+     * Runs an incremental ingestion and checks it against a full ingestion of the sales folder.
+     *
+     * @param errorsReported The number of errors the incremental run reports.
+     */
+    private void assertRun(int errorsReported) throws IOException {
+        ErrorReporter fullErrors = ErrorReporter.open(folder.resolve("full.txt").toString());
+        ProductCatalog catalog = ProductCatalog.load(products.toString(), fullErrors);
+        SalesAggregate full = SalesIngestion.ingest(sales.toString(), catalog, fullErrors);
+        fullErrors.close();
+
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("incremental.txt").toString());
+        SalesAggregate incremental = IncrementalIngestion.ingest(sales.toString(), products.toString(),
+                state.toString(), catalog, 2, errors, new RunMetrics());
+        errors.close();
+
+        assertSameSales(full, incremental);
+        assertEquals(errorsReported, errors.getTotal());
+    }
+
+    private static void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.writeString(sales.resolve(fileName), content, StandardCharsets.UTF_8);
+    }
+}
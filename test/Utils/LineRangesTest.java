@@ -0,0 +1,151 @@
+package Utils;
+
+import Entities.Seller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks where files are cut into ranges of whole lines, and that parsing the ranges with several workers
+ * gives the result of a single pass.
+ */
+class LineRangesTest {
+
+    private static final int RANGE = (int) LineRanges.MIN_RANGE_SIZE;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void keepsSmallFilesInOneRange() throws IOException {
+        assertArrayEquals(new long[] {0, 0}, LineRanges.split(file("empty.txt", new byte[0]), 8));
+        assertArrayEquals(new long[] {0, 5},
+                LineRanges.split(file("small.txt", "a\nb\nc".getBytes(StandardCharsets.US_ASCII)), 8));
+        assertArrayEquals(new long[] {0, 2L * RANGE - 1},
+                LineRanges.split(file("under.txt", lines(2 * RANGE - 1, 16)), 8));
+    }
+
+    @Test
+    void cutsAtALineStartingExactlyAtTheCut() throws IOException {
+        // Lines of 16 bytes: every cut falls at the start of a line
+        Path file = file("aligned.txt", lines(4 * RANGE, 16));
+        assertArrayEquals(new long[] {0, RANGE, 2L * RANGE, 3L * RANGE, 4L * RANGE}, LineRanges.split(file, 4));
+        assertArrayEquals(new long[] {0, 2L * RANGE, 4L * RANGE}, LineRanges.split(file, 2));
+    }
+
+    @Test
+    void movesCutsInsideALineToTheNextLine() throws IOException {
+        // Lines of 1000 bytes: a cut at 2^20 falls in the line starting at 1048000
+        Path file = file("unaligned.txt", lines(2 * RANGE, 1000));
+        long[] bounds = LineRanges.split(file, 2);
+        assertArrayEquals(new long[] {0, 1_049_000, 2L * RANGE}, bounds);
+    }
+
+    @Test
+    void dropsRangesWithoutALineStart() throws IOException {
+        // One line longer than every range but the last
+        byte[] bytes = new byte[3 * RANGE];
+        Arrays.fill(bytes, (byte) 'x');
+        bytes[bytes.length - 3] = '\r';
+        bytes[bytes.length - 2] = '\n';
+        Path file = file("long.txt", bytes);
+        assertArrayEquals(new long[] {0, bytes.length - 1, bytes.length}, LineRanges.split(file, 3));
+
+        bytes[bytes.length - 2] = 'x';
+        assertArrayEquals(new long[] {0, bytes.length}, LineRanges.split(file("no_break.txt", bytes), 3));
+    }
+
+    @Test
+    void parsesTheRangesInFileOrder() throws IOException {
+        Path file = file("aligned.txt", lines(5 * RANGE + 123, 16));
+        List<long[]> ranges = new ArrayList<>();
+        LineRanges.parseInOrder(file, 4, (start, end) -> new long[] {start, end}, ranges::add);
+
+        assertTrue(ranges.size() > 1);
+        long position = 0;
+        for (long[] range : ranges) {
+            assertEquals(position, range[0]);
+            position = range[1];
+        }
+        assertEquals(Files.size(file), position);
+    }
+
+    @Test
+    void readsTheSellersOfEveryRangeLikeOnePass() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int sellers = 0;
+        while (text.length() < 5 * RANGE) {
+            // The number of every tenth seller repeats the number of an earlier seller, in another range
+            int number = sellers % 10 == 0 ? sellers / 10 : sellers;
+            text.append("CC;").append(number).append(";First").append(sellers).append(";Last")
+                    .append(sellers % 3 == 0 ? "\r\n" : "\n");
+            sellers++;
+        }
+        Path file = folder.resolve("sellers_info.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        Map<String, Seller> onePass = SellersReader.read(file.toString(), 1);
+        Map<String, Seller> ranges = SellersReader.read(file.toString(), 4);
+
+        assertEquals(onePass.keySet(), ranges.keySet());
+        for (Map.Entry<String, Seller> seller : onePass.entrySet()) {
+            assertEquals(seller.getValue().getFirstName(), ranges.get(seller.getKey()).getFirstName());
+            assertEquals(seller.getValue().getLastName(), ranges.get(seller.getKey()).getLastName());
+        }
+        assertEquals("First123450", ranges.get("12345").getFirstName());
+    }
+
+    @Test
+    void loadsTheCatalogOfEveryRangeLikeOnePass() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int products = 0;
+        while (text.length() < 5 * RANGE) {
+            text.append('P').append(products).append(";product_").append(products).append(';')
+                    .append(products % 100).append(".500\n");
+            products++;
+        }
+        Path file = folder.resolve("products_info.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("wrong_files_report.txt").toString());
+        ProductCatalog onePass = ProductCatalog.load(file.toString(), 1, errors);
+        ProductCatalog ranges = ProductCatalog.load(file.toString(), 4, errors);
+        errors.close();
+
+        assertEquals(products, onePass.size());
+        assertEquals(products, ranges.size());
+        for (int i = 0; i < products; i += 97) {
+            assertEquals(onePass.getPrice("P" + i), ranges.getPrice("P" + i));
+            assertEquals("product_" + i, ranges.get("P" + i).getProductName());
+        }
+        assertEquals(0, errors.getTotal());
+    }
+
+    private Path file(String name, byte[] bytes) throws IOException {
+        return Files.write(folder.resolve(name), bytes);
+    }
+
+    /**
+     * Builds lines of the given length, line break included, up to a size.
+     */
+    private static byte[] lines(int size, int lineLength) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % lineLength == lineLength - 1 ? '\n' : 'a' + i % 26);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,78 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the parsing of catalog prices into centavos, on the fast path and on the <code>BigDecimal</code>
+ * fallback, and the formatting of amounts.
+ */
+class MoneyTest {
+
+    @Test
+    void readsPricesInThousandsOfPesos() {
+        assertEquals(1_700_000, parse("17.000"));
+        assertEquals(1_700_000, parse("17"));
+        assertEquals(1_700_000_000L, parse("17,000"));
+        assertEquals(1_234_560, parse("12.3456"));
+        assertEquals(12_345, parse("0.12345"));
+        assertEquals(-1_700_000, parse("-17.000"));
+        assertEquals(1_700_000, parse("+17.000"));
+    }
+
+    @Test
+    void roundsDigitsBelowOneCentavoHalfToEven() {
+        assertEquals(123_457, parse("1.234567"));
+        assertEquals(0, parse("0.000005"));
+        assertEquals(2, parse("0.000015"));
+        assertEquals(2, parse("0.000025"));
+        assertEquals(3, parse("0.0000251"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"17.000", "1,234.5", "0.000015", "1.234567", "92233720368547.75807", "  17.5 ", "1e3"})
+    void readsTheBufferLikeTheText(String price) {
+        assertEquals(Money.parseCatalogPrice(price), parse(price));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "-", ".", "abc", "17.0.0", "92233720368547.75808", "99999999999999999999999"})
+    void rejectsInvalidAndOverflowingPrices(String price) {
+        assertThrows(NumberFormatException.class, () -> parse(price));
+    }
+
+    @Test
+    void multipliesWithoutOverflowing() {
+        assertEquals(4_500_000, Money.times(1_500_000, 3));
+        assertThrows(ArithmeticException.class, () -> Money.times(Long.MAX_VALUE / 2, 3));
+    }
+
+    @Test
+    void formatsCentavosWithTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.ROOT);
+            assertEquals("2,262,000.00", Money.format(226_200_000));
+            assertEquals("0.05", Money.format(5));
+            assertEquals("-1.50", Money.format(-150));
+            Locale.setDefault(Locale.forLanguageTag("es-CO"));
+            assertEquals("2.262.000,00", Money.format(226_200_000));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    private static long parse(String price) {
+        // Surrounding bytes check that only the given range is read
+        byte[] bytes = ("x;" + price + ";x").getBytes(StandardCharsets.US_ASCII);
+        return Money.parseCatalogPrice(ByteBuffer.wrap(bytes), 2, bytes.length - 2);
+    }
+}
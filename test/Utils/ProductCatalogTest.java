@@ -0,0 +1,69 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the catalog prices products whatever their numbers, from the loaded catalog and from its
+ * image, without a price table sized by the highest product number.
+ */
+class ProductCatalogTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void pricesDenseProductNumbers() throws IOException {
+        ProductCatalog catalog = load("P001;sal_kg;17.000\nP002;bolsa_leche;20.000\nP004;arroz;3.500\n");
+
+        assertPrices(catalog, 1_700_000, 2_000_000, 0, 350_000);
+        assertPrices(map(catalog), 1_700_000, 2_000_000, 0, 350_000);
+    }
+
+    @Test
+    void pricesHighProductNumbersFromTheSlots() throws IOException {
+        ProductCatalog catalog = load("P001;sal_kg;17.000\nP16777215;bolsa_leche;20.000\nX-9;arroz;3.500\n");
+
+        for (ProductCatalog prices : new ProductCatalog[] {catalog, map(catalog)}) {
+            assertEquals(1_700_000, prices.getPrice("P001"));
+            assertEquals(2_000_000, prices.getPrice("P16777215"));
+            assertEquals(350_000, prices.getPrice("X-9"));
+            assertEquals(0, prices.getPrice("P002"));
+            assertEquals(0, prices.getPrice("P16777214"));
+        }
+        assertTrue(Files.size(folder.resolve("catalog" + ProductCatalog.IMAGE_SUFFIX)) < 4096);
+    }
+
+    private ProductCatalog load(String products) throws IOException {
+        Path file = Files.writeString(folder.resolve("products_info.txt"), products, StandardCharsets.UTF_8);
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("wrong_files_report.txt").toString());
+        ProductCatalog catalog = ProductCatalog.load(file.toString(), errors);
+        errors.close();
+        assertEquals(0, errors.getTotal());
+        return catalog;
+    }
+
+    private ProductCatalog map(ProductCatalog catalog) throws IOException {
+        Path image = folder.resolve("catalog" + ProductCatalog.IMAGE_SUFFIX);
+        catalog.save(image);
+        return ProductCatalog.map(image);
+    }
+
+    private static void assertPrices(ProductCatalog catalog, long... prices) {
+        for (int i = 0; i < prices.length; i++) {
+            String productId = ProductKeys.productId(i + 1);
+            assertEquals(prices[i], catalog.getPrice(productId), productId);
+            byte[] id = productId.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(prices[i], catalog.getPrice(ByteBuffer.wrap(id), 0, id.length), productId);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package Utils;
+
+import Entities.Seller;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the reports of the sample data under <code>SoldProducts/</code> are the ones committed under
+ * <code>SalesReport/</code> and <code>ReportWrongFiles/</code>, which the original implementation wrote.
+ * <p>
+ * The committed products report was written with a Colombian locale, so the amounts are formatted with it.
+ * The original implementation listed products sold in the same quantity in hash map order; the ranking now
+ * lists them by product ID, so the rows of a tie are compared as a set and their order is checked apart.
+ * </p>
+ */
+class ReportGoldenTest {
+
+    private static final Path PROJECT = Path.of(System.getProperty("project.dir", "."));
+    private static final Path SALES_REPORT = Path.of("SalesReport/TotalSales/sales_report.csv");
+    private static final Path PRODUCTS_REPORT = Path.of("SalesReport/Products/products_report.csv");
+
+    private static Locale defaultLocale;
+
+    @TempDir
+    Path scratch;
+
+    @BeforeAll
+    static void useColombianLocale() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("es-CO"));
+    }
+
+    @AfterAll
+    static void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void sampleReportsMatchTheCommittedOnes(int workers) throws IOException {
+        Path errorsFile = scratch.resolve("wrong_files_report.txt");
+        ErrorReporter errors = ErrorReporter.open(errorsFile.toString());
+        Map<String, Seller> sellers = SellersReader.read(sample("Sellers/sellers_info.txt"), workers);
+        ProductCatalog catalog = ProductCatalog.load(sample("Products/products_info.txt"), workers, errors);
+        SalesAggregate aggregate = SalesIngestion.ingest(sample("Sales"), catalog, workers, errors);
+        ReportOptions options = new ReportOptions().setConsole(ConsoleMode.QUIET);
+        GeneralSalesReport.displayAndSaveSalesReport(sellers, aggregate, options);
+        GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors, options);
+        errors.close();
+
+        assertEquals(committed(SALES_REPORT), Files.readAllLines(SALES_REPORT, StandardCharsets.UTF_8));
+        assertEquals(committed(Path.of("ReportWrongFiles/wrong_files_report.txt")),
+                Files.readAllLines(errorsFile, StandardCharsets.UTF_8));
+
+        List<String> expected = committed(PRODUCTS_REPORT);
+        List<String> actual = Files.readAllLines(PRODUCTS_REPORT, StandardCharsets.UTF_8);
+        assertEquals(expected.get(0), actual.get(0));
+        assertEquals(byQuantity(expected), byQuantity(actual));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void tiedProductsAreListedByProductId(int workers) throws IOException {
+        ErrorReporter errors = ErrorReporter.open(scratch.resolve("wrong_files_report.txt").toString());
+        ProductCatalog catalog = ProductCatalog.load(sample("Products/products_info.txt"), workers, errors);
+        SalesAggregate aggregate = SalesIngestion.ingest(sample("Sales"), catalog, workers, errors);
+        GenerateProductsReport.displayAndSaveProductsReport(catalog, aggregate, errors,
+                new ReportOptions().setConsole(ConsoleMode.QUIET));
+        errors.close();
+
+        Map<String, String> productIds = new HashMap<>();
+        catalog.forEach((productId, productName, price) -> productIds.put(productName, productId));
+        List<String> rows = Files.readAllLines(PRODUCTS_REPORT, StandardCharsets.UTF_8);
+        for (int i = 2; i < rows.size(); i++) {
+            String[] previous = rows.get(i - 1).split(";");
+            String[] current = rows.get(i).split(";");
+            long previousQuantity = Long.parseLong(previous[2]);
+            long quantity = Long.parseLong(current[2]);
+            assertTrue(previousQuantity >= quantity, rows.get(i));
+            if (previousQuantity == quantity) {
+                assertTrue(productIds.get(previous[0]).compareTo(productIds.get(current[0])) < 0, rows.get(i));
+            }
+        }
+    }
+
+    private static String sample(String path) {
+        return PROJECT.resolve("SoldProducts").resolve(path).toString();
+    }
+
+    private static List<String> committed(Path report) throws IOException {
+        return Files.readAllLines(PROJECT.resolve(report), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Groups the rows of a products report by quantity sold, in the order of the report.
+     */
+    private static List<List<String>> byQuantity(List<String> rows) {
+        List<List<String>> groups = new ArrayList<>();
+        String quantity = null;
+        for (String row : rows.subList(1, rows.size())) {
+            String rowQuantity = row.split(";")[2];
+            if (!rowQuantity.equals(quantity)) {
+                groups.add(new ArrayList<>());
+                quantity = rowQuantity;
+            }
+            groups.get(groups.size() - 1).add(row);
+        }
+        for (List<String> group : groups) {
+            group.sort(null);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,138 @@
+package Utils;
+
+import Entities.Seller;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the answers of the report server: unavailable until published, cached by ETag, and 404 for
+ * what it does not hold.
+ */
+class ReportServerTest {
+
+    @TempDir
+    Path folder;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Map<String, Seller> sellers = Map.of("1", new Seller("CC", "1", "Ana", "Gomez"),
+            "2", new Seller("CE", "2", "Luis", "Perez"));
+    private ProductCatalog catalog;
+    private ReportServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        Path products = folder.resolve("products_info.txt");
+        Files.writeString(products, "P001;sal_kg;17.000\nP002;bolsa_leche;20.000\n", StandardCharsets.UTF_8);
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("errors.txt").toString());
+        catalog = ProductCatalog.load(products.toString(), errors);
+        errors.close();
+        server = ReportServer.start(0);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void isUnavailableUntilPublished() throws Exception {
+        HttpResponse<String> response = get("/sales.csv", null);
+        assertEquals(503, response.statusCode());
+        assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+
+        server.publish(sellers, catalog, sales(2));
+        response = get("/sales.csv", null);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith(GeneralSalesReport.CSV_HEADER + "\n"), response.body());
+        assertEquals("text/csv; charset=UTF-8", response.headers().firstValue("Content-Type").orElse(null));
+    }
+
+    @Test
+    void answersNotModifiedWhileTheContentIsTheSame() throws Exception {
+        server.publish(sellers, catalog, sales(2));
+        String etag = get("/products.json", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> cached = get("/products.json", etag);
+        assertEquals(304, cached.statusCode());
+        assertEquals("", cached.body());
+        assertEquals(304, get("/products.json", "\"other\", W/" + etag).statusCode());
+
+        // The same sales published again keep the ETag, other sales change it
+        server.publish(sellers, catalog, sales(2));
+        assertEquals(304, get("/products.json", etag).statusCode());
+        server.publish(sellers, catalog, sales(3));
+        HttpResponse<String> changed = get("/products.json", etag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void looksUpSellersAndProducts() throws Exception {
+        server.publish(sellers, catalog, sales(2));
+
+        HttpResponse<String> seller = get("/sellers/1.csv", null);
+        assertEquals(200, seller.statusCode());
+        assertTrue(seller.body().contains("\nP001;sal_kg;2;"), seller.body());
+        // A seller of the sellers file without sales is known, an unknown one is not
+        assertEquals(200, get("/sellers/2.json", null).statusCode());
+        assertEquals(404, get("/sellers/9.json", null).statusCode());
+        assertEquals(200, get("/products/P002.json", null).statusCode());
+        assertEquals(404, get("/products/P999.csv", null).statusCode());
+        assertEquals(404, get("/sellers/1.txt", null).statusCode());
+        assertEquals(404, get("/", null).statusCode());
+    }
+
+    @Test
+    void answersOnlyGetAndHead() throws Exception {
+        server.publish(sellers, catalog, sales(2));
+        HttpResponse<String> get = get("/sales.json", null);
+
+        HttpResponse<String> head = send(HttpRequest.newBuilder(uri("/sales.json"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build());
+        assertEquals(200, head.statusCode());
+        assertEquals(get.headers().firstValue("ETag"), head.headers().firstValue("ETag"));
+        HttpResponse<String> post = send(HttpRequest.newBuilder(uri("/sales.json"))
+                .POST(HttpRequest.BodyPublishers.ofString("")).build());
+        assertEquals(405, post.statusCode());
+        assertEquals("GET, HEAD", post.headers().firstValue("Allow").orElse(null));
+    }
+
+    private SalesAggregate sales(int quantity) {
+        SalesAggregate aggregate = new SalesAggregate();
+        aggregate.addSeller("2");
+        aggregate.addSale("1", "P001", quantity, catalog.getPrice("P001"));
+        return aggregate;
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return send(request.build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+}
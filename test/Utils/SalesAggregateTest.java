@@ -0,0 +1,146 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static Utils.AggregateAssertions.assertSameSales;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks merging, subtracting and serializing sales aggregates, with products in and out of the
+ * <code>P%03d</code> scheme.
+ */
+class SalesAggregateTest {
+
+    @Test
+    void mergesPartialAggregates() {
+        SalesAggregate total = new SalesAggregate();
+        total.merge(first());
+        total.merge(second());
+
+        assertEquals(Map.of("1", 1_000L + 3 * 250L, "2", 2 * 500L), total.getSellerRevenue());
+        assertEquals(Map.of("P001", 1L + 2L, "P002", 3L, "X-9", 4L), total.getProductQuantities());
+        assertEquals(Map.of("P001", 1L, "P002", 3L, "X-9", 4L), total.getProductsSoldBy("1"));
+        assertEquals(2, total.getQuantity("2", "P001"));
+        assertEquals(0, total.getQuantity("2", "P002"));
+        assertEquals(0, total.getQuantity("3", "P001"));
+    }
+
+    @Test
+    void subtractingAMergedPartialLeavesTheOthers() {
+        SalesAggregate total = new SalesAggregate();
+        total.merge(first());
+        total.merge(second());
+        total.subtract(second());
+
+        assertSameSales(first(), total);
+        assertEquals(0, total.getQuantity("2", "P001"));
+    }
+
+    @Test
+    void keepsASellerAndAProductWhileAnotherPartialHasThem() {
+        SalesAggregate sameSeller = new SalesAggregate();
+        sameSeller.addSale("1", "X-9", 1, 0);
+        SalesAggregate total = new SalesAggregate();
+        total.merge(first());
+        total.merge(sameSeller);
+        total.subtract(first());
+
+        assertEquals(Map.of("1", 0L), total.getSellerRevenue());
+        assertEquals(Map.of("X-9", 1L), total.getProductQuantities());
+    }
+
+    @Test
+    void keepsASellerWithoutValidSales() {
+        SalesAggregate aggregate = new SalesAggregate();
+        aggregate.addSeller("7");
+
+        assertEquals(Map.of("7", 0L), aggregate.getSellerRevenue());
+        assertTrue(aggregate.getProductQuantities().isEmpty());
+    }
+
+    @Test
+    void rejectsARevenueThatOverflows() {
+        SalesAggregate aggregate = new SalesAggregate();
+        aggregate.addSale("1", "P001", Integer.MAX_VALUE, Long.MAX_VALUE / Integer.MAX_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> aggregate.addSale("1", "P001", Integer.MAX_VALUE,
+                Long.MAX_VALUE / Integer.MAX_VALUE));
+    }
+
+    @Test
+    void readsBackWhatItWrites() throws IOException {
+        SalesAggregate total = new SalesAggregate();
+        total.merge(first());
+        total.merge(second());
+
+        SalesAggregate copy = roundTrip(total);
+        assertSameSales(total, copy);
+
+        // The copy still counts the partials it was merged from
+        copy.subtract(second());
+        assertSameSales(first(), copy);
+    }
+
+    @Test
+    void holdsOnlyTheProductsSoldWhateverTheirNumbers() throws IOException {
+        SalesAggregate partial = new SalesAggregate();
+        partial.addSale("1", "P16777215", 2, 100);
+        partial.addSale("1", "X-9", 1, 0);
+        partial.addSale("2", "P9999999", 3, 100);
+        partial.addSale("2", "P001", 1, 100);
+        SalesAggregate total = new SalesAggregate();
+        for (int i = 0; i < 1_000; i++) {
+            total.merge(partial);
+        }
+
+        List<String> products = new ArrayList<>();
+        total.forEachProduct((productId, quantity) -> products.add(productId + "=" + quantity));
+        assertEquals(List.of("P001=1000", "P9999999=3000", "P16777215=2000", "X-9=1000"), products);
+
+        // Written with one record per product sold, not one per product number below the highest
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        partial.writeTo(new DataOutputStream(bytes));
+        assertTrue(bytes.size() < 256, "Size: " + bytes.size());
+        assertSameSales(partial, roundTrip(partial));
+    }
+
+    @Test
+    void rejectsAnotherFormat() {
+        byte[] bytes = {0, 0, 0, 99};
+        assertThrows(IOException.class,
+                () -> SalesAggregate.readFrom(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    private static SalesAggregate first() {
+        SalesAggregate aggregate = new SalesAggregate();
+        aggregate.addSale("1", "P001", 1, 1_000);
+        aggregate.addSale("1", "P002", 3, 250);
+        aggregate.addSale("1", "X-9", 4, 0);
+        return aggregate;
+    }
+
+    private static SalesAggregate second() {
+        SalesAggregate aggregate = new SalesAggregate();
+        aggregate.addSale("2", "P001", 2, 500);
+        return aggregate;
+    }
+
+    private static SalesAggregate roundTrip(SalesAggregate aggregate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        aggregate.writeTo(out);
+        out.flush();
+        return SalesAggregate.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,41 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the offset index written next to a consolidated sales file.
+ */
+class SalesBatchIndexTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void indexesTheSectionOfEverySeller() throws IOException {
+        String first = "CC;1\nP001;2;\n";
+        String second = "TI;22\r\nP002;3;\r\nP001;1;\r\n";
+        String third = "CC;1\nP003;4;";
+        Path batch = Files.writeString(folder.resolve("batch_1.txt"), "P009;9;\n" + first + second + third,
+                StandardCharsets.UTF_8);
+
+        SalesBatchIndex.build(batch);
+
+        Path index = SalesBatchIndex.indexFile(batch);
+        assertEquals(folder.resolve("batch_1.txt.idx"), index);
+        int start = "P009;9;\n".length();
+        assertEquals(List.of(
+                "#" + Files.size(batch) + ";" + Files.getLastModifiedTime(batch).toMillis(),
+                "1;" + start + ";" + first.length(),
+                "1;" + (start + first.length() + second.length()) + ";" + third.length(),
+                "22;" + (start + first.length()) + ";" + second.length()), Files.readAllLines(index));
+    }
+}
@@ -0,0 +1,141 @@
+package Utils;
+
+import Entities.Seller;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the cube answers like the aggregate it was built from, in the dense and the sparse layout.
+ */
+class SalesCubeTest {
+
+    @TempDir
+    Path folder;
+
+    private ProductCatalog catalog;
+    private final Map<String, Seller> sellers = new HashMap<>();
+
+    @BeforeEach
+    void loadCatalog() throws IOException {
+        StringBuilder products = new StringBuilder();
+        for (int product = 1; product <= 11; product++) {
+            products.append(String.format("P%03d;product_%d;%d.000%n", product, product, product * 10));
+        }
+        Path productsFile = folder.resolve("products_info.txt");
+        Files.writeString(productsFile, products.toString(), StandardCharsets.UTF_8);
+        ErrorReporter errors = ErrorReporter.open(folder.resolve("errors.txt").toString());
+        catalog = ProductCatalog.load(productsFile.toString(), errors);
+        errors.close();
+        for (int seller = 1; seller <= 10; seller++) {
+            String documentNumber = String.valueOf(seller);
+            sellers.put(documentNumber, new Seller(seller % 2 == 0 ? "CE" : "CC", documentNumber, "N", "S"));
+        }
+    }
+
+    @Test
+    void holdsAFilledCubeInOneArray() {
+        SalesAggregate aggregate = new SalesAggregate();
+        sell(aggregate, "1", "P001", 2);
+        sell(aggregate, "1", "P002", 5);
+        sell(aggregate, "2", "P002", 1);
+        SalesCube cube = SalesCube.build(aggregate, sellers, catalog);
+
+        assertTrue(cube.isDense());
+        assertEquals(3, cube.getCellCount());
+        assertSameQuantities(aggregate, cube);
+        assertEquals(List.of("P002;5;" + Money.format(Money.times(catalog.getPrice("P002"), 5)),
+                "P001;2;" + Money.format(Money.times(catalog.getPrice("P001"), 2))), text(cube.topProducts("1", 0)));
+        assertEquals(List.of("1", "2"), ids(cube.topSellers("P002", 0)));
+        assertEquals(List.of("1"), ids(cube.topSellers("P002", 1)));
+    }
+
+    @Test
+    void holdsAFewCellsByRowAndByColumn() {
+        // Seller 1 sold every product but P011 and every seller sold P001: 20 cells out of 110
+        SalesAggregate aggregate = new SalesAggregate();
+        for (int product = 1; product <= 10; product++) {
+            sell(aggregate, "1", String.format("P%03d", product), product);
+        }
+        for (int seller = 2; seller <= 10; seller++) {
+            sell(aggregate, String.valueOf(seller), "P001", seller * 10);
+        }
+        sell(aggregate, "2", "P011", 7);
+        SalesCube cube = SalesCube.build(aggregate, sellers, catalog);
+
+        assertFalse(cube.isDense());
+        assertEquals(20, cube.getCellCount());
+        assertSameQuantities(aggregate, cube);
+        // Found in the row of the seller, shorter than the column of P001
+        assertEquals(50, cube.getQuantity("5", "P001"));
+        assertEquals(0, cube.getQuantity("5", "P005"));
+        // Found in the column of the product, shorter than the row of seller 1
+        assertEquals(5, cube.getQuantity("1", "P005"));
+        assertEquals(0, cube.getQuantity("1", "P011"));
+        assertEquals(7, cube.getQuantity("2", "P011"));
+        assertEquals(List.of("10", "9"), ids(cube.topSellers("P001", 2)));
+        assertEquals(List.of("P010", "P009", "P008"), ids(cube.topProducts("1", 3)));
+    }
+
+    @Test
+    void groupsTheSellersByDocumentType() {
+        SalesAggregate aggregate = new SalesAggregate();
+        sell(aggregate, "1", "P001", 1);
+        sell(aggregate, "2", "P002", 1);
+        sell(aggregate, "3", "P003", 1);
+        SalesCube cube = SalesCube.build(aggregate, sellers, catalog);
+
+        Map<String, Long> byType = cube.getRevenueByDocumentType();
+        assertEquals(List.of("CC", "CE"), cube.getDocumentTypes());
+        assertEquals(catalog.getPrice("P001") + catalog.getPrice("P003"), byType.get("CC"));
+        assertEquals(catalog.getPrice("P002"), byType.get("CE"));
+        assertEquals(List.of("3", "1"), ids(cube.topSellersOfType("CC", 0)));
+        assertEquals(List.of("P003", "P001"), ids(cube.topProductsOfType("CC", 0)));
+    }
+
+    private void sell(SalesAggregate aggregate, String documentNumber, String productId, int quantity) {
+        aggregate.addSale(documentNumber, productId, quantity, catalog.getPrice(productId));
+    }
+
+    private static void assertSameQuantities(SalesAggregate aggregate, SalesCube cube) {
+        List<String> sellerIds = new ArrayList<>(aggregate.getSellerRevenue().keySet());
+        List<String> productIds = new ArrayList<>(aggregate.getProductQuantities().keySet());
+        assertEquals(sellerIds.size(), cube.getSellerCount());
+        assertEquals(productIds.size(), cube.getProductCount());
+        for (String documentNumber : sellerIds) {
+            assertEquals(aggregate.getSellerRevenue().get(documentNumber), cube.getSellerRevenue(documentNumber));
+            for (String productId : productIds) {
+                assertEquals(aggregate.getQuantity(documentNumber, productId),
+                        cube.getQuantity(documentNumber, productId), documentNumber + " " + productId);
+            }
+        }
+        for (String productId : productIds) {
+            assertEquals(aggregate.getProductQuantities().get(productId), cube.getProductQuantity(productId));
+        }
+    }
+
+    private static List<String> ids(List<SalesCube.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        entries.forEach(entry -> ids.add(entry.getId()));
+        return ids;
+    }
+
+    private static List<String> text(List<SalesCube.Entry> entries) {
+        List<String> text = new ArrayList<>();
+        entries.forEach(entry -> text.add(entry.toString()));
+        return text;
+    }
+}
@@ -0,0 +1,27 @@
+package Utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks which files of the sales folder are read as input.
+ */
+class SalesInputTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sales_1001.txt", "sales_1001.txt.gz", "batch_2024-03.txt", "batch_2024-03.txt.gz",
+            "uploads.zip"})
+    void listsSalesArchiveAndBatchFiles(String fileName) {
+        assertTrue(SalesInput.isListedFileName(fileName));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"README.txt", "notes.gz", "sales_1001.txt.part", "sales_1001.txt.tmp.gz",
+            "batch_2024-03.txt.idx", "products.txt"})
+    void leavesOtherFilesOut(String fileName) {
+        assertFalse(SalesInput.isListedFileName(fileName));
+    }
+}
@@ -0,0 +1,93 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks which month, week and day buckets cover a range, and that the sales of a range are the sales of
+ * its days.
+ */
+class SalesRollupsTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 3, 10);
+
+    @Test
+    void coversWholeMonthsThenWholeWeeksThenDays() {
+        // 2024-03-01 is a Friday and 2024-03-04 a Monday
+        assertEquals(List.of("MONTH 2024-01-01", "MONTH 2024-02-01", "DAY 2024-03-01", "DAY 2024-03-02",
+                "DAY 2024-03-03", "WEEK 2024-03-04"), buckets(rollups(), FIRST_DAY, LAST_DAY));
+    }
+
+    @Test
+    void coversWeeksAcrossTheEndOfAMonth() {
+        assertEquals(List.of("DAY 2024-01-12", "DAY 2024-01-13", "DAY 2024-01-14", "WEEK 2024-01-15",
+                        "WEEK 2024-01-22", "WEEK 2024-01-29", "WEEK 2024-02-05", "DAY 2024-02-12"),
+                buckets(rollups(), LocalDate.of(2024, 1, 12), LocalDate.of(2024, 2, 12)));
+    }
+
+    @Test
+    void leavesOutTheDaysWithoutSales() {
+        SalesRollups rollups = rollups();
+        assertEquals(List.of("WEEK 2024-03-04"), buckets(rollups, LocalDate.of(2024, 3, 4), LocalDate.of(2024, 4, 30)));
+        assertTrue(buckets(rollups, LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31)).isEmpty());
+    }
+
+    @Test
+    void sumsTheSalesOfTheDaysOfARange() {
+        SalesRollups rollups = rollups();
+        assertEquals(3, rollups.getBucketCount(SalesRollups.Period.MONTH));
+        assertEquals(10, rollups.getBucketCount(SalesRollups.Period.WEEK));
+        assertEquals(70, rollups.getBucketCount(SalesRollups.Period.DAY));
+
+        for (LocalDate[] range : new LocalDate[][] {
+                {FIRST_DAY, LAST_DAY},
+                {LocalDate.of(2024, 1, 12), LocalDate.of(2024, 2, 12)},
+                {LocalDate.of(2024, 2, 29), LocalDate.of(2024, 2, 29)}}) {
+            long units = 0;
+            for (LocalDate day = range[0]; !day.isAfter(range[1]); day = day.plusDays(1)) {
+                units += day.getDayOfYear();
+            }
+            SalesAggregate sales = rollups.between(range[0], range[1]);
+            assertEquals(Map.of("P001", units), sales.getProductQuantities());
+            assertEquals(Map.of("1", units * 100, "2", 0L), sales.getSellerRevenue());
+        }
+    }
+
+    @Test
+    void reportsTheSellersOfARangeWithoutSales() {
+        SalesAggregate sales = rollups().between(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31));
+
+        assertEquals(Map.of("1", 0L, "2", 0L), sales.getSellerRevenue());
+        assertTrue(sales.getProductQuantities().isEmpty());
+    }
+
+    /**
+     * Builds rollups of one sale a day from 2024-01-01 to 2024-03-10, of as many units as the day of the
+     * year, and a second seller without sales.
+     */
+    private static SalesRollups rollups() {
+        SalesRollups rollups = new SalesRollups();
+        rollups.addSeller("1");
+        rollups.addSeller("2");
+        for (LocalDate day = FIRST_DAY; !day.isAfter(LAST_DAY); day = day.plusDays(1)) {
+            SalesAggregate sales = new SalesAggregate();
+            sales.addSale("1", "P001", day.getDayOfYear(), 100);
+            rollups.add(day.toEpochDay(), sales);
+        }
+        return rollups;
+    }
+
+    private static List<String> buckets(SalesRollups rollups, LocalDate from, LocalDate to) {
+        List<String> buckets = new ArrayList<>();
+        rollups.forEachBucket(from, to, (period, start) -> buckets.add(period + " " + LocalDate.ofEpochDay(start)));
+        return buckets;
+    }
+}
@@ -0,0 +1,54 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the windows parsed from the <code>--window</code> option.
+ */
+class SalesWindowTest {
+
+    // A Wednesday
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 20);
+
+    @Test
+    void parsesWindowsRelativeToToday() {
+        assertEquals("2024-03-14..2024-03-20", SalesWindow.parse("last-7-days", TODAY).toString());
+        assertEquals("2024-03-20..2024-03-20", SalesWindow.parse("last-1-days", TODAY).toString());
+        assertEquals("2024-03-18..2024-03-20", SalesWindow.parse("week-to-date", TODAY).toString());
+        assertEquals("2024-03-01..2024-03-20", SalesWindow.parse("month-to-date", TODAY).toString());
+        assertEquals("2024-01-01..2024-03-20", SalesWindow.parse("year-to-date", TODAY).toString());
+    }
+
+    @Test
+    void startsTheWeekOnMonday() {
+        LocalDate monday = LocalDate.of(2024, 3, 18);
+        assertEquals("2024-03-18..2024-03-18", SalesWindow.parse("week-to-date", monday).toString());
+        LocalDate sunday = LocalDate.of(2024, 3, 24);
+        assertEquals("2024-03-18..2024-03-24", SalesWindow.parse("week-to-date", sunday).toString());
+    }
+
+    @Test
+    void parsesDaysAndRanges() {
+        SalesWindow day = SalesWindow.parse("2024-02-29", TODAY);
+        assertEquals(LocalDate.of(2024, 2, 29), day.getFrom());
+        assertEquals(LocalDate.of(2024, 2, 29), day.getTo());
+
+        SalesWindow range = SalesWindow.parse("2023-12-25..2024-01-07", TODAY);
+        assertEquals(LocalDate.of(2023, 12, 25), range.getFrom());
+        assertEquals(LocalDate.of(2024, 1, 7), range.getTo());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "yesterday", "last-0-days", "last--1-days", "last-x-days", "last-days", "2024-02-30",
+            "2024-3-1", "2024-03-02..2024-03-01", "2024-03-01..", "..2024-03-01"})
+    void rejectsInvalidWindows(String text) {
+        assertThrows(IllegalArgumentException.class, () -> SalesWindow.parse(text, TODAY));
+    }
+}